@@ -0,0 +1,70 @@
+package com.signicat.services.blockchain.benchmarks;
+
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.signicat.services.blockchain.crypto.HKDF;
+import com.signicat.services.blockchain.spi.Assertion;
+import com.signicat.services.blockchain.spi.MasterKey;
+
+/**
+ * Creating an assertion, which encrypts each claim with its own key and signs the result as the IdP,
+ * and decrypting all its claims again, against the number of claims.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssertionBenchmark {
+    @Param({"1", "10", "50"})
+    public int claimCount;
+
+    private JWTClaimsSet claims;
+    private byte[] mtKey;
+    private byte[] tKey;
+    private KeyPair idpKeys;
+    private Assertion assertion;
+
+    @Setup
+    public void setUp() throws Exception {
+        final JWTClaimsSet.Builder builder = new JWTClaimsSet.Builder()
+                .issuer("https://signicat.com")
+                .subject("Alice");
+        for (int i = 0; i < claimCount; i++) {
+            builder.claim("claim" + i, "value of claim " + i);
+        }
+        claims = builder.build();
+        final MasterKey masterKey = Keys.masterKey(1024);
+        tKey = new byte[16];
+        new SecureRandom().nextBytes(tKey);
+        mtKey = HKDF.hkdfExpand(HKDF.hkdfExtract(tKey, masterKey.getPrivateKey().getEncoded()), new byte[] {}, 256);
+        idpKeys = Keys.rsa(2048);
+        assertion = new Assertion(claims, mtKey, tKey, idpKeys.getPrivate());
+    }
+
+    @Benchmark
+    public Assertion create() throws Exception {
+        return new Assertion(claims, mtKey, tKey, idpKeys.getPrivate());
+    }
+
+    @Benchmark
+    public JWTClaimsSet decryptClaims() throws Exception {
+        return assertion.decryptClaims(mtKey);
+    }
+}
@@ -0,0 +1,59 @@
+package com.signicat.services.blockchain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.signicat.services.blockchain.spi.Assertion;
+import com.signicat.services.blockchain.spi.ClientSignedAssertion;
+import com.signicat.services.blockchain.spi.MasterKey;
+
+/**
+ * Wrapping an assertion signed by the master key, as pushed to the nodes, and unwrapping it with
+ * signature validation, as for every block fetched.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientSignedAssertionBenchmark {
+    private MasterKey masterKey;
+    private Assertion assertion;
+    private ClientSignedAssertion signed;
+
+    @Setup
+    public void setUp() throws Exception {
+        masterKey = Keys.masterKey(1024);
+        final JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer("https://signicat.com")
+                .subject("Alice")
+                .claim("name", "Alice Wonderland")
+                .claim("email", "alice@example.com")
+                .build();
+        final byte[] key = new byte[32];
+        assertion = new Assertion(claims, key, new byte[16], Keys.rsa(2048).getPrivate());
+        signed = ClientSignedAssertion.createFromAssertion(masterKey, assertion);
+    }
+
+    @Benchmark
+    public ClientSignedAssertion createFromAssertion() throws Exception {
+        return ClientSignedAssertion.createFromAssertion(masterKey, assertion);
+    }
+
+    @Benchmark
+    public Assertion getAssertion() throws Exception {
+        return signed.getAssertion(masterKey.getPublicKey());
+    }
+}
@@ -0,0 +1,60 @@
+package com.signicat.services.blockchain.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signicat.services.blockchain.crypto.HKDF;
+
+/**
+ * HKDF as used to derive the MT key of a block from the master key, whose PKCS#8 encoding is the
+ * input key material and the output length.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HkdfBenchmark {
+    /**
+     * Length of the input key material and of the output, 640 and 1220 being about the encodings
+     * of 1024 and 2048 bit RSA keys.
+     */
+    @Param({"32", "640", "1220"})
+    public int length;
+
+    private byte[] salt;
+    private byte[] ikm;
+    private byte[] prk;
+
+    @Setup
+    public void setUp() {
+        salt = "a-t-value-of-a-block".getBytes(StandardCharsets.UTF_8);
+        ikm = new byte[length];
+        new Random(42).nextBytes(ikm);
+        prk = HKDF.hkdfExtract(salt, ikm);
+    }
+
+    @Benchmark
+    public byte[] extract() {
+        return HKDF.hkdfExtract(salt, ikm);
+    }
+
+    @Benchmark
+    public byte[] expand() {
+        return HKDF.hkdfExpand(prk, new byte[] {}, length);
+    }
+}
@@ -0,0 +1,30 @@
+package com.signicat.services.blockchain.benchmarks;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.UUID;
+
+import com.signicat.services.blockchain.spi.MasterKey;
+
+/**
+ * Keys for setting up benchmarks, of sizes other than the default of {@link MasterKey}.
+ */
+final class Keys {
+    private Keys() {
+    }
+
+    static KeyPair rsa(final int bits) throws NoSuchAlgorithmException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(bits);
+        return generator.generateKeyPair();
+    }
+
+    static MasterKey masterKey(final int bits) throws NoSuchAlgorithmException {
+        final KeyPair keyPair = rsa(bits);
+        return new MasterKey(UUID.randomUUID().toString(),
+                (RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate());
+    }
+}
@@ -0,0 +1,50 @@
+package com.signicat.services.blockchain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signicat.services.blockchain.spi.MasterKey;
+
+/**
+ * Serializing a master key to its JWK and parsing it back, as done for every request carrying one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MasterKeyBenchmark {
+    @Param({"1024", "2048"})
+    public int keyBits;
+
+    private MasterKey masterKey;
+    private String json;
+
+    @Setup
+    public void setUp() throws Exception {
+        masterKey = Keys.masterKey(keyBits);
+        json = masterKey.getValue();
+    }
+
+    @Benchmark
+    public MasterKey fromString() throws Exception {
+        return MasterKey.fromString(json);
+    }
+
+    @Benchmark
+    public String getValue() {
+        return masterKey.getValue();
+    }
+}
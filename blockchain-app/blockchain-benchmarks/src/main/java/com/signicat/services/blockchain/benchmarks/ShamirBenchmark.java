@@ -0,0 +1,66 @@
+package com.signicat.services.blockchain.benchmarks;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.signicat.services.blockchain.crypto.KeyShard;
+import com.signicat.services.blockchain.crypto.TiemensShamirWrapper;
+import com.signicat.services.blockchain.spi.MasterKey;
+
+/**
+ * Splitting a master key into shards for the nodes, and combining them again when a key is
+ * reassembled. Keys larger than 1024 bits do not fit below the prime of {@link TiemensShamirWrapper}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShamirBenchmark {
+    /**
+     * Shards needed to reassemble and total shards, as k:n.
+     */
+    @Param({"2:3", "3:5", "5:9"})
+    public String threshold;
+
+    @Param({"512", "1024"})
+    public int keyBits;
+
+    private int needed;
+    private int total;
+    private MasterKey masterKey;
+    private KeyShard[] shards;
+
+    @Setup
+    public void setUp() throws Exception {
+        final String[] parts = threshold.split(":");
+        needed = Integer.parseInt(parts[0]);
+        total = Integer.parseInt(parts[1]);
+        masterKey = Keys.masterKey(keyBits);
+        shards = Arrays.copyOf(TiemensShamirWrapper.split(needed, total, masterKey), needed);
+    }
+
+    @Benchmark
+    public KeyShard[] split() {
+        return TiemensShamirWrapper.split(needed, total, masterKey);
+    }
+
+    @Benchmark
+    public BigInteger combine() {
+        return TiemensShamirWrapper.combine(shards);
+    }
+}
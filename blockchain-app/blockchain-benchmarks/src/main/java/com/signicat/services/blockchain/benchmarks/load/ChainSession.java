@@ -0,0 +1,175 @@
+package com.signicat.services.blockchain.benchmarks.load;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.util.Base64;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.signicat.services.blockchain.crypto.HKDF;
+import com.signicat.services.blockchain.spi.Assertion;
+import com.signicat.services.blockchain.spi.MasterKey;
+
+/**
+ * One virtual user going through the flows of the /chain API in order: getting a new master key,
+ * associating an IdP assertion with it, authenticating with that assertion to get the key back,
+ * dumping its data, getting claim keys and decrypting the claims with them. Stops at the first
+ * request that fails.
+ * <p>
+ * The first request is timed from when the session was meant to start, not from when a virtual user
+ * got to it, so time spent waiting for a free user counts, as it would for a real client.
+ */
+class ChainSession implements Runnable {
+    static final String NEW = "new";
+    static final String ASSOCIATE = "associate";
+    static final String AUTHENTICATE = "authenticate";
+    static final String DUMP = "dump";
+    static final String CLAIM_KEYS = "claimkeys";
+    static final String DECRYPT_CLAIMS = "decryptclaims";
+    static final String SESSION = "session";
+    static final List<String> ENDPOINTS = Collections.unmodifiableList(Arrays.asList(
+            NEW, ASSOCIATE, AUTHENTICATE, DUMP, CLAIM_KEYS, DECRYPT_CLAIMS, SESSION));
+
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final WebTarget chain;
+    private final PrivateKey idpKey;
+    private final int claimCount;
+    private final long intendedStartNanos;
+    private final Map<String, EndpointStats> stats;
+
+    /**
+     * @param chain target of the /chain resource
+     * @param idpKey key the assertions are signed with, as by the IdP
+     * @param intendedStartNanos when the session was meant to start, by {@link System#nanoTime()}
+     * @param stats what to record into, by the names in {@link #ENDPOINTS}
+     */
+    ChainSession(final WebTarget chain, final PrivateKey idpKey, final int claimCount,
+            final long intendedStartNanos, final Map<String, EndpointStats> stats) {
+        this.chain = chain;
+        this.idpKey = idpKey;
+        this.claimCount = claimCount;
+        this.intendedStartNanos = intendedStartNanos;
+        this.stats = stats;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (runFlows()) {
+                stats.get(SESSION).recordSuccess(System.nanoTime() - intendedStartNanos);
+            } else {
+                stats.get(SESSION).recordFailed();
+            }
+        } catch (final IOException | RuntimeException e) {
+            stats.get(SESSION).recordFailed();
+        }
+    }
+
+    private boolean runFlows() throws IOException {
+        final String keyJson = call(NEW, intendedStartNanos, chain.path("new").request(MediaType.APPLICATION_JSON)
+                .buildPost(Entity.text("")));
+        if (keyJson == null) {
+            return false;
+        }
+
+        final String subject = "user-" + UUID.randomUUID();
+        final List<String> claimNames = new ArrayList<>();
+        final JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
+                .issuer("https://signicat.com")
+                .subject(subject);
+        for (int i = 0; i < claimCount; i++) {
+            claimNames.add("claim" + i);
+            claims.claim("claim" + i, "value " + i + " of " + subject);
+        }
+        final String assertion = createAssertion(MasterKey.fromString(keyJson), claims.build());
+
+        if (call(ASSOCIATE, System.nanoTime(), chain.path("authenticated").request(MediaType.APPLICATION_JSON)
+                .buildPost(Entity.form(new Form().param("ass", assertion).param("key", keyJson)))) == null) {
+            return false;
+        }
+        if (call(AUTHENTICATE, System.nanoTime(), chain.path("authenticated").request(MediaType.APPLICATION_JSON)
+                .buildPost(Entity.form(new Form().param("ass", assertion)))) == null) {
+            return false;
+        }
+        if (call(DUMP, System.nanoTime(), chain.path("dumpdata")
+                .queryParam("key", "{key}")
+                .resolveTemplate("key", keyJson)
+                .request(MediaType.APPLICATION_JSON)
+                .buildGet()) == null) {
+            return false;
+        }
+        final String claimKeys = call(CLAIM_KEYS, System.nanoTime(), chain.path("claimkeys").request(MediaType.APPLICATION_JSON)
+                .buildPost(Entity.form(new Form()
+                        .param("key", keyJson)
+                        .param("block_and_claim_names", OM.writeValueAsString(Collections.singletonMap(subject, claimNames))))));
+        if (claimKeys == null) {
+            return false;
+        }
+        final String decrypted = call(DECRYPT_CLAIMS, System.nanoTime(), chain.path("decryptclaims").request(MediaType.APPLICATION_JSON)
+                .buildPost(Entity.form(new Form().param("keys", claimKeys))));
+        return decrypted != null && OM.readValue(decrypted, Map.class).size() == claimCount;
+    }
+
+    /**
+     * @return the assertion of the IdP, with the claims encrypted for the given master key the way
+     *         the server derives the keys to decrypt them
+     */
+    private String createAssertion(final MasterKey masterKey, final JWTClaimsSet claims) throws IOException {
+        final byte[] tKey = new byte[16];
+        RANDOM.nextBytes(tKey);
+        final byte[] privateKey = masterKey.getPrivateKey().getEncoded();
+        final byte[] mtKey = HKDF.hkdfExpand(HKDF.hkdfExtract(
+                Base64.encode(tKey).toString().getBytes(), privateKey), new byte[] {}, privateKey.length);
+        return new Assertion(claims, mtKey, tKey, idpKey).getValue();
+    }
+
+    /**
+     * @param sinceNanos when the request is timed from
+     * @return the body of the response, or null if the request failed
+     */
+    private String call(final String endpoint, final long sinceNanos, final Invocation invocation) {
+        final EndpointStats endpointStats = stats.get(endpoint);
+        final Response response;
+        try {
+            response = invocation.invoke();
+        } catch (final ProcessingException e) {
+            endpointStats.recordFailed();
+            return null;
+        }
+        try {
+            final String body = response.readEntity(String.class);
+            if (response.getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+                endpointStats.recordRejected();
+                return null;
+            }
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                endpointStats.recordFailed();
+                return null;
+            }
+            endpointStats.recordSuccess(System.nanoTime() - sinceNanos);
+            return body;
+        } catch (final ProcessingException e) {
+            endpointStats.recordFailed();
+            return null;
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.signicat.services.blockchain.benchmarks.load;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies of the successful requests to one endpoint, in microseconds, and counts of the failed
+ * ones. Safe for concurrent use.
+ */
+class EndpointStats {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final String name;
+    private final Histogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    EndpointStats(final String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void recordSuccess(final long nanos) {
+        latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS));
+    }
+
+    /**
+     * A 503 from the admission limits of the server.
+     */
+    void recordRejected() {
+        rejected.incrementAndGet();
+    }
+
+    void recordFailed() {
+        failed.incrementAndGet();
+    }
+
+    static String header() {
+        return String.format("%-14s %8s %8s %8s %9s %9s %9s %9s %9s %9s %9s",
+                "endpoint", "ok", "503", "failed", "req/s", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    }
+
+    /**
+     * @param seconds length of the measurement, for the throughput
+     */
+    String summary(final double seconds) {
+        final Histogram copy = latencies.copy();
+        return String.format("%-14s %8d %8d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                name, copy.getTotalCount(), rejected.get(), failed.get(), copy.getTotalCount() / seconds,
+                copy.getMean() / MICROS_PER_MILLI,
+                copy.getValueAtPercentile(50) / MICROS_PER_MILLI,
+                copy.getValueAtPercentile(90) / MICROS_PER_MILLI,
+                copy.getValueAtPercentile(99) / MICROS_PER_MILLI,
+                copy.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+                copy.getMaxValue() / MICROS_PER_MILLI);
+    }
+
+    /**
+     * Write the full percentile distribution, in milliseconds, in the .hgrm format plotted by
+     * HdrHistogram's tools.
+     */
+    void writeDistribution(final Path directory) throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(directory.resolve(name + ".hgrm").toFile()), false, "UTF-8")) {
+            latencies.copy().outputPercentileDistribution(out, MICROS_PER_MILLI);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.signicat.services.blockchain.benchmarks.load;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.signicat.services.blockchain.JettyServerFactory;
+import com.signicat.services.blockchain.Main;
+import com.signicat.services.blockchain.spi.DummyNodeNetwork;
+import com.signicat.services.blockchain.spi.LocalNodeNetwork;
+import com.signicat.services.blockchain.spi.NodeNetwork;
+
+/**
+ * Open-loop load generator for the /chain API. Sessions of {@link ChainSession} start at a fixed
+ * rate, whether or not earlier ones have finished, and run on a pool of virtual users. Latencies are
+ * reported per endpoint as HDR histograms.
+ * <p>
+ * Options are given as <code>name=value</code> arguments:
+ * <ul>
+ *     <li><code>rate</code>: sessions started per second, default 5</li>
+ *     <li><code>arrivals</code>: <code>constant</code> or <code>poisson</code> spacing of the starts, default constant</li>
+ *     <li><code>warmup</code>, <code>duration</code>: seconds of load not measured and then measured, default 10 and 30</li>
+ *     <li><code>users</code>: max number of sessions running at once, default 200</li>
+ *     <li><code>claims</code>: claims per assertion, default 5</li>
+ *     <li><code>target</code>: base URI of a running server to load; if not given, a server is started in this
+ *         process, backed by the <code>network</code> (<code>dummy</code>, the default, or <code>local</code>,
+ *         in a temporary directory) and configured by the properties file <code>server.config</code>, if any,
+ *         on top of the defaults of {@link Main}</li>
+ *     <li><code>output</code>: directory to write the full distribution of each endpoint to, as .hgrm files</li>
+ * </ul>
+ */
+public class LoadGenerator {
+    private static final long DRAIN_SECONDS = 120;
+
+    private final Properties options;
+    private final Map<String, EndpointStats> stats = createStats();
+    private final Map<String, EndpointStats> warmupStats = createStats();
+
+    LoadGenerator(final Properties options) {
+        this.options = options;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Properties options = new Properties();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals < 1) {
+                throw new IllegalArgumentException("Options must be name=value, not " + arg);
+            }
+            options.setProperty(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    void run() throws Exception {
+        final int users = Integer.parseInt(options.getProperty("users", "200"));
+        // The JDK's HTTP client keeps only 5 idle connections per server by default.
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(users));
+        }
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        final PrivateKey idpKey = keyGen.generateKeyPair().getPrivate();
+
+        final Closeable server = options.getProperty("target") == null ? startServer() : null;
+        final URI base = server != null ? ((InProcessServer) server).uri : URI.create(options.getProperty("target"));
+        final Client client = ClientBuilder.newClient();
+        try {
+            generateLoad(client.target(base).path("chain"), idpKey, users);
+        } finally {
+            client.close();
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private void generateLoad(final WebTarget chain, final PrivateKey idpKey, final int users) throws Exception {
+        final double rate = Double.parseDouble(options.getProperty("rate", "5"));
+        final boolean poisson = "poisson".equals(options.getProperty("arrivals", "constant"));
+        final long warmupSeconds = Long.parseLong(options.getProperty("warmup", "10"));
+        final long durationSeconds = Long.parseLong(options.getProperty("duration", "30"));
+        final int claims = Integer.parseInt(options.getProperty("claims", "5"));
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(users, users, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat("virtual-user-%d").build());
+        final Random random = new Random();
+        final double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        final long start = System.nanoTime();
+        final long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        final long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        System.out.printf("%s sessions per second, %d s warmup, %d s measured, %d virtual users%n",
+                rate, warmupSeconds, durationSeconds, users);
+
+        long started = 0;
+        int maxBacklog = 0;
+        for (long next = start; next < end; started++) {
+            final long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            executor.execute(new ChainSession(chain, idpKey, claims, next, next < measureFrom ? warmupStats : stats));
+            maxBacklog = Math.max(maxBacklog, executor.getQueue().size());
+            next += poisson
+                    ? (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos)
+                    : (long) meanIntervalNanos;
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS)) {
+            System.out.printf("%d sessions not finished %d s after the end, abandoned.%n",
+                    executor.shutdownNow().size() + executor.getActiveCount(), DRAIN_SECONDS);
+        }
+        report(started, maxBacklog, durationSeconds);
+    }
+
+    private void report(final long started, final int maxBacklog, final long durationSeconds) throws IOException {
+        System.out.printf("%d sessions started, at most %d waiting for a virtual user.%n", started, maxBacklog);
+        System.out.println(EndpointStats.header());
+        for (final EndpointStats endpoint : stats.values()) {
+            System.out.println(endpoint.summary(durationSeconds));
+        }
+        final String output = options.getProperty("output");
+        if (output != null) {
+            final Path directory = Files.createDirectories(Paths.get(output));
+            for (final EndpointStats endpoint : stats.values()) {
+                endpoint.writeDistribution(directory);
+            }
+            System.out.println("Distributions written to " + directory);
+        }
+    }
+
+    private InProcessServer startServer() throws Exception {
+        final Properties properties = Main.defaultProperties();
+        properties.setProperty("graphite.address", "");
+        final String config = options.getProperty("server.config");
+        if (config != null) {
+            try (InputStream in = new FileInputStream(config)) {
+                properties.load(in);
+            }
+        }
+        properties.setProperty("http.port", "0");
+
+        final String type = options.getProperty("network", "dummy");
+        final NodeNetwork network;
+        switch (type) {
+            case "dummy":
+                network = new DummyNodeNetwork();
+                break;
+            case "local":
+                network = new LocalNodeNetwork(Files.createTempDirectory("blockchain-load"));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown network " + type + ", must be dummy or local.");
+        }
+        final Server server = JettyServerFactory.createServer(properties, Main.createResourceConfig(properties, network));
+        server.start();
+        final URI uri = URI.create("http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/");
+        System.out.println("Started server at " + uri + " with " + type + " node network.");
+        return new InProcessServer(server, network, uri);
+    }
+
+    private static Map<String, EndpointStats> createStats() {
+        final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+        for (final String endpoint : ChainSession.ENDPOINTS) {
+            stats.put(endpoint, new EndpointStats(endpoint));
+        }
+        return stats;
+    }
+
+    private static class InProcessServer implements Closeable {
+        private final Server server;
+        private final NodeNetwork network;
+        private final URI uri;
+
+        InProcessServer(final Server server, final NodeNetwork network, final URI uri) {
+            this.server = server;
+            this.network = network;
+            this.uri = uri;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                server.stop();
+            } catch (final Exception e) {
+                throw new IOException("Failed stopping server", e);
+            }
+            if (network instanceof Closeable) {
+                ((Closeable) network).close();
+            }
+        }
+    }
+}
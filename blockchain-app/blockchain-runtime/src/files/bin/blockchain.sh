@@ -0,0 +1,18 @@
+#!/bin/sh
+# Starts the blockchain server with the configuration in ../config. If an AppCDS archive made by
+# create-cds-archive.sh is present it is used, which shortens startup; it is ignored otherwise.
+#
+# BLOCKCHAIN_JAR  the server jar with dependencies, default ../lib/blockchain-server.jar
+# JAVA_OPTS       extra JVM options
+set -e
+
+BASE=$(cd "$(dirname "$0")/.." && pwd)
+JAR=${BLOCKCHAIN_JAR:-$BASE/lib/blockchain-server.jar}
+CONFIG=${1:-$BASE/config/tokens.properties}
+ARCHIVE=$BASE/lib/blockchain-server.jsa
+
+if [ -f "$ARCHIVE" ]; then
+    JAVA_OPTS="$JAVA_OPTS -XX:SharedArchiveFile=$ARCHIVE"
+fi
+
+exec java $JAVA_OPTS -Dlog.dir="$BASE/logs" -jar "$JAR" "$CONFIG"
@@ -0,0 +1,32 @@
+#!/bin/sh
+# Creates the AppCDS archive used by blockchain.sh, by starting the server with the given
+# configuration, running the startup warmup and exiting. The classes loaded on the way are
+# dumped to ../lib/blockchain-server.jsa. Rerun it whenever the jar or the JVM changes; a
+# stale archive is rejected by the JVM and startup falls back to loading classes normally.
+# Needs a JDK 13 or later, which can dump archives at exit.
+#
+# BLOCKCHAIN_JAR  the server jar with dependencies, default ../lib/blockchain-server.jar
+set -e
+
+BASE=$(cd "$(dirname "$0")/.." && pwd)
+JAR=${BLOCKCHAIN_JAR:-$BASE/lib/blockchain-server.jar}
+CONFIG=${1:-$BASE/config/tokens.properties}
+ARCHIVE=$BASE/lib/blockchain-server.jsa
+
+TRAINING=$(mktemp)
+trap 'rm -f "$TRAINING"' EXIT
+cat "$CONFIG" > "$TRAINING"
+cat >> "$TRAINING" <<PROPERTIES
+
+http.port=0
+startup.warmup=true
+startup.exit_after_warmup=true
+startup.open_browser=false
+jfr.enabled=false
+graphite.address=
+PROPERTIES
+
+# Classes that cannot be archived, like ones compiled for old class file versions, are left out
+# of the archive; the warnings listing them are not shown.
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -Xlog:cds=error -Dlog.dir="$BASE/logs" -jar "$JAR" "$TRAINING"
+echo "Created $ARCHIVE"
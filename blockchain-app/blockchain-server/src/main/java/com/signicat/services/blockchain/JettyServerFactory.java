@@ -0,0 +1,91 @@
+package com.signicat.services.blockchain;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.glassfish.jersey.jetty.JettyHttpContainer;
+import org.glassfish.jersey.server.ContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+
+/**
+ * Builds the Jetty server from the <code>http.*</code> and <code>jetty.*</code> properties instead
+ * of Jetty's defaults, so it can be sized for the machine it runs on.
+ */
+public class JettyServerFactory {
+    private static final Logger LOG = LogManager.getLogger(JettyServerFactory.class);
+
+    private JettyServerFactory() {
+    }
+
+    /**
+     * Properties, all optional except <code>http.port</code>:
+     * <ul>
+     *     <li><code>jetty.threads.min</code>, <code>jetty.threads.max</code>: size of the thread pool</li>
+     *     <li><code>jetty.threads.idle_timeout_ms</code>: how long threads above the minimum are kept idle</li>
+     *     <li><code>jetty.threads.queue_size</code>: max number of jobs waiting for a thread</li>
+     *     <li><code>jetty.threads.virtual</code>: if true and the JDK has virtual threads, run every job
+     *         on its own virtual thread instead of the pool above</li>
+     *     <li><code>jetty.acceptors</code>, <code>jetty.selectors</code>: -1 to let Jetty pick from the number of cores</li>
+     *     <li><code>jetty.accept_queue_size</code>: backlog of connections not accepted yet, 0 for the OS default</li>
+     *     <li><code>jetty.idle_timeout_ms</code>: how long idle connections are kept open</li>
+     * </ul>
+     * @return the server, not started yet
+     */
+    public static Server createServer(final Properties properties, final ResourceConfig config) {
+        final Server server = new Server(createThreadPool(properties, Executors.class));
+        final ServerConnector connector = new ServerConnector(server,
+                Integer.parseInt(properties.getProperty("jetty.acceptors", "-1")),
+                Integer.parseInt(properties.getProperty("jetty.selectors", "-1")));
+        connector.setPort(Integer.parseInt(properties.getProperty("http.port")));
+        connector.setAcceptQueueSize(Integer.parseInt(properties.getProperty("jetty.accept_queue_size", "0")));
+        connector.setIdleTimeout(Long.parseLong(properties.getProperty("jetty.idle_timeout_ms", "30000")));
+        server.addConnector(connector);
+        server.setHandler(ContainerFactory.createContainer(JettyHttpContainer.class, config));
+        return server;
+    }
+
+    /**
+     * @param executors class with a static <code>newVirtualThreadPerTaskExecutor()</code>, {@link Executors}
+     *         outside of tests
+     */
+    static ThreadPool createThreadPool(final Properties properties, final Class<?> executors) {
+        if (Boolean.parseBoolean(properties.getProperty("jetty.threads.virtual", "false"))) {
+            final ExecutorService executor = newVirtualThreadPerTaskExecutor(executors);
+            if (executor != null) {
+                LOG.info("Serving requests on virtual threads.");
+                return new ExecutorThreadPool(executor);
+            }
+            LOG.warn("Virtual threads are not supported by this JDK, using a thread pool.");
+        }
+        final int minThreads = Integer.parseInt(properties.getProperty("jetty.threads.min", "8"));
+        final int maxThreads = Integer.parseInt(properties.getProperty("jetty.threads.max", "200"));
+        final QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads, minThreads,
+                Integer.parseInt(properties.getProperty("jetty.threads.idle_timeout_ms", "60000")),
+                new BlockingArrayQueue<>(minThreads, minThreads,
+                        Integer.parseInt(properties.getProperty("jetty.threads.queue_size", "1024"))));
+        threadPool.setName("jetty");
+        return threadPool;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() is looked up by reflection, so the server still
+     * builds and runs on JDKs without it.
+     * @return the executor, or null if there are no virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor(final Class<?> executors) {
+        try {
+            return (ExecutorService) executors.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
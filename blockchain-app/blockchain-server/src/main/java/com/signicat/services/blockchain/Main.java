@@ -1,34 +1,66 @@
 package com.signicat.services.blockchain;
 
 import java.awt.Desktop;
+import java.awt.GraphicsEnvironment;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Paths;
 import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
-
-import javax.ws.rs.core.UriBuilder;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.server.Server;
-import org.glassfish.jersey.jetty.JettyHttpContainerFactory;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.signicat.services.blockchain.metrics.FlightEvents;
+import com.signicat.services.blockchain.metrics.Metrics;
+import com.signicat.services.blockchain.node.FaultProfile;
+import com.signicat.services.blockchain.node.SimulatedNodeCluster;
+import com.signicat.services.blockchain.rs.AdmissionFeature;
+import com.signicat.services.blockchain.rs.AdmissionLimiter;
+import com.signicat.services.blockchain.rs.GzipInterceptor;
 import com.signicat.services.blockchain.rs.MainResource;
+import com.signicat.services.blockchain.rs.MetricsFeature;
+import com.signicat.services.blockchain.rs.MetricsResource;
 import com.signicat.services.blockchain.rs.StaticResource;
+import com.signicat.services.blockchain.spi.BatchingNodeNetwork;
+import com.signicat.services.blockchain.spi.ChainVerifier;
+import com.signicat.services.blockchain.spi.CoalescingNodeNetwork;
+import com.signicat.services.blockchain.spi.DeduplicatingNodeNetwork;
 import com.signicat.services.blockchain.spi.DummyNodeNetwork;
+import com.signicat.services.blockchain.spi.LocalNodeNetwork;
+import com.signicat.services.blockchain.spi.NodeNetwork;
+import com.signicat.services.blockchain.spi.PrefetchingNodeNetwork;
 import com.signicat.services.blockchain.spi.TrueNodeNetwork;
 
 /**
  * Main entry point for server.
+ *
+ * Configuration is read from the properties file given as the <code>config.file</code> system
+ * property or as the first argument, on top of the defaults below. See tokens.properties in
+ * blockchain-runtime for what can be set.
  */
 public class Main {
     public static final Clock CLOCK = Clock.systemUTC();
     private static final Logger LOG = LogManager.getLogger(Main.class.getName());
 
     private final Properties properties;
+    private final List<Closeable> closeables = new ArrayList<>();
     private final Server server;
 
     public static void main(final String[] args) {
@@ -39,46 +71,251 @@ public class Main {
         }
     }
 
-    public Main(final String[] args) {
-        properties = new Properties();
+    public Main(final String[] args) throws IOException {
+        properties = defaultProperties();
+        loadConfig(args);
+        final ScheduledReporter reporter = Metrics.startGraphiteReporter(Metrics.registry(), properties);
+        if (reporter != null) {
+            closeables.add(reporter);
+        }
+        final Closeable recording = FlightEvents.startRecording(properties);
+        if (recording != null) {
+            closeables.add(recording);
+        }
+        server = JettyServerFactory.createServer(properties, createResourceConfig());
+        if (server.getThreadPool() instanceof QueuedThreadPool) {
+            final QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+            Metrics.gauge("pool.jetty.size", threadPool::getThreads);
+            Metrics.gauge("pool.jetty.idle", threadPool::getIdleThreads);
+            Metrics.gauge("pool.jetty.queued", threadPool::getQueueSize);
+        }
+    }
+
+    /**
+     * @return the configuration used for anything not set in the config file
+     */
+    public static Properties defaultProperties() {
+        final Properties properties = new Properties();
         properties.put("http.port", "1337");
         properties.put("drain.file.directory", "/var/run");
         properties.put("metrics.context.name", "blockchain");
-        properties.put("graphite.address", "localhost:9109");
-        properties.put("graphite.polling_period_seconds", 30);
+        properties.put("graphite.address", "");
+        properties.put("graphite.polling_period_seconds", "30");
         properties.put("base.uri", "http://localhost:1337/");
-        URI baseUri = UriBuilder
-                .fromUri("http://localhost/")
-                .port(Integer.parseInt(properties.getProperty("http.port")))
-                .build();
-        server = JettyHttpContainerFactory.createServer(baseUri, createResourceConfig());
+        properties.put("node.network", "true");
+        properties.put("node.verify_chain", "false");
+        properties.put("node.threshold_signing", "false");
+        properties.put("node.local.directory", "data");
+        properties.put("node.simulated.size", "3");
+        properties.put("node.batching.enabled", "false");
+        properties.put("node.batching.max_batch_size", "64");
+        properties.put("node.batching.linger_ms", "5");
+        properties.put("node.batching.push_timeout_ms", "30000");
+        properties.put("node.dedup.enabled", "false");
+        properties.put("node.dedup.max_remembered", "10000");
+        properties.put("prefetch.enabled", "false");
+        properties.put("prefetch.concurrency", "4");
+        properties.put("prefetch.max_queued", "256");
+        properties.put("prefetch.ttl_seconds", "30");
+        properties.put("admission.keygen.concurrency", "2");
+        properties.put("admission.keygen.max_queued", "8");
+        properties.put("admission.keygen.max_wait_ms", "2000");
+        properties.put("admission.associate.concurrency", "8");
+        properties.put("admission.associate.max_queued", "32");
+        properties.put("admission.associate.max_wait_ms", "5000");
+        properties.put("static.max_age_seconds", "86400");
+        properties.put("compression.enabled", "true");
+        properties.put("compression.min_size", "1024");
+        properties.put("compression.mime_types",
+                "application/json,application/x-ndjson,text/html,text/css,text/plain,application/javascript");
+        properties.put("startup.warmup", "false");
+        properties.put("startup.warmup.iterations", "10");
+        properties.put("startup.exit_after_warmup", "false");
+        properties.put("startup.open_browser", "true");
+        return properties;
     }
 
-    public ResourceConfig createResourceConfig() {
+    private void loadConfig(final String[] args) throws IOException {
+        final String configFile = System.getProperty("config.file", args.length > 0 ? args[0] : null);
+        if (configFile == null) {
+            LOG.info("No config file given, using defaults.");
+            return;
+        }
+        try (InputStream in = new FileInputStream(new File(configFile))) {
+            properties.load(in);
+        }
+        LOG.info("Loaded config from {}", configFile);
+    }
+
+    public ResourceConfig createResourceConfig() throws IOException {
+        return createResourceConfig(properties, createNodeNetwork());
+    }
+
+    /**
+     * The resources of the server, backed by the given network, for instance to run them on a server
+     * of one's own, as the load generator in blockchain-benchmarks does.
+     */
+    public static ResourceConfig createResourceConfig(final Properties properties, final NodeNetwork network) throws IOException {
         LOG.info("Bootstrapping Blockchain Client");
-        return new ResourceConfig()
-                .register(new StaticResource())
-                .register(new MainResource(new TrueNodeNetwork()));
+        final ResourceConfig config = new ResourceConfig();
+        if (Boolean.parseBoolean(properties.getProperty("compression.enabled"))) {
+            config.register(GzipInterceptor.fromProperties(properties));
+        }
+        final List<AdmissionLimiter> limiters = Arrays.asList(
+                AdmissionLimiter.fromProperties(MainResource.KEYGEN_LIMIT, properties, 1),
+                AdmissionLimiter.fromProperties(MainResource.ASSOCIATE_LIMIT, properties, 1));
+        for (final AdmissionLimiter limiter : limiters) {
+            final String name = MetricRegistry.name("admission", limiter.getName());
+            Metrics.gauge(MetricRegistry.name(name, "in_flight"), limiter::getInFlight);
+            Metrics.gauge(MetricRegistry.name(name, "queued"), limiter::getQueueDepth);
+            Metrics.gauge(MetricRegistry.name(name, "rejected"), limiter::getRejectedCount);
+        }
+        return config
+                .register(SseFeature.class)
+                .register(new MetricsFeature(Metrics.registry()))
+                .register(new MetricsResource(Metrics.registry()))
+                .register(new AdmissionFeature(limiters))
+                .register(new StaticResource(Integer.parseInt(properties.getProperty("static.max_age_seconds"))))
+                .register(new MainResource(network));
     }
 
+    /**
+     * The network named by <code>node.network</code>, one of true, dummy, local or simulated, wrapped
+     * in the batching, deduplicating, coalescing and prefetching layers that are enabled.
+     */
+    private NodeNetwork createNodeNetwork() throws IOException {
+        final String type = properties.getProperty("node.network");
+        NodeNetwork network;
+        switch (type) {
+            case "true":
+                network = createTrueNodeNetwork(properties.getProperty("node.uris") != null
+                        ? Arrays.stream(properties.getProperty("node.uris").split(","))
+                                .map(String::trim)
+                                .map(URI::create)
+                                .collect(Collectors.toList())
+                        : TrueNodeNetwork.DEFAULT_NODES);
+                break;
+            case "dummy":
+                network = new DummyNodeNetwork();
+                break;
+            case "local":
+                final LocalNodeNetwork local = new LocalNodeNetwork(Paths.get(properties.getProperty("node.local.directory")));
+                closeables.add(local);
+                network = local;
+                break;
+            case "simulated":
+                final SimulatedNodeCluster cluster = SimulatedNodeCluster.start(
+                        Integer.parseInt(properties.getProperty("node.simulated.size")), FaultProfile.NONE);
+                closeables.add(cluster);
+                network = createTrueNodeNetwork(cluster.getNodeUris());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown node.network " + type
+                        + ", must be one of true, dummy, local or simulated.");
+        }
+        LOG.info("Using {} node network.", type);
+
+        if (Boolean.parseBoolean(properties.getProperty("node.batching.enabled"))) {
+            final BatchingNodeNetwork batching = new BatchingNodeNetwork(network,
+                    Integer.parseInt(properties.getProperty("node.batching.max_batch_size")),
+                    Long.parseLong(properties.getProperty("node.batching.linger_ms")),
+                    Long.parseLong(properties.getProperty("node.batching.push_timeout_ms")));
+            closeables.add(batching);
+            Metrics.gauge("network.batching.batches", batching::getBatchCount);
+            Metrics.gauge("network.batching.assertions", batching::getAssertionCount);
+            Metrics.gauge("network.batching.mean_size", batching::getMeanBatchSize);
+            Metrics.gauge("network.batching.max_size", batching::getMaxBatchSize);
+            Metrics.gauge("network.batching.mean_linger_ms", batching::getMeanLingerMillis);
+            Metrics.gauge("network.batching.max_linger_ms", batching::getMaxLingerMillis);
+            network = batching;
+        }
+        if (Boolean.parseBoolean(properties.getProperty("node.dedup.enabled"))) {
+            final DeduplicatingNodeNetwork dedup = new DeduplicatingNodeNetwork(network,
+                    Long.parseLong(properties.getProperty("node.dedup.max_remembered")));
+            Metrics.gauge("network.dedup.duplicates", dedup::getDuplicateCount);
+            Metrics.gauge("network.dedup.remembered", dedup::getRememberedCount);
+            network = dedup;
+        }
+        final CoalescingNodeNetwork coalescing = new CoalescingNodeNetwork(network);
+        Metrics.gauge("network.coalescing.requests", coalescing::getRequestCount);
+        Metrics.gauge("network.coalescing.coalesced", coalescing::getCoalescedCount);
+        network = coalescing;
+        if (Boolean.parseBoolean(properties.getProperty("prefetch.enabled"))) {
+            final PrefetchingNodeNetwork prefetching = new PrefetchingNodeNetwork(network,
+                    Integer.parseInt(properties.getProperty("prefetch.concurrency")),
+                    Integer.parseInt(properties.getProperty("prefetch.max_queued")),
+                    Long.parseLong(properties.getProperty("prefetch.ttl_seconds")), TimeUnit.SECONDS);
+            closeables.add(prefetching);
+            Metrics.gauge("network.prefetch.prefetched", prefetching::getPrefetchedCount);
+            Metrics.gauge("network.prefetch.hits", prefetching::getHitCount);
+            Metrics.gauge("network.prefetch.pending", prefetching::getPendingCount);
+            network = prefetching;
+        }
+        return network;
+    }
+
+    private TrueNodeNetwork createTrueNodeNetwork(final List<URI> nodes) {
+        return new TrueNodeNetwork(nodes,
+                Boolean.parseBoolean(properties.getProperty("node.verify_chain")) ? new ChainVerifier() : null,
+                Boolean.parseBoolean(properties.getProperty("node.threshold_signing")));
+    }
+
+    /**
+     * Start the server and, with <code>startup.warmup</code>, warm it up before logging it ready. With
+     * <code>startup.exit_after_warmup</code>, stop right after, as for recording the classes of a warm
+     * server into a class data sharing archive. Otherwise serve until the server is stopped.
+     */
     public void start() {
         try {
             server.start();
         } catch (final Exception e) {
             LOG.warn("Got exception while starting Jetty Server.", e);
         }
-        try {
-            if(Desktop.isDesktopSupported()) {
-                Desktop.getDesktop().browse(URI.create("http://localhost:1337/static/index.html"));
+        final URI localUri = URI.create("http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/");
+        if (Boolean.parseBoolean(properties.getProperty("startup.warmup"))) {
+            try {
+                new Warmup(Integer.parseInt(properties.getProperty("startup.warmup.iterations"))).run(localUri);
+            } catch (final IOException | RuntimeException e) {
+                LOG.warn("Warmup failed, serving anyway.", e);
             }
-        } catch (final IOException e) {
-            e.printStackTrace();
         }
+        LOG.info("Server ready at {}", localUri);
+        if (Boolean.parseBoolean(properties.getProperty("startup.exit_after_warmup"))) {
+            stop();
+            return;
+        }
+        openBrowser();
         try {
             server.join();
         } catch (final InterruptedException e) {
             LOG.info("Interrupted while joining server. Might not be shut down correctly.", e);
         }
+        stop();
+    }
+
+    /**
+     * Open the web client in the desktop's browser, in the background once the server is ready. Skipped
+     * without looking at AWT if <code>startup.open_browser</code> is off, as on servers, and skipped on
+     * headless machines.
+     */
+    private void openBrowser() {
+        if (!Boolean.parseBoolean(properties.getProperty("startup.open_browser")) || GraphicsEnvironment.isHeadless()) {
+            return;
+        }
+        final Thread browse = new Thread(() -> {
+            try {
+                if (Desktop.isDesktopSupported()) {
+                    Desktop.getDesktop().browse(URI.create(properties.getProperty("base.uri")).resolve("static/index.html"));
+                }
+            } catch (final IOException | UnsupportedOperationException e) {
+                LOG.warn("Could not open the browser.", e);
+            }
+        }, "open-browser");
+        browse.setDaemon(true);
+        browse.start();
+    }
+
+    private void stop() {
         try {
             server.stop();
         } catch (final Exception e) {
@@ -86,5 +323,13 @@ public class Main {
                     "Got exception while stopping Jetty Server. Ah, who cares. Do a kill -9 or whatever.",
                     e);
         }
+        // Outermost network layers first, so they can flush to the inner ones.
+        for (int i = closeables.size() - 1; i >= 0; i--) {
+            try {
+                closeables.get(i).close();
+            } catch (final IOException e) {
+                LOG.warn("Got exception while closing {}", closeables.get(i), e);
+            }
+        }
     }
 }
@@ -0,0 +1,155 @@
+package com.signicat.services.blockchain;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.util.Base64;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.signicat.services.blockchain.crypto.HKDF;
+import com.signicat.services.blockchain.crypto.KeyShard;
+import com.signicat.services.blockchain.spi.Assertion;
+import com.signicat.services.blockchain.spi.ClientSignedAssertion;
+import com.signicat.services.blockchain.spi.MasterKey;
+
+/**
+ * Synthetic warmup, run at startup when <code>startup.warmup</code> is set, so the first user requests
+ * after a deploy do not pay for initializing the JCA providers, Jackson and Jersey, or for running the
+ * crypto paths in the interpreter. The crypto paths are run in process with a throwaway master key,
+ * and requests that do not reach the node network are sent to the server itself. Nothing is ever
+ * sent to the node network.
+ */
+public class Warmup {
+    private static final Logger LOG = LogManager.getLogger(Warmup.class);
+    private static final ObjectMapper OM = new ObjectMapper();
+
+    private final int iterations;
+
+    /**
+     * @param iterations how many times to run the crypto paths and the requests
+     */
+    public Warmup(final int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param server base URI of the started server
+     * @throws IOException if any of the warmup requests fails
+     */
+    public void run(final URI server) throws IOException {
+        final long start = System.nanoTime();
+        initializeProviders();
+        final MasterKey masterKey = new MasterKey();
+        final KeyPair idpKeys;
+        try {
+            final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+            keyGen.initialize(2048);
+            idpKeys = keyGen.generateKeyPair();
+        } catch (final GeneralSecurityException e) {
+            throw new IOException("RSA is not supported!", e);
+        }
+        for (int i = 0; i < iterations; i++) {
+            runCryptoPaths(masterKey, idpKeys);
+        }
+        final Client client = ClientBuilder.newClient();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                sendRequests(client, server, masterKey);
+            }
+        } finally {
+            client.close();
+        }
+        LOG.info("Warmed up with {} iterations in {} ms.", iterations,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Look up the algorithms used by the server once, which loads and verifies their providers.
+     */
+    static void initializeProviders() throws IOException {
+        try {
+            KeyFactory.getInstance("RSA");
+            Signature.getInstance("SHA256withRSA");
+            Mac.getInstance("HmacSHA256");
+            Mac.getInstance("HmacSHA512");
+            Cipher.getInstance("AES/CBC/PKCS5Padding");
+            Cipher.getInstance("AES/GCM/NoPadding");
+            new SecureRandom().nextBytes(new byte[32]);
+        } catch (final GeneralSecurityException e) {
+            throw new IOException("Failed initializing crypto providers", e);
+        }
+    }
+
+    /**
+     * What a master key goes through, from being split for the nodes, through assertions being
+     * encrypted, signed and wrapped with it, to being reassembled and serialized.
+     */
+    private static void runCryptoPaths(final MasterKey masterKey, final KeyPair idpKeys) throws IOException {
+        final KeyShard[] shards = masterKey.getSplitPrivateKey(3, 3);
+        new MasterKey(masterKey.getKeyId(), masterKey.getPublicKey(), shards);
+
+        final byte[] tKey = new byte[16];
+        new SecureRandom().nextBytes(tKey);
+        final byte[] privateKey = masterKey.getPrivateKey().getEncoded();
+        final byte[] mtKey = HKDF.hkdfExpand(HKDF.hkdfExtract(
+                Base64.encode(tKey).toString().getBytes(), privateKey), new byte[] {}, privateKey.length);
+        final Assertion assertion = new Assertion(new JWTClaimsSet.Builder()
+                .issuer("warmup")
+                .subject("warmup")
+                .claim("name", "Warmup")
+                .build(), mtKey, tKey, idpKeys.getPrivate());
+        assertion.validateIdPSignature(idpKeys.getPublic());
+
+        final ClientSignedAssertion signed = ClientSignedAssertion.createFromAssertion(masterKey, assertion);
+        final Assertion unwrapped = OM.readValue(OM.writeValueAsString(signed), ClientSignedAssertion.class)
+                .getAssertion(masterKey.getPublicKey());
+        OM.readValue(OM.writeValueAsString(unwrapped.decryptClaims(mtKey).getClaims()), Map.class);
+        MasterKey.fromString(masterKey.getValue());
+    }
+
+    /**
+     * Requests to resources that do not reach the node network, going through Jetty, Jersey, the
+     * filters and interceptors, form parameter conversion and JSON writing.
+     */
+    private static void sendRequests(final Client client, final URI server, final MasterKey masterKey) throws IOException {
+        check(client.target(server).path("static/index.html").request().buildGet());
+        check(client.target(server).path("chain/derivekey").request(MediaType.APPLICATION_JSON)
+                .buildPost(Entity.form(new Form()
+                        .param("masterkey", masterKey.getValue())
+                        .param("t", "warmup"))));
+        check(client.target(server).path("metrics").request(MediaType.APPLICATION_JSON).buildGet());
+    }
+
+    private static void check(final Invocation invocation) throws IOException {
+        final Response response = invocation.invoke();
+        try {
+            response.readEntity(String.class);
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new IOException("Warmup request failed with status " + response.getStatus());
+            }
+        } finally {
+            response.close();
+        }
+    }
+}
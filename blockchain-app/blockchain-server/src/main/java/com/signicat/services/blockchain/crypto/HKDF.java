@@ -46,6 +46,9 @@ import java.util.Arrays;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
+import com.signicat.services.blockchain.metrics.FlightEvents;
+import com.signicat.services.blockchain.metrics.Trace;
+
 /*
  * A standards-compliant implementation of RFC 5869
  * for HMAC-based Key Derivation Function.
@@ -63,8 +66,11 @@ public class HKDF {
      * Input: salt (message), ikm (input keyring material)
      * Output: PRK (pseudorandom key)
      */
+    @SuppressWarnings("try")
     public static byte[] hkdfExtract(final byte[] salt, final byte[] ikm) {
-        return digestBytes(ikm, makeHMACHasher(salt));
+        try (Trace trace = FlightEvents.crypto("hkdf.extract").size(ikm.length)) {
+            return digestBytes(ikm, makeHMACHasher(salt));
+        }
     }
 
     /*
@@ -72,20 +78,23 @@ public class HKDF {
      * Input: PRK from step 1, info, length.
      * Output: OKM (output keyring material).
      */
+    @SuppressWarnings("try")
     public static byte[] hkdfExpand(final byte[] prk, final byte[] info, final int len) {
-        final Mac hmacHasher = makeHMACHasher(prk);
+        try (Trace trace = FlightEvents.crypto("hkdf.expand").size(len)) {
+            final Mac hmacHasher = makeHMACHasher(prk);
 
-        byte[] t  = {};
-        byte[] tn = {};
+            byte[] t  = {};
+            byte[] tn = {};
 
-        final int iterations = (int) Math.ceil(((double)len) / ((double)BLOCKSIZE));
-        for (int i = 0; i < iterations; i++) {
-            tn = digestBytes(concatAll(
-                    tn, info, hex2Byte(Integer.toHexString(i + 1))), hmacHasher);
-            t = concatAll(t, tn);
-        }
+            final int iterations = (int) Math.ceil(((double)len) / ((double)BLOCKSIZE));
+            for (int i = 0; i < iterations; i++) {
+                tn = digestBytes(concatAll(
+                        tn, info, hex2Byte(Integer.toHexString(i + 1))), hmacHasher);
+                t = concatAll(t, tn);
+            }
 
-        return Arrays.copyOfRange(t, 0, len);
+            return Arrays.copyOfRange(t, 0, len);
+        }
     }
 
     /*
@@ -0,0 +1,172 @@
+package com.signicat.services.blockchain.crypto;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * Compact binary encoding of {@link KeyShard}s.
+ *
+ * The JSON form carries the prime and the public key in full, as decimal numbers, in every shard.
+ * Here well-known primes are referred to by a one byte ID and the public key, which the receiver
+ * always gets alongside the shard anyway, by its SHA-256 fingerprint:
+ * <pre>
+ * byte    version (1)
+ * short   key ID length, followed by the UTF-8 key ID
+ * short   share index
+ * short   shares needed to reassemble
+ * byte    prime reference: 0 = inline, 1 = well-known ID, 2 = SHA-256 of a well-known prime
+ *         inline: int length and two's complement bytes; ID: one byte; hash: 32 bytes
+ * int     share length, followed by the two's complement share
+ * 32      SHA-256 of the X.509 encoded public key
+ * </pre>
+ * The text form is the base64url encoding of the above. Decoders also accept the JSON form.
+ */
+public final class KeyShardCodec {
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final byte VERSION = 1;
+    private static final byte PRIME_INLINE = 0;
+    private static final byte PRIME_BY_ID = 1;
+    private static final byte PRIME_BY_HASH = 2;
+    private static final int HASH_BYTES = 32;
+
+    // ID of a prime is its index plus one. Only ever append to this list.
+    private static final List<BigInteger> WELL_KNOWN_PRIMES = ImmutableList.of(TiemensShamirWrapper.PRIME);
+
+    private KeyShardCodec() {}
+
+    /**
+     * @return base64url encoded compact form of the shard
+     */
+    public static String encode(final KeyShard shard) {
+        return Base64URL.encode(toBytes(shard)).toString();
+    }
+
+    public static byte[] toBytes(final KeyShard shard) {
+        final byte[] keyId = shard.getKeyId().getBytes(StandardCharsets.UTF_8);
+        final int primeId = WELL_KNOWN_PRIMES.indexOf(shard.getPrime()) + 1;
+        final byte[] prime = primeId > 0 ? null : shard.getPrime().toByteArray();
+        final byte[] share = shard.getShare().toByteArray();
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + keyId.length + 2 + 2
+                + 1 + (prime != null ? 4 + prime.length : 1)
+                + 4 + share.length + HASH_BYTES);
+        buffer.put(VERSION);
+        buffer.putShort((short) keyId.length).put(keyId);
+        buffer.putShort((short) shard.getShareIndex());
+        buffer.putShort((short) shard.getNeededToReassemble());
+        if (prime != null) {
+            buffer.put(PRIME_INLINE).putInt(prime.length).put(prime);
+        } else {
+            buffer.put(PRIME_BY_ID).put((byte) primeId);
+        }
+        buffer.putInt(share.length).put(share);
+        buffer.put(sha256(shard.getPubkey().toByteArray()));
+        return buffer.array();
+    }
+
+    /**
+     * @param encoded compact base64url form, or the JSON form
+     * @param publicKey public key of the master key the shard belongs to
+     * @throws IOException if the shard is corrupt or belongs to another public key
+     */
+    public static KeyShard decode(final String encoded, final PublicKey publicKey) throws IOException {
+        return decode(encoded, publicKey.getEncoded());
+    }
+
+    /**
+     * @param encoded compact base64url form, or the JSON form
+     * @param encodedPublicKey X.509 encoding of the public key of the master key the shard belongs to
+     * @throws IOException if the shard is corrupt or belongs to another public key
+     */
+    public static KeyShard decode(final String encoded, final byte[] encodedPublicKey) throws IOException {
+        if (isJson(encoded)) {
+            return OM.readValue(encoded, KeyShard.class);
+        }
+        return fromBytes(new Base64URL(encoded).decode(), encodedPublicKey);
+    }
+
+    /**
+     * @param encodedPublicKey X.509 encoding of the public key of the master key the shard belongs to
+     * @throws IOException if the shard is corrupt or belongs to another public key
+     */
+    public static KeyShard fromBytes(final byte[] bytes, final byte[] encodedPublicKey) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            final byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unknown key shard format version " + version);
+            }
+            final byte[] keyId = new byte[buffer.getShort() & 0xffff];
+            buffer.get(keyId);
+            final int shareIndex = buffer.getShort() & 0xffff;
+            final int neededToReassemble = buffer.getShort() & 0xffff;
+            final BigInteger prime = readPrime(buffer);
+            final byte[] share = new byte[buffer.getInt()];
+            buffer.get(share);
+            final byte[] fingerprint = new byte[HASH_BYTES];
+            buffer.get(fingerprint);
+            if (!MessageDigest.isEqual(fingerprint, sha256(encodedPublicKey))) {
+                throw new IOException("Key shard does not belong to the given public key.");
+            }
+            return new KeyShard(
+                    new String(keyId, StandardCharsets.UTF_8),
+                    shareIndex,
+                    neededToReassemble,
+                    prime,
+                    new BigInteger(share),
+                    new BigInteger(encodedPublicKey));
+        } catch (final BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Key shard is truncated.", e);
+        }
+    }
+
+    /**
+     * @return whether the encoded shard is in the JSON form
+     */
+    public static boolean isJson(final String encoded) {
+        return encoded.trim().startsWith("{");
+    }
+
+    private static BigInteger readPrime(final ByteBuffer buffer) throws IOException {
+        final byte reference = buffer.get();
+        if (reference == PRIME_INLINE) {
+            final byte[] prime = new byte[buffer.getInt()];
+            buffer.get(prime);
+            return new BigInteger(prime);
+        } else if (reference == PRIME_BY_ID) {
+            final int id = buffer.get() & 0xff;
+            if (id < 1 || id > WELL_KNOWN_PRIMES.size()) {
+                throw new IOException("Unknown prime ID " + id);
+            }
+            return WELL_KNOWN_PRIMES.get(id - 1);
+        } else if (reference == PRIME_BY_HASH) {
+            final byte[] hash = new byte[HASH_BYTES];
+            buffer.get(hash);
+            for (final BigInteger prime : WELL_KNOWN_PRIMES) {
+                if (MessageDigest.isEqual(hash, sha256(prime.toByteArray()))) {
+                    return prime;
+                }
+            }
+            throw new IOException("Unknown prime hash " + Base64URL.encode(hash));
+        }
+        throw new IOException("Unknown prime reference " + reference);
+    }
+
+    private static byte[] sha256(final byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.signicat.services.blockchain.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Append-only Merkle tree as specified for Certificate Transparency (RFC 6962, section 2.1), with
+ * SHA-256, 0x00-prefixed leaf hashes and 0x01-prefixed interior nodes.
+ *
+ * Hashes of complete subtrees are kept as leaves are appended, so roots and proofs for any tree size
+ * cost O(log n) hashes to produce. Verifying a proof costs O(log n) hashes as well, and needs nothing
+ * but the proof and the roots.
+ */
+public class MerkleTree {
+    private static final byte[] EMPTY_ROOT = sha256(new byte[0]);
+
+    // levels.get(h).get(i) is the hash of the complete subtree of 2^h leaves starting at leaf i * 2^h.
+    private final List<List<byte[]>> levels = new ArrayList<>();
+
+    public MerkleTree() {
+        levels.add(new ArrayList<>());
+    }
+
+    /**
+     * @param leafData data of a leaf
+     * @return the leaf hash, SHA-256(0x00 || leafData)
+     */
+    public static byte[] leafHash(final byte[] leafData) {
+        return sha256(new byte[] {0}, leafData);
+    }
+
+    /**
+     * @param leafHash leaf hash as returned from {@link #leafHash(byte[])}
+     * @return index of the appended leaf
+     */
+    public synchronized long append(final byte[] leafHash) {
+        final List<byte[]> leaves = levels.get(0);
+        leaves.add(leafHash.clone());
+        final long index = leaves.size() - 1;
+        long i = index;
+        int level = 0;
+        while ((i & 1) == 1) {
+            final List<byte[]> nodes = levels.get(level);
+            final byte[] parent = nodeHash(nodes.get((int) i - 1), nodes.get((int) i));
+            level++;
+            if (levels.size() == level) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(parent);
+            i >>= 1;
+        }
+        return index;
+    }
+
+    public synchronized long size() {
+        return levels.get(0).size();
+    }
+
+    /**
+     * @return root hash of the tree made up of the first treeSize leaves
+     */
+    public synchronized byte[] root(final long treeSize) {
+        checkSize(treeSize);
+        return treeSize == 0 ? EMPTY_ROOT.clone() : hash(0, treeSize);
+    }
+
+    /**
+     * @return audit path of the given leaf in the tree made up of the first treeSize leaves
+     */
+    public synchronized List<byte[]> inclusionProof(final long leafIndex, final long treeSize) {
+        checkSize(treeSize);
+        if (leafIndex < 0 || leafIndex >= treeSize) {
+            throw new IllegalArgumentException("Leaf " + leafIndex + " is not in a tree of size " + treeSize);
+        }
+        final List<byte[]> proof = new ArrayList<>();
+        path(leafIndex, 0, treeSize, proof);
+        return proof;
+    }
+
+    /**
+     * @return proof that the tree of the first oldSize leaves is a prefix of the one of the first newSize leaves
+     */
+    public synchronized List<byte[]> consistencyProof(final long oldSize, final long newSize) {
+        checkSize(newSize);
+        if (oldSize < 0 || oldSize > newSize) {
+            throw new IllegalArgumentException("Cannot prove consistency from size " + oldSize + " to " + newSize);
+        }
+        final List<byte[]> proof = new ArrayList<>();
+        if (oldSize > 0 && oldSize < newSize) {
+            subproof(oldSize, 0, newSize, true, proof);
+        }
+        return proof;
+    }
+
+    /**
+     * RFC 9162, section 2.1.3.2.
+     */
+    public static boolean verifyInclusion(
+            final byte[] leafHash, final long leafIndex, final long treeSize, final List<byte[]> proof, final byte[] root) {
+        if (leafIndex < 0 || leafIndex >= treeSize) {
+            return false;
+        }
+        long fn = leafIndex;
+        long sn = treeSize - 1;
+        byte[] r = leafHash;
+        for (final byte[] p : proof) {
+            if (sn == 0) {
+                return false;
+            }
+            if ((fn & 1) == 1 || fn == sn) {
+                r = nodeHash(p, r);
+                if ((fn & 1) == 0) {
+                    do {
+                        fn >>= 1;
+                        sn >>= 1;
+                    } while ((fn & 1) == 0 && fn != 0);
+                }
+            } else {
+                r = nodeHash(r, p);
+            }
+            fn >>= 1;
+            sn >>= 1;
+        }
+        return sn == 0 && MessageDigest.isEqual(r, root);
+    }
+
+    /**
+     * RFC 9162, section 2.1.4.2. Any tree is consistent with the empty tree and with itself.
+     */
+    public static boolean verifyConsistency(
+            final long oldSize, final long newSize, final byte[] oldRoot, final byte[] newRoot, final List<byte[]> proof) {
+        if (oldSize < 0 || oldSize > newSize) {
+            return false;
+        }
+        if (oldSize == newSize) {
+            return proof.isEmpty() && MessageDigest.isEqual(oldRoot, newRoot);
+        }
+        if (oldSize == 0) {
+            return proof.isEmpty();
+        }
+        final List<byte[]> path = new ArrayList<>(proof);
+        if (Long.bitCount(oldSize) == 1) {
+            path.add(0, oldRoot);
+        }
+        if (path.isEmpty()) {
+            return false;
+        }
+        long fn = oldSize - 1;
+        long sn = newSize - 1;
+        while ((fn & 1) == 1) {
+            fn >>= 1;
+            sn >>= 1;
+        }
+        byte[] fr = path.get(0);
+        byte[] sr = path.get(0);
+        for (final byte[] c : path.subList(1, path.size())) {
+            if (sn == 0) {
+                return false;
+            }
+            if ((fn & 1) == 1 || fn == sn) {
+                fr = nodeHash(c, fr);
+                sr = nodeHash(c, sr);
+                if ((fn & 1) == 0) {
+                    do {
+                        fn >>= 1;
+                        sn >>= 1;
+                    } while ((fn & 1) == 0 && fn != 0);
+                }
+            } else {
+                sr = nodeHash(sr, c);
+            }
+            fn >>= 1;
+            sn >>= 1;
+        }
+        return sn == 0 && MessageDigest.isEqual(fr, oldRoot) && MessageDigest.isEqual(sr, newRoot);
+    }
+
+    /**
+     * Computes the root hash of leaves appended one by one, keeping only the O(log n) roots of the
+     * complete subtrees so far instead of the whole tree. For checking streams of leaves.
+     */
+    public static class RootBuilder {
+        private final Deque<byte[]> roots = new ArrayDeque<>();
+        private final Deque<Long> sizes = new ArrayDeque<>();
+        private long size;
+
+        public void add(final byte[] leafHash) {
+            byte[] hash = leafHash;
+            long subtreeSize = 1;
+            while (!sizes.isEmpty() && sizes.peekLast() == subtreeSize) {
+                sizes.pollLast();
+                hash = nodeHash(roots.pollLast(), hash);
+                subtreeSize <<= 1;
+            }
+            roots.addLast(hash);
+            sizes.addLast(subtreeSize);
+            size++;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /**
+         * @return root hash of the leaves added so far, as {@link MerkleTree#root(long)} would return it
+         */
+        public byte[] root() {
+            if (roots.isEmpty()) {
+                return EMPTY_ROOT.clone();
+            }
+            final Iterator<byte[]> fromRight = roots.descendingIterator();
+            byte[] root = fromRight.next();
+            while (fromRight.hasNext()) {
+                root = nodeHash(fromRight.next(), root);
+            }
+            return root;
+        }
+    }
+
+    private void path(final long m, final long lo, final long hi, final List<byte[]> proof) {
+        final long n = hi - lo;
+        if (n == 1) {
+            return;
+        }
+        final long k = Long.highestOneBit(n - 1);
+        if (m < k) {
+            path(m, lo, lo + k, proof);
+            proof.add(hash(lo + k, hi));
+        } else {
+            path(m - k, lo + k, hi, proof);
+            proof.add(hash(lo, lo + k));
+        }
+    }
+
+    private void subproof(final long m, final long lo, final long hi, final boolean complete, final List<byte[]> proof) {
+        final long n = hi - lo;
+        if (m == n) {
+            if (!complete) {
+                proof.add(hash(lo, hi));
+            }
+            return;
+        }
+        final long k = Long.highestOneBit(n - 1);
+        if (m <= k) {
+            subproof(m, lo, lo + k, complete, proof);
+            proof.add(hash(lo + k, hi));
+        } else {
+            subproof(m - k, lo + k, hi, false, proof);
+            proof.add(hash(lo, lo + k));
+        }
+    }
+
+    /**
+     * Hash of the leaves [lo, hi). Ranges produced by the RFC 6962 recursion always have a complete,
+     * aligned left part, so this recurses only down the right edge.
+     */
+    private byte[] hash(final long lo, final long hi) {
+        final long n = hi - lo;
+        if (Long.bitCount(n) == 1 && lo % n == 0) {
+            final int level = Long.numberOfTrailingZeros(n);
+            return levels.get(level).get((int) (lo >> level));
+        }
+        final long k = Long.highestOneBit(n - 1);
+        return nodeHash(hash(lo, lo + k), hash(lo + k, hi));
+    }
+
+    private void checkSize(final long treeSize) {
+        if (treeSize < 0 || treeSize > levels.get(0).size()) {
+            throw new IllegalArgumentException("Tree has " + levels.get(0).size() + " leaves, not " + treeSize);
+        }
+    }
+
+    private static byte[] nodeHash(final byte[] left, final byte[] right) {
+        return sha256(new byte[] {1}, left, right);
+    }
+
+    private static byte[] sha256(final byte[]... parts) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (final byte[] part : parts) {
+                digest.update(part);
+            }
+            return digest.digest();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.signicat.services.blockchain.crypto;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.SignatureException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * RS256 signer collecting partial signatures from the holders of exponent shares, see {@link ThresholdRsa}.
+ */
+public class ThresholdJWSSigner implements JWSSigner {
+    private final RSAPublicKey publicKey;
+    private final PartialSigner partialSigner;
+    private final JCAContext jcaContext = new JCAContext();
+
+    @FunctionalInterface
+    public interface PartialSigner {
+        /**
+         * @return one partial signature of the signing input per exponent share
+         */
+        List<BigInteger> sign(byte[] signingInput) throws IOException;
+    }
+
+    public ThresholdJWSSigner(final RSAPublicKey publicKey, final PartialSigner partialSigner) {
+        this.publicKey = Objects.requireNonNull(publicKey);
+        this.partialSigner = Objects.requireNonNull(partialSigner);
+    }
+
+    @Override
+    public Base64URL sign(final JWSHeader header, final byte[] signingInput) throws JOSEException {
+        if (!JWSAlgorithm.RS256.equals(header.getAlgorithm())) {
+            throw new JOSEException("Threshold signing only supports RS256, not " + header.getAlgorithm());
+        }
+        try {
+            return Base64URL.encode(ThresholdRsa.combine(publicKey, partialSigner.sign(signingInput), signingInput));
+        } catch (final IOException e) {
+            throw new JOSEException("Failed collecting partial signatures.", e);
+        } catch (final SignatureException e) {
+            throw new JOSEException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return Collections.singleton(JWSAlgorithm.RS256);
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return jcaContext;
+    }
+}
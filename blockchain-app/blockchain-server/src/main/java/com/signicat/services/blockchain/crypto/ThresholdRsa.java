@@ -0,0 +1,114 @@
+package com.signicat.services.blockchain.crypto;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * n-of-n threshold RSA signatures (RSASSA-PKCS1-v1_5 with SHA-256), so a master key can sign without
+ * ever being reassembled.
+ *
+ * The private exponent is split additively, d = d_1 + ... + d_n. Each holder computes the partial
+ * signature EM^d_i mod N of the encoded message, and the product of all partials is the ordinary
+ * signature EM^d mod N, verifiable with the plain public key. All but the last share are drawn
+ * uniformly from a range 128 bits wider than the modulus, so the last one is negative, and no share
+ * tells anything about d on its own. Every share is needed; there is no k-of-n variant here.
+ */
+public final class ThresholdRsa {
+    private static final int MASK_BITS = 128;
+    // DER encoded DigestInfo prefix for SHA-256, RFC 8017 section 9.2.
+    private static final byte[] SHA256_DIGEST_INFO = {
+            0x30, 0x31, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02, 0x01,
+            0x05, 0x00, 0x04, 0x20};
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ThresholdRsa() {}
+
+    /**
+     * @return exponent shares summing up to the private exponent of the key
+     */
+    public static BigInteger[] splitExponent(final RSAPrivateKey privateKey, final int numberOfParts) {
+        if (numberOfParts < 1) {
+            throw new IllegalArgumentException("At least one part is needed.");
+        }
+        final BigInteger[] shares = new BigInteger[numberOfParts];
+        BigInteger rest = privateKey.getPrivateExponent();
+        final int bits = privateKey.getModulus().bitLength() + MASK_BITS;
+        for (int i = 0; i < numberOfParts - 1; i++) {
+            shares[i] = new BigInteger(bits, RANDOM);
+            rest = rest.subtract(shares[i]);
+        }
+        shares[numberOfParts - 1] = rest;
+        return shares;
+    }
+
+    /**
+     * @param modulus modulus of the public key
+     * @param exponentShare one of the shares from {@link #splitExponent(RSAPrivateKey, int)}
+     * @param signingInput data to sign
+     * @return partial signature
+     */
+    public static BigInteger partialSign(final BigInteger modulus, final BigInteger exponentShare, final byte[] signingInput) {
+        final BigInteger message = new BigInteger(1, encode(signingInput, (modulus.bitLength() + 7) / 8));
+        return message.modPow(exponentShare, modulus);
+    }
+
+    /**
+     * Multiply the partial signatures of every share and check the result against the public key.
+     * @return the signature, as many bytes as the modulus
+     * @throws SignatureException if a partial is missing or wrong
+     */
+    public static byte[] combine(final RSAPublicKey publicKey, final List<BigInteger> partials, final byte[] signingInput)
+            throws SignatureException {
+        final BigInteger modulus = publicKey.getModulus();
+        final int length = (modulus.bitLength() + 7) / 8;
+        BigInteger signature = BigInteger.ONE;
+        for (final BigInteger partial : partials) {
+            signature = signature.multiply(partial).mod(modulus);
+        }
+        final byte[] expected = encode(signingInput, length);
+        if (!MessageDigest.isEqual(toBytes(signature.modPow(publicKey.getPublicExponent(), modulus), length), expected)) {
+            throw new SignatureException("Partial signatures do not combine into a valid signature.");
+        }
+        return toBytes(signature, length);
+    }
+
+    /**
+     * EMSA-PKCS1-v1_5 encoding with SHA-256, RFC 8017 section 9.2.
+     */
+    private static byte[] encode(final byte[] signingInput, final int length) {
+        final byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(signingInput);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        final int tLength = SHA256_DIGEST_INFO.length + hash.length;
+        if (length < tLength + 11) {
+            throw new IllegalArgumentException("Modulus is too short for SHA-256 signatures.");
+        }
+        final byte[] em = new byte[length];
+        em[1] = 0x01;
+        Arrays.fill(em, 2, length - tLength - 1, (byte) 0xff);
+        System.arraycopy(SHA256_DIGEST_INFO, 0, em, length - tLength, SHA256_DIGEST_INFO.length);
+        System.arraycopy(hash, 0, em, length - hash.length, hash.length);
+        return em;
+    }
+
+    private static byte[] toBytes(final BigInteger value, final int length) {
+        final byte[] bytes = value.toByteArray();
+        if (bytes.length == length) {
+            return bytes;
+        }
+        final byte[] padded = new byte[length];
+        final int copied = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copied, padded, length - copied, copied);
+        return padded;
+    }
+}
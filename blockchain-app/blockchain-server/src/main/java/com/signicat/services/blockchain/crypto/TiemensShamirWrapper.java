@@ -9,7 +9,11 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableList;
+import com.signicat.services.blockchain.metrics.FlightEvents;
+import com.signicat.services.blockchain.metrics.Metrics;
+import com.signicat.services.blockchain.metrics.Trace;
 import com.signicat.services.blockchain.spi.MasterKey;
 
 /**
@@ -41,13 +45,27 @@ public class TiemensShamirWrapper {
             "75215045955033195884758467431662911346052028582195186933515645263172818819650285595633" +
             "45760569763353470715021730910974829705499848622724457605544532425406874575667675230241" +
             "1689523405845520904946167157760395791781215664266986897573";
+    static final BigInteger PRIME = new BigInteger(BIG_PRIME);
 
     private TiemensShamirWrapper() {}
 
+    @SuppressWarnings("try")
     public static KeyShard[] split(
             final int shardsNeededToReconstruct,
             final int totalNumberOfShards,
             final MasterKey masterKey) {
+        try (Timer.Context time = Metrics.time("crypto.shamir.split");
+                Trace trace = FlightEvents.crypto("shamir.split")
+                        .keyId(masterKey.getKeyId())
+                        .size(masterKey.getPublicKey().getModulus().bitLength() / 8)) {
+            return doSplit(shardsNeededToReconstruct, totalNumberOfShards, masterKey);
+        }
+    }
+
+    private static KeyShard[] doSplit(
+            final int shardsNeededToReconstruct,
+            final int totalNumberOfShards,
+            final MasterKey masterKey) {
         final ByteArrayOutputStream bos = new ByteArrayOutputStream();
         final PrintStream outputStream = new PrintStream(bos);
         final BigInteger integerKey = new BigInteger(masterKey.getPrivateKey().getEncoded());
@@ -89,7 +107,17 @@ public class TiemensShamirWrapper {
         return shareLines.toArray(new KeyShard[shareLines.size()]);
     }
 
+    @SuppressWarnings("try")
     public static BigInteger combine(final KeyShard[] shards) {
+        try (Timer.Context time = Metrics.time("crypto.shamir.combine");
+                Trace trace = FlightEvents.crypto("shamir.combine").keyId(shards[0].getKeyId())) {
+            final BigInteger secret = doCombine(shards);
+            trace.size(secret.bitLength() / 8);
+            return secret;
+        }
+    }
+
+    private static BigInteger doCombine(final KeyShard[] shards) {
         final long uniqueShards = Arrays.stream(shards).map(KeyShard::getShareIndex).distinct().count();
         final KeyShard first = shards[0];
         if (uniqueShards < first.getNeededToReassemble()) {
@@ -0,0 +1,29 @@
+package com.signicat.services.blockchain.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A crypto operation, see {@link FlightEvents#crypto(String)}.
+ */
+@Name("com.signicat.blockchain.Crypto")
+@Label("Crypto Operation")
+@Category({"Blockchain", "Crypto"})
+@Description("Shamir split/combine, RSA sign/verify, HKDF or master key generation")
+@StackTrace(false)
+public class CryptoEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Key ID Hash")
+    @Description("Start of the SHA-256 of the key ID")
+    String keyIdHash;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+}
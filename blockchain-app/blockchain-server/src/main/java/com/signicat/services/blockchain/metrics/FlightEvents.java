@@ -0,0 +1,86 @@
+package com.signicat.services.blockchain.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Custom Java Flight Recorder events of the crypto and node network hot paths, so a recording tells
+ * where the time of a slow request went. The events carry hashes of key IDs, never key material.
+ * <p>
+ * The server is built for Java 8, where the flight recorder API may be missing, so the event
+ * classes are only touched once it is known to be there; otherwise every trace is
+ * {@link Trace#NONE}. The events are enabled by the bundled <code>blockchain.jfc</code> profile,
+ * used by the recording started from the <code>jfr.*</code> properties, see
+ * {@link #startRecording(Properties)}.
+ */
+public final class FlightEvents {
+    private static final Logger LOG = LogManager.getLogger(FlightEvents.class);
+    private static final boolean AVAILABLE = isJfrAvailable();
+
+    private FlightEvents() {
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Start tracing a crypto operation, like <code>shamir.split</code> or <code>rsa.sign</code>.
+     */
+    public static Trace crypto(final String operation) {
+        return AVAILABLE ? JfrTraces.crypto(operation) : Trace.NONE;
+    }
+
+    /**
+     * Start tracing a call to a node. Only the scheme, host and port of the URI and the RPC, its first
+     * path segment, are recorded, as the rest of the path may hold key IDs.
+     */
+    public static Trace nodeCall(final String method, final URI uri) {
+        return AVAILABLE ? JfrTraces.nodeCall(method, uri) : Trace.NONE;
+    }
+
+    /**
+     * Start a continuous recording with the bundled profile, if <code>jfr.enabled</code> is set,
+     * keeping <code>jfr.max_age_minutes</code> of events and dumping them to <code>jfr.file</code>
+     * when closed.
+     * @return the recording, or null if not enabled
+     */
+    public static Closeable startRecording(final Properties properties) throws IOException {
+        if (!Boolean.parseBoolean(properties.getProperty("jfr.enabled"))) {
+            return null;
+        }
+        if (!AVAILABLE) {
+            LOG.warn("jfr.enabled is set, but there is no flight recorder in this JVM.");
+            return null;
+        }
+        return JfrTraces.startRecording(properties.getProperty("jfr.file"),
+                Long.parseLong(properties.getProperty("jfr.max_age_minutes", "10")));
+    }
+
+    /**
+     * @return a short hash of the given key ID, to tell keys apart in recordings without naming them
+     */
+    static String hashKeyId(final String keyId) {
+        if (keyId == null) {
+            return null;
+        }
+        return Hashing.sha256().hashString(keyId, StandardCharsets.UTF_8).toString().substring(0, 16);
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, FlightEvents.class.getClassLoader());
+            return JfrTraces.isAvailable();
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
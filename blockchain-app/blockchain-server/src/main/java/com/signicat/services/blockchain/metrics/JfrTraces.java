@@ -0,0 +1,133 @@
+package com.signicat.services.blockchain.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+/**
+ * The flight recorder side of {@link FlightEvents}. Only loaded once the flight recorder is known to
+ * be available.
+ */
+final class JfrTraces {
+    private static final Logger LOG = LogManager.getLogger(JfrTraces.class);
+    static final String PROFILE = "/blockchain.jfc";
+
+    private JfrTraces() {
+    }
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    static Trace crypto(final String operation) {
+        final CryptoEvent event = new CryptoEvent();
+        event.operation = operation;
+        event.begin();
+        return new Trace() {
+            @Override
+            public Trace keyId(final String keyId) {
+                event.keyIdHash = FlightEvents.hashKeyId(keyId);
+                return this;
+            }
+
+            @Override
+            public Trace size(final long bytes) {
+                event.size = bytes;
+                return this;
+            }
+
+            @Override
+            public Trace status(final int status) {
+                return this;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    static Trace nodeCall(final String method, final URI uri) {
+        final NodeCallEvent event = new NodeCallEvent();
+        event.begin();
+        if (event.isEnabled()) {
+            final String path = uri.getPath() != null ? uri.getPath().replaceFirst("^/+", "") : "";
+            final int slash = path.indexOf('/');
+            event.node = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+            event.rpc = slash < 0 ? path : path.substring(0, slash);
+            event.method = method;
+        }
+        return new Trace() {
+            @Override
+            public Trace keyId(final String keyId) {
+                return this;
+            }
+
+            @Override
+            public Trace size(final long bytes) {
+                event.size = bytes;
+                return this;
+            }
+
+            @Override
+            public Trace status(final int status) {
+                event.status = status;
+                return this;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    /**
+     * @return the default settings of the JVM with the events of the bundled profile added
+     */
+    static Map<String, String> settings() throws IOException {
+        final Map<String, String> settings = new HashMap<>();
+        try (Reader reader = new InputStreamReader(JfrTraces.class.getResourceAsStream(PROFILE), StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.getConfiguration("default").getSettings());
+            settings.putAll(Configuration.create(reader).getSettings());
+        } catch (final ParseException e) {
+            throw new IOException("Corrupt flight recorder profile " + PROFILE, e);
+        }
+        return settings;
+    }
+
+    static Closeable startRecording(final String file, final long maxAgeMinutes) throws IOException {
+        final Recording recording = new Recording(settings());
+        recording.setName("blockchain");
+        recording.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+        recording.setToDisk(true);
+        recording.start();
+        LOG.info("Flight recording started, keeping {} minutes.", maxAgeMinutes);
+        return () -> {
+            try {
+                if (file != null && !file.isEmpty()) {
+                    recording.dump(Paths.get(file));
+                    LOG.info("Flight recording written to {}", file);
+                }
+            } finally {
+                recording.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,95 @@
+package com.signicat.services.blockchain.metrics;
+
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.graphite.Graphite;
+import com.codahale.metrics.graphite.GraphiteReporter;
+
+/**
+ * Holder of the metric registry of the server, so code without access to the wiring in
+ * {@link com.signicat.services.blockchain.Main}, like the crypto helpers, can record into it.
+ */
+public class Metrics {
+    private static final Logger LOG = LogManager.getLogger(Metrics.class);
+    private static final MetricRegistry REGISTRY = new MetricRegistry();
+
+    private Metrics() {
+    }
+
+    public static MetricRegistry registry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Start timing with the timer of the given name. Use with try-with-resources.
+     */
+    public static Timer.Context time(final String name) {
+        return REGISTRY.timer(name).time();
+    }
+
+    /**
+     * @return the given part of a metric name with the dots and colons of host names and the like
+     *         replaced, so Graphite does not take it for several levels
+     */
+    public static String escape(final String part) {
+        return part.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    /**
+     * Register a gauge, replacing any earlier one of the same name, for instance of a component that
+     * has been created again.
+     */
+    public static <T> void gauge(final String name, final Gauge<T> gauge) {
+        REGISTRY.remove(name);
+        REGISTRY.register(name, gauge);
+    }
+
+    /**
+     * Register gauges of the size, activity and queue length of a thread pool under the given name.
+     */
+    public static void registerPool(final String name, final ThreadPoolExecutor pool) {
+        gauge(MetricRegistry.name(name, "size"), pool::getPoolSize);
+        gauge(MetricRegistry.name(name, "active"), pool::getActiveCount);
+        gauge(MetricRegistry.name(name, "queued"), () -> pool.getQueue().size());
+    }
+
+    /**
+     * Start reporting to Graphite, as configured by <code>graphite.address</code> (host:port, nothing to
+     * not report), <code>graphite.polling_period_seconds</code> and <code>metrics.context.name</code>,
+     * which prefixes every metric name.
+     * @return the running reporter, or null if reporting is not configured
+     */
+    public static ScheduledReporter startGraphiteReporter(final MetricRegistry registry, final Properties properties) {
+        final String address = properties.getProperty("graphite.address", "").trim();
+        if (address.isEmpty()) {
+            LOG.info("No graphite.address, not reporting metrics.");
+            return null;
+        }
+        final int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("graphite.address must be <host>:<port>, not " + address);
+        }
+        final GraphiteReporter reporter = GraphiteReporter.forRegistry(registry)
+                .prefixedWith(properties.getProperty("metrics.context.name"))
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .filter(MetricFilter.ALL)
+                .build(new Graphite(new InetSocketAddress(
+                        address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)))));
+        final long period = Long.parseLong(properties.getProperty("graphite.polling_period_seconds", "30"));
+        reporter.start(period, TimeUnit.SECONDS);
+        LOG.info("Reporting metrics to {} every {} seconds.", address, period);
+        return reporter;
+    }
+}
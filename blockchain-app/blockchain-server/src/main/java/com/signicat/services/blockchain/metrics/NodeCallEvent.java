@@ -0,0 +1,34 @@
+package com.signicat.services.blockchain.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A request to a node of the network, see {@link FlightEvents#nodeCall(String, java.net.URI)}.
+ */
+@Name("com.signicat.blockchain.NodeCall")
+@Label("Node Call")
+@Category({"Blockchain", "Node Network"})
+@Description("Request to a node, from sending it until the response headers arrive")
+@StackTrace(false)
+public class NodeCallEvent extends jdk.jfr.Event {
+    @Label("Node")
+    String node;
+
+    @Label("RPC")
+    String rpc;
+
+    @Label("Method")
+    String method;
+
+    @Label("Status")
+    int status;
+
+    @Label("Response Size")
+    @DataAmount
+    long size;
+}
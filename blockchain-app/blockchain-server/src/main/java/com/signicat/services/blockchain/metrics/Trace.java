@@ -0,0 +1,49 @@
+package com.signicat.services.blockchain.metrics;
+
+/**
+ * A flight recorder event in progress, see {@link FlightEvents}. Committed on close, if the
+ * recorder wants it. Use with try-with-resources.
+ */
+public interface Trace extends AutoCloseable {
+    /**
+     * Trace doing nothing, for when the flight recorder is not available.
+     */
+    Trace NONE = new Trace() {
+        @Override
+        public Trace keyId(final String keyId) {
+            return this;
+        }
+
+        @Override
+        public Trace size(final long bytes) {
+            return this;
+        }
+
+        @Override
+        public Trace status(final int status) {
+            return this;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Record the key the work is for. Only a hash of the ID is recorded.
+     */
+    Trace keyId(String keyId);
+
+    /**
+     * Record the size in bytes of the input or output of the work.
+     */
+    Trace size(long bytes);
+
+    /**
+     * Record the HTTP status of a node call.
+     */
+    Trace status(int status);
+
+    @Override
+    void close();
+}
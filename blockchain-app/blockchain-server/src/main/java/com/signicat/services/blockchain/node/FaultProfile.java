@@ -0,0 +1,86 @@
+package com.signicat.services.blockchain.node;
+
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Faults a {@link SimulatedNodeResource} injects into the requests it serves.
+ */
+public class FaultProfile {
+    public static final FaultProfile NONE = builder().build();
+
+    private final LatencyDistribution latency;
+    private final double dropRate;
+    private final double corruptShardRate;
+
+    private FaultProfile(final Builder builder) {
+        this.latency = builder.latency;
+        this.dropRate = builder.dropRate;
+        this.corruptShardRate = builder.corruptShardRate;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return probability of a request being answered with 503 Service Unavailable
+     */
+    public double getDropRate() {
+        return dropRate;
+    }
+
+    /**
+     * @return probability of a traded key shard being returned with a tampered share
+     */
+    public double getCorruptShardRate() {
+        return corruptShardRate;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(FaultProfile.class)
+                .add("dropRate", dropRate)
+                .add("corruptShardRate", corruptShardRate)
+                .toString();
+    }
+
+    public static class Builder {
+        private LatencyDistribution latency = LatencyDistribution.NONE;
+        private double dropRate;
+        private double corruptShardRate;
+
+        private Builder() {}
+
+        public Builder latency(final LatencyDistribution latency) {
+            this.latency = Objects.requireNonNull(latency);
+            return this;
+        }
+
+        public Builder dropRate(final double dropRate) {
+            this.dropRate = checkProbability(dropRate);
+            return this;
+        }
+
+        public Builder corruptShardRate(final double corruptShardRate) {
+            this.corruptShardRate = checkProbability(corruptShardRate);
+            return this;
+        }
+
+        public FaultProfile build() {
+            return new FaultProfile(this);
+        }
+
+        private static double checkProbability(final double p) {
+            if (p < 0 || p > 1) {
+                throw new IllegalArgumentException("Probability must be between 0 and 1, got " + p);
+            }
+            return p;
+        }
+    }
+}
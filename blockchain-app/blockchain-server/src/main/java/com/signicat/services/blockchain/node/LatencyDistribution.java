@@ -0,0 +1,36 @@
+package com.signicat.services.blockchain.node;
+
+import java.util.Random;
+
+/**
+ * Distribution of the artificial delay a {@link SimulatedNodeResource} adds to each request.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    LatencyDistribution NONE = random -> 0;
+
+    /**
+     * @param random source of randomness
+     * @return delay in milliseconds before the next request is handled
+     */
+    long nextDelayMillis(Random random);
+
+    static LatencyDistribution fixed(final long millis) {
+        return random -> millis;
+    }
+
+    static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("Max latency must be at least min latency.");
+        }
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * Exponentially distributed latency on top of a fixed base, which gives the long tail typical
+     * of WAN round trips.
+     */
+    static LatencyDistribution exponential(final long baseMillis, final double meanExtraMillis) {
+        return random -> baseMillis + (long) (-meanExtraMillis * Math.log(1 - random.nextDouble()));
+    }
+}
@@ -0,0 +1,115 @@
+package com.signicat.services.blockchain.node;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.List;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.jetty.JettyHttpContainerFactory;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A number of {@link SimulatedNodeResource}s, each served by its own Jetty on localhost. Point a
+ * {@link com.signicat.services.blockchain.spi.TrueNodeNetwork} at {@link #getNodeUris()} to run the
+ * real HTTP client path without any internet access.
+ */
+public class SimulatedNodeCluster implements Closeable {
+    private static final Logger LOG = LogManager.getLogger(SimulatedNodeCluster.class);
+
+    private final List<Server> servers;
+    private final List<SimulatedNodeResource> nodes;
+    private final List<URI> nodeUris;
+
+    private SimulatedNodeCluster(
+            final List<Server> servers, final List<SimulatedNodeResource> nodes, final List<URI> nodeUris) {
+        this.servers = servers;
+        this.nodes = nodes;
+        this.nodeUris = nodeUris;
+    }
+
+    /**
+     * Start a cluster on ephemeral ports.
+     * @param size number of nodes
+     * @param faultProfile faults every node starts out with
+     */
+    public static SimulatedNodeCluster start(final int size, final FaultProfile faultProfile) {
+        return start(size, 0, faultProfile);
+    }
+
+    /**
+     * @param basePort port of the first node. The others get consecutive ports. If 0, ephemeral ports are used.
+     */
+    public static SimulatedNodeCluster start(final int size, final int basePort, final FaultProfile faultProfile) {
+        final ImmutableList.Builder<Server> servers = ImmutableList.builder();
+        final ImmutableList.Builder<SimulatedNodeResource> nodes = ImmutableList.builder();
+        final ImmutableList.Builder<URI> uris = ImmutableList.builder();
+        for (int i = 0; i < size; i++) {
+            final SimulatedNodeResource node = new SimulatedNodeResource(faultProfile);
+            final ResourceConfig config = new ResourceConfig()
+                    .register(JacksonJsonProvider.class)
+                    .register(SseFeature.class)
+                    .register(node);
+            final URI bindUri = UriBuilder.fromUri("http://localhost/")
+                    .port(basePort == 0 ? 0 : basePort + i)
+                    .build();
+            final Server server = JettyHttpContainerFactory.createServer(bindUri, config);
+            final int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            servers.add(server);
+            nodes.add(node);
+            uris.add(UriBuilder.fromUri("http://localhost/").port(port).build());
+        }
+        final SimulatedNodeCluster cluster = new SimulatedNodeCluster(servers.build(), nodes.build(), uris.build());
+        LOG.info("Simulated node cluster started at {} with faults {}", cluster.getNodeUris(), faultProfile);
+        return cluster;
+    }
+
+    public List<URI> getNodeUris() {
+        return nodeUris;
+    }
+
+    public SimulatedNodeResource getNode(final int index) {
+        return nodes.get(index);
+    }
+
+    public void setFaultProfile(final FaultProfile faultProfile) {
+        nodes.forEach(node -> node.setFaultProfile(faultProfile));
+    }
+
+    @Override
+    public void close() {
+        for (final Server server : servers) {
+            try {
+                server.stop();
+            } catch (final Exception e) {
+                LOG.warn("Got exception while stopping simulated node.", e);
+            }
+        }
+    }
+
+    /**
+     * Run a cluster until killed.
+     * Arguments: [number of nodes] [base port] [mean latency ms] [drop rate] [corrupt shard rate]
+     */
+    public static void main(final String[] args) throws Exception {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        final int basePort = args.length > 1 ? Integer.parseInt(args[1]) : 9000;
+        final double meanLatency = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        final FaultProfile profile = FaultProfile.builder()
+                .latency(LatencyDistribution.exponential(0, meanLatency))
+                .dropRate(args.length > 3 ? Double.parseDouble(args[3]) : 0)
+                .corruptShardRate(args.length > 4 ? Double.parseDouble(args[4]) : 0)
+                .build();
+        final SimulatedNodeCluster cluster = start(size, basePort, profile);
+        Runtime.getRuntime().addShutdownHook(new Thread(cluster::close));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,435 @@
+package com.signicat.services.blockchain.node;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nimbusds.jose.util.Base64URL;
+import com.signicat.services.blockchain.crypto.KeyShard;
+import com.signicat.services.blockchain.crypto.KeyShardCodec;
+import com.signicat.services.blockchain.crypto.ThresholdRsa;
+import com.signicat.services.blockchain.rs.SerialEventWriter;
+import com.signicat.services.blockchain.spi.Assertion;
+import com.signicat.services.blockchain.spi.BlockIdPage;
+import com.signicat.services.blockchain.spi.ChainCheckpoint;
+import com.signicat.services.blockchain.spi.ClientSignedAssertion;
+import com.signicat.services.blockchain.spi.KeyBlockIndex;
+import com.signicat.services.blockchain.spi.MerkleProof;
+import com.signicat.services.blockchain.spi.NodeNetworkShardFormat;
+import com.signicat.services.blockchain.spi.NodeNetworkSignRequest;
+import com.signicat.services.blockchain.spi.ProvenBlock;
+import com.signicat.services.blockchain.spi.RecentPushes;
+import com.signicat.services.blockchain.spi.TrueNodeNetwork;
+
+/**
+ * In-memory stand-in for a single blockchain node, speaking the protocol
+ * {@link com.signicat.services.blockchain.spi.TrueNodeNetwork} expects. No signatures are validated;
+ * the point is to exercise the client side with realistic latencies and failures.
+ */
+@Path("/")
+public class SimulatedNodeResource {
+    private static final Logger LOG = LogManager.getLogger(SimulatedNodeResource.class);
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final long RECENT_PUSHES = 10_000;
+    private static final ExecutorService EVENT_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("node-events-%d").setDaemon(true).build());
+
+    private final Map<String, NodeNetworkShardFormat> shards = new ConcurrentHashMap<>();
+    private final Map<String, ClientSignedAssertion> blocks = new ConcurrentHashMap<>();
+    private final KeyBlockIndex blockIndex = new KeyBlockIndex();
+    private final RecentPushes recentPushes = new RecentPushes(RECENT_PUSHES);
+    private final LongAdder duplicatePushes = new LongAdder();
+    private volatile FaultProfile faultProfile;
+
+    public SimulatedNodeResource(final FaultProfile faultProfile) {
+        this.faultProfile = Objects.requireNonNull(faultProfile);
+    }
+
+    public void setFaultProfile(final FaultProfile faultProfile) {
+        this.faultProfile = Objects.requireNonNull(faultProfile);
+    }
+
+    public FaultProfile getFaultProfile() {
+        return faultProfile;
+    }
+
+    /**
+     * @return number of assertion pushes acknowledged as repeats of stored ones
+     */
+    public long getDuplicatePushCount() {
+        return duplicatePushes.sum();
+    }
+
+    @POST
+    @Path("masterkeypart")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response pushMasterKeyPart(
+            @HeaderParam(TrueNodeNetwork.IDEMPOTENCY_KEY_HEADER) final String idempotencyKey,
+            final NodeNetworkShardFormat shard) {
+        injectFaults();
+        final String digest = idempotencyKey != null ? idempotencyKey : RecentPushes.digest(shard.getPrivateKeyPart());
+        final NodeNetworkShardFormat known = shards.get(shard.getKeyId());
+        if (shard.getKeyId().equals(recentPushes.get(digest))
+                && known != null && known.getPrivateKeyPart().equals(shard.getPrivateKeyPart())) {
+            return Response.ok("OK").build();
+        }
+        shards.put(shard.getKeyId(), shard);
+        recentPushes.put(digest, shard.getKeyId());
+        return Response.ok("OK").build();
+    }
+
+    @POST
+    @Path("assertion")
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response pushAssertion(
+            @HeaderParam(TrueNodeNetwork.IDEMPOTENCY_KEY_HEADER) final String idempotencyKey,
+            final String body) {
+        injectFaults();
+        return Response.ok(store(body, idempotencyKey != null ? idempotencyKey : RecentPushes.digest(body))).build();
+    }
+
+    /**
+     * Several assertions in one request, optionally with their digests in the idempotency key.
+     * @return subject IDs of the stored assertions
+     */
+    @POST
+    @Path("assertions")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<String> pushAssertions(
+            @HeaderParam(TrueNodeNetwork.IDEMPOTENCY_KEY_HEADER) final String idempotencyKey,
+            final List<String> bodies) {
+        injectFaults();
+        final String[] digests = idempotencyKey != null
+                ? idempotencyKey.split(TrueNodeNetwork.IDEMPOTENCY_KEY_SEPARATOR)
+                : null;
+        if (digests != null && digests.length != bodies.size()) {
+            throw new BadRequestException("Expected " + bodies.size() + " digests in the idempotency key.");
+        }
+        final List<String> subjectIds = new ArrayList<>(bodies.size());
+        for (int i = 0; i < bodies.size(); i++) {
+            subjectIds.add(store(bodies.get(i), digests != null ? digests[i] : RecentPushes.digest(bodies.get(i))));
+        }
+        return subjectIds;
+    }
+
+    @POST
+    @Path("assertion/trade")
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.APPLICATION_JSON)
+    public NodeNetworkShardFormat tradeAssertion(final String body) {
+        injectFaults();
+        final NodeNetworkShardFormat stored = shardForLogin(body);
+        // The exponent share stays on the node.
+        final NodeNetworkShardFormat shard = new NodeNetworkShardFormat(
+                stored.getKeyId(), stored.getPrivateKeyPart(), stored.getPublicKey());
+        return ThreadLocalRandom.current().nextDouble() < faultProfile.getCorruptShardRate() ? corrupt(shard) : shard;
+    }
+
+    /**
+     * Like trading an assertion, but only the key ID and public key are handed out.
+     */
+    @POST
+    @Path("assertion/key")
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.APPLICATION_JSON)
+    public NodeNetworkShardFormat lookUpKey(final String body) {
+        injectFaults();
+        final NodeNetworkShardFormat shard = shardForLogin(body);
+        return new NodeNetworkShardFormat(shard.getKeyId(), null, shard.getPublicKey());
+    }
+
+    /**
+     * Partial RS256 signature with this node's exponent share of the login subject's master key.
+     */
+    @POST
+    @Path("sign")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.TEXT_PLAIN)
+    public String sign(final NodeNetworkSignRequest request) {
+        injectFaults();
+        final NodeNetworkShardFormat shard = shardForLogin(request.getLogin());
+        if (!shard.getKeyId().equals(request.getKeyId())) {
+            throw new ForbiddenException("Login is not for key " + request.getKeyId());
+        }
+        if (shard.getSigningKeyPart() == null) {
+            throw new NotFoundException("No signing share known for key " + shard.getKeyId());
+        }
+        final BigInteger modulus;
+        try {
+            modulus = ((RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(
+                    new Base64URL(shard.getPublicKey().replace("\"", "")).decode()))).getModulus();
+        } catch (final InvalidKeySpecException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Stored public key is unreadable.", e);
+        }
+        final BigInteger partial = ThresholdRsa.partialSign(modulus,
+                new BigInteger(shard.getSigningKeyPart()), new Base64URL(request.getSigningInput()).decode());
+        return Base64URL.encode(partial.toByteArray()).toString();
+    }
+
+    @GET
+    @Path("blocks/{keyId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<String> listBlockIds(@PathParam("keyId") final String keyId) {
+        injectFaults();
+        return blockIndex.blockIds(keyId);
+    }
+
+    @GET
+    @Path("blocks/{keyId}/page")
+    @Produces(MediaType.APPLICATION_JSON)
+    public BlockIdPage listBlockIdsSince(
+            @PathParam("keyId") final String keyId,
+            @QueryParam("since") @DefaultValue("0") final long cursor,
+            @QueryParam("limit") @DefaultValue("1000") final int limit) {
+        injectFaults();
+        return blockIndex.since(keyId, cursor, limit);
+    }
+
+    /**
+     * Server-sent events of the blocks appended for a key, with sequence numbers as event IDs. The
+     * Last-Event-ID of a reconnecting client takes precedence over the since parameter.
+     */
+    @GET
+    @Path("blocks/{keyId}/events")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public EventOutput streamBlockEvents(
+            @PathParam("keyId") final String keyId,
+            @QueryParam("since") @DefaultValue("0") final long cursor,
+            @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) final Long lastEventId) {
+        injectFaults();
+        final EventOutput output = new EventOutput();
+        final SerialEventWriter writer = new SerialEventWriter(output, EVENT_EXECUTOR);
+        writer.closeWith(blockIndex.subscribe(keyId, lastEventId != null ? lastEventId : cursor,
+                event -> writer.submit(() -> new OutboundEvent.Builder()
+                        .id(Long.toString(event.getSequence()))
+                        .name(TrueNodeNetwork.BLOCK_EVENT)
+                        .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                        .data(String.class, OM.writeValueAsString(event))
+                        .build())));
+        return output;
+    }
+
+    @GET
+    @Path("block/{id}")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String getBlock(@PathParam("id") final String blockId) {
+        injectFaults();
+        final ClientSignedAssertion block = blocks.get(blockId);
+        if (block == null) {
+            throw new NotFoundException("No block with ID " + blockId);
+        }
+        return block.getValue();
+    }
+
+    @GET
+    @Path("block/{id}/proven")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ProvenBlock getProvenBlock(
+            @PathParam("id") final String blockId,
+            @QueryParam("tree_size") final long treeSize) {
+        injectFaults();
+        final ClientSignedAssertion block = blocks.get(blockId);
+        if (block == null) {
+            throw new NotFoundException("No block with ID " + blockId);
+        }
+        final MerkleProof proof = inclusionProof(block.getKeyId(), blockId, treeSize);
+        if (proof == null) {
+            throw new ClientErrorException("Block " + blockId + " is newer than the checkpoint.", Response.Status.CONFLICT);
+        }
+        return new ProvenBlock(block.getValue(), proof);
+    }
+
+    @GET
+    @Path("checkpoint")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ChainCheckpoint getGlobalCheckpoint() {
+        injectFaults();
+        return blockIndex.checkpoint(null);
+    }
+
+    @GET
+    @Path("blocks/{keyId}/checkpoint")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ChainCheckpoint getCheckpoint(@PathParam("keyId") final String keyId) {
+        injectFaults();
+        return blockIndex.checkpoint(keyId);
+    }
+
+    @GET
+    @Path("consistency")
+    @Produces(MediaType.APPLICATION_JSON)
+    public MerkleProof getGlobalConsistencyProof(
+            @QueryParam("from") final long fromSize,
+            @QueryParam("to") final long toSize) {
+        return getConsistencyProof(null, fromSize, toSize);
+    }
+
+    @GET
+    @Path("blocks/{keyId}/consistency")
+    @Produces(MediaType.APPLICATION_JSON)
+    public MerkleProof getConsistencyProof(
+            @PathParam("keyId") final String keyId,
+            @QueryParam("from") final long fromSize,
+            @QueryParam("to") final long toSize) {
+        injectFaults();
+        try {
+            return blockIndex.consistencyProof(keyId, fromSize, toSize);
+        } catch (final IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+    }
+
+    @GET
+    @Path("proof/{blockId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public MerkleProof getGlobalInclusionProof(
+            @PathParam("blockId") final String blockId,
+            @QueryParam("tree_size") final long treeSize) {
+        return getInclusionProof(null, blockId, treeSize);
+    }
+
+    @GET
+    @Path("blocks/{keyId}/proof/{blockId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public MerkleProof getInclusionProof(
+            @PathParam("keyId") final String keyId,
+            @PathParam("blockId") final String blockId,
+            @QueryParam("tree_size") final long treeSize) {
+        injectFaults();
+        final MerkleProof proof = inclusionProof(keyId, blockId, treeSize);
+        if (proof == null) {
+            throw new NotFoundException("Block " + blockId + " is not in the first " + treeSize + " blocks.");
+        }
+        return proof;
+    }
+
+    private MerkleProof inclusionProof(final String keyId, final String blockId, final long treeSize) {
+        try {
+            return blockIndex.inclusionProof(keyId, blockId, treeSize);
+        } catch (final IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param digest digest of the body, used to acknowledge a repeated push without parsing it
+     * @return subject ID of the assertion
+     */
+    private String store(final String body, final String digest) {
+        final String knownId = recentPushes.get(digest);
+        final ClientSignedAssertion known = knownId != null ? blocks.get(knownId) : null;
+        if (known != null && known.getValue().equals(body)) {
+            duplicatePushes.increment();
+            return knownId;
+        }
+        final ClientSignedAssertion assertion;
+        final String subjectId;
+        try {
+            assertion = ClientSignedAssertion.valueOf(body);
+            subjectId = assertion.getSubject();
+        } catch (final ParseException | IOException e) {
+            throw new BadRequestException("Corrupt assertion.", e);
+        }
+        blockIndex.append(assertion.getKeyId(), subjectId,
+                KeyBlockIndex.leafHash(subjectId, assertion.getValue().getBytes(StandardCharsets.UTF_8)),
+                () -> blocks.put(subjectId, assertion));
+        recentPushes.put(digest, subjectId);
+        return subjectId;
+    }
+
+    private NodeNetworkShardFormat shardForLogin(final String login) {
+        final String subjectId;
+        try {
+            subjectId = Assertion.valueOf(login).getJwt().getJWTClaimsSet().getSubject();
+        } catch (final ParseException e) {
+            throw new BadRequestException("Corrupt assertion.", e);
+        }
+        final ClientSignedAssertion block = blocks.get(subjectId);
+        final NodeNetworkShardFormat shard = block != null ? shards.get(block.getKeyId()) : null;
+        if (shard == null) {
+            throw new NotFoundException("No key shard known for subject " + subjectId);
+        }
+        return shard;
+    }
+
+    private void injectFaults() {
+        final FaultProfile profile = faultProfile;
+        final Random random = ThreadLocalRandom.current();
+        final long delay = profile.getLatency().nextDelayMillis(random);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (random.nextDouble() < profile.getDropRate()) {
+            throw new ServiceUnavailableException("Request dropped by fault injection.");
+        }
+    }
+
+    private static NodeNetworkShardFormat corrupt(final NodeNetworkShardFormat shard) {
+        try {
+            final byte[] publicKey = new Base64URL(shard.getPublicKey().replace("\"", "")).decode();
+            final KeyShard original = KeyShardCodec.decode(shard.getPrivateKeyPart(), publicKey);
+            final KeyShard tampered = new KeyShard(
+                    original.getKeyId(),
+                    original.getShareIndex(),
+                    original.getNeededToReassemble(),
+                    original.getPrime(),
+                    original.getShare().add(BigInteger.ONE),
+                    original.getPubkey());
+            LOG.info("Handing out corrupt shard for key {}", shard.getKeyId());
+            final String encoded = KeyShardCodec.isJson(shard.getPrivateKeyPart())
+                    ? OM.writeValueAsString(tampered)
+                    : KeyShardCodec.encode(tampered);
+            return new NodeNetworkShardFormat(shard.getKeyId(), encoded, shard.getPublicKey());
+        } catch (final IOException e) {
+            throw new IllegalStateException("Stored shard is unreadable.", e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.signicat.services.blockchain.rs;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.FeatureContext;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Puts the resource methods marked {@link AdmissionLimited} behind their {@link AdmissionLimiter}.
+ * Requests that are not admitted get a 503 with a Retry-After header. The permit is held until the
+ * response is ready, so for methods resuming an AsyncResponse it covers the work done on other
+ * threads as well.
+ *
+ * Only methods taking a {@link Suspended} AsyncResponse queue for a permit, since they can wait
+ * without holding a server thread: they reach the method at once and must start their work from
+ * {@link #whenAdmitted(ContainerRequestContext)}. Other methods are turned away when no permit is free.
+ */
+public class AdmissionFeature implements DynamicFeature {
+    private static final Logger LOG = LogManager.getLogger(AdmissionFeature.class);
+    private static final String ADMISSION_PROPERTY = AdmissionFeature.class.getName() + ".admission";
+
+    private final Map<String, AdmissionLimiter> limiters;
+
+    public AdmissionFeature(final Collection<AdmissionLimiter> limiters) {
+        this.limiters = limiters.stream().collect(Collectors.toMap(AdmissionLimiter::getName, Function.identity()));
+    }
+
+    @Override
+    public void configure(final ResourceInfo resourceInfo, final FeatureContext context) {
+        final AdmissionLimited limited = resourceInfo.getResourceMethod().getAnnotation(AdmissionLimited.class);
+        if (limited == null) {
+            return;
+        }
+        final AdmissionLimiter limiter = limiters.get(limited.value());
+        if (limiter == null) {
+            LOG.warn("No admission limiter named {}, {} is not limited.", limited.value(),
+                    resourceInfo.getResourceMethod());
+            return;
+        }
+        final boolean suspends = Arrays.stream(resourceInfo.getResourceMethod().getParameterAnnotations())
+                .flatMap(Arrays::stream)
+                .map(Annotation::annotationType)
+                .anyMatch(Suspended.class::equals);
+        context.register(new AdmissionFilter(limiter, suspends));
+    }
+
+    /**
+     * @return completed once the request holds its permit, at once if it needs none, or failed with a
+     *         ServiceUnavailableException if it was turned away while queued
+     */
+    public static CompletableFuture<Void> whenAdmitted(final ContainerRequestContext request) {
+        final AdmissionLimiter.Admission admission = (AdmissionLimiter.Admission) request.getProperty(ADMISSION_PROPERTY);
+        if (admission == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> admitted = new CompletableFuture<>();
+        admission.getAdmitted().thenAccept(granted -> {
+            if (granted) {
+                admitted.complete(null);
+            } else {
+                admitted.completeExceptionally(new ServiceUnavailableException(admission.getRetryAfterSeconds()));
+            }
+        });
+        return admitted;
+    }
+
+    private static class AdmissionFilter implements ContainerRequestFilter, ContainerResponseFilter {
+        private final AdmissionLimiter limiter;
+        private final boolean queue;
+
+        AdmissionFilter(final AdmissionLimiter limiter, final boolean queue) {
+            this.limiter = limiter;
+            this.queue = queue;
+        }
+
+        @Override
+        public void filter(final ContainerRequestContext request) {
+            final AdmissionLimiter.Admission admission = limiter.admit(queue);
+            final CompletableFuture<Boolean> admitted = admission.getAdmitted();
+            if (admitted.isDone() && !admitted.join()) {
+                LOG.debug("Turned away request to {}", limiter.getName());
+                throw new ServiceUnavailableException(limiter.getRetryAfterSeconds());
+            }
+            request.setProperty(ADMISSION_PROPERTY, admission);
+        }
+
+        @Override
+        public void filter(final ContainerRequestContext request, final ContainerResponseContext response) {
+            final Object admission = request.getProperty(ADMISSION_PROPERTY);
+            if (admission != null) {
+                request.removeProperty(ADMISSION_PROPERTY);
+                limiter.release((AdmissionLimiter.Admission) admission);
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.signicat.services.blockchain.rs;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a resource method as limited by the {@link AdmissionLimiter} of the given name, see
+ * {@link AdmissionFeature}. Methods sharing a name share the limit.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AdmissionLimited {
+    String value();
+}
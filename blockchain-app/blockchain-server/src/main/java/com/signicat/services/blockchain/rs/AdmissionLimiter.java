@@ -0,0 +1,206 @@
+package com.signicat.services.blockchain.rs;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Concurrency limit of one group of endpoints, with a bounded number of requests waiting for their
+ * turn for a bounded time. Requests beyond that are turned away at once, so a burst of expensive
+ * requests can not tie up every server thread.
+ *
+ * Waiting takes no thread: a queued {@link Admission} is completed by the release handing its permit
+ * on, or by a timer when it has waited too long. Permits are handed out first come, first served.
+ */
+public class AdmissionLimiter {
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "admission-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final int concurrency;
+    private final int maxQueued;
+    private final long maxWaitMillis;
+    private final long retryAfterSeconds;
+    private final Deque<Admission> waiting = new ArrayDeque<>();
+    private final LongAdder rejected = new LongAdder();
+    private int available;
+
+    /**
+     * @param name name of the endpoint group, as given in {@link AdmissionLimited}
+     * @param concurrency max number of requests served at once
+     * @param maxQueued max number of requests waiting to be served
+     * @param maxWaitMillis how long a request waits to be served before it is turned away
+     * @param retryAfterSeconds what turned away clients are told to wait before retrying
+     */
+    public AdmissionLimiter(final String name, final int concurrency, final int maxQueued,
+                            final long maxWaitMillis, final long retryAfterSeconds) {
+        this.name = name;
+        this.concurrency = concurrency;
+        this.maxQueued = maxQueued;
+        this.maxWaitMillis = maxWaitMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.available = concurrency;
+    }
+
+    /**
+     * Limiter configured by the properties <code>admission.&lt;name&gt;.concurrency</code>,
+     * <code>.max_queued</code>, <code>.max_wait_ms</code> and <code>.retry_after_seconds</code>,
+     * falling back to the given concurrency, no queue, and a retry after one second.
+     */
+    public static AdmissionLimiter fromProperties(final String name, final Properties properties, final int concurrency) {
+        final String prefix = "admission." + name + ".";
+        return new AdmissionLimiter(name,
+                Integer.parseInt(properties.getProperty(prefix + "concurrency", Integer.toString(concurrency))),
+                Integer.parseInt(properties.getProperty(prefix + "max_queued", "0")),
+                Long.parseLong(properties.getProperty(prefix + "max_wait_ms", "0")),
+                Long.parseLong(properties.getProperty(prefix + "retry_after_seconds", "1")));
+    }
+
+    /**
+     * Ask for a permit, queueing for one if there is room in the queue and the caller can wait.
+     * Every admission must be {@link #release(Admission) released}, whatever its outcome.
+     * @param queue whether to queue when no permit is free, instead of being turned away
+     */
+    public Admission admit(final boolean queue) {
+        final Admission admission = new Admission(retryAfterSeconds);
+        synchronized (this) {
+            if (waiting.isEmpty() && available > 0) {
+                available--;
+                admission.granted = true;
+            } else if (queue && maxWaitMillis > 0 && waiting.size() < maxQueued) {
+                waiting.add(admission);
+                admission.timeout = TIMEOUTS.schedule(() -> expire(admission), maxWaitMillis, TimeUnit.MILLISECONDS);
+                return admission;
+            }
+        }
+        if (!admission.granted) {
+            rejected.increment();
+        }
+        admission.admitted.complete(admission.granted);
+        return admission;
+    }
+
+    /**
+     * Return the permit of a granted admission, handing it to the next one waiting, or withdraw an
+     * admission still waiting. Releasing an admission more than once has no further effect.
+     */
+    public void release(final Admission admission) {
+        final Admission next;
+        synchronized (this) {
+            if (admission.released) {
+                return;
+            }
+            admission.released = true;
+            if (!admission.granted) {
+                if (waiting.remove(admission)) {
+                    admission.timeout.cancel(false);
+                }
+                next = null;
+            } else {
+                next = waiting.poll();
+                if (next != null) {
+                    next.granted = true;
+                    next.timeout.cancel(false);
+                } else {
+                    available++;
+                }
+            }
+        }
+        // Completed outside the lock, as that may start the work of the request.
+        admission.admitted.complete(false);
+        if (next != null) {
+            next.admitted.complete(true);
+        }
+    }
+
+    private void expire(final Admission admission) {
+        synchronized (this) {
+            if (!waiting.remove(admission)) {
+                return;
+            }
+        }
+        rejected.increment();
+        admission.admitted.complete(false);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * @return number of requests being served
+     */
+    public synchronized int getInFlight() {
+        return concurrency - available;
+    }
+
+    /**
+     * @return number of requests waiting to be served
+     */
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    /**
+     * @return number of requests turned away
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(AdmissionLimiter.class)
+                .add("name", name)
+                .add("concurrency", concurrency)
+                .add("maxQueued", maxQueued)
+                .add("maxWaitMillis", maxWaitMillis)
+                .toString();
+    }
+
+    /**
+     * One request's claim on a permit.
+     */
+    public static final class Admission {
+        private final CompletableFuture<Boolean> admitted = new CompletableFuture<>();
+        private final long retryAfterSeconds;
+        // Guarded by the limiter.
+        private boolean granted;
+        private boolean released;
+        private ScheduledFuture<?> timeout;
+
+        private Admission(final long retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * @return completed with true once the request holds a permit, or with false if it was turned
+         *         away or withdrawn
+         */
+        public CompletableFuture<Boolean> getAdmitted() {
+            return admitted;
+        }
+
+        /**
+         * @return what the client is told to wait before retrying, if turned away
+         */
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.signicat.services.blockchain.rs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Gzips response entities of the given media types for clients accepting it. Strings and byte
+ * arrays shorter than the minimum size are sent as they are, since gzip would hardly shrink them.
+ * Entities of unknown size, such as streamed dumps, are always compressed. The stream is flushed
+ * through the compressor whenever the resource flushes, so streamed records still arrive one by one.
+ */
+public class GzipInterceptor implements WriterInterceptor {
+    private static final String GZIP = "gzip";
+
+    private final int minSize;
+    private final Set<String> mediaTypes;
+
+    @Context
+    private HttpHeaders requestHeaders;
+
+    /**
+     * @param minSize length of the smallest string or byte array worth compressing
+     * @param mediaTypes media types to compress, without parameters
+     */
+    public GzipInterceptor(final int minSize, final Set<String> mediaTypes) {
+        this.minSize = minSize;
+        this.mediaTypes = ImmutableSet.copyOf(mediaTypes);
+    }
+
+    /**
+     * Interceptor configured by <code>compression.min_size</code> and the comma separated
+     * <code>compression.mime_types</code>.
+     */
+    public static GzipInterceptor fromProperties(final Properties properties) {
+        return new GzipInterceptor(
+                Integer.parseInt(properties.getProperty("compression.min_size", "1024")),
+                Arrays.stream(properties.getProperty("compression.mime_types",
+                        "application/json,application/x-ndjson,text/html,text/css,text/plain,application/javascript")
+                        .split(","))
+                        .map(String::trim)
+                        .collect(Collectors.toSet()));
+    }
+
+    @Override
+    public void aroundWriteTo(final WriterInterceptorContext context) throws IOException {
+        context.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!shouldCompress(context)) {
+            context.proceed();
+            return;
+        }
+        context.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+        context.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+        final GZIPOutputStream gzip = new GZIPOutputStream(context.getOutputStream(), true);
+        context.setOutputStream(gzip);
+        try {
+            context.proceed();
+        } finally {
+            gzip.finish();
+        }
+    }
+
+    private boolean shouldCompress(final WriterInterceptorContext context) {
+        if (context.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)
+                || !acceptsGzip(requestHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING))) {
+            return false;
+        }
+        final MediaType type = context.getMediaType();
+        if (type == null || !mediaTypes.contains(type.getType() + '/' + type.getSubtype())) {
+            return false;
+        }
+        final Object entity = context.getEntity();
+        if (entity instanceof String) {
+            return ((String) entity).length() >= minSize;
+        }
+        if (entity instanceof byte[]) {
+            return ((byte[]) entity).length >= minSize;
+        }
+        return true;
+    }
+
+    /**
+     * @param acceptEncoding Accept-Encoding header of a request, or null
+     * @return true if gzip is in it, with a non-zero quality
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(GZIP)) {
+                return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
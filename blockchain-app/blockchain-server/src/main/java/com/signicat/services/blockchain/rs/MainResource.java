@@ -1,37 +1,70 @@
 package com.signicat.services.blockchain.rs;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
 
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.nimbusds.jose.jwk.OctetSequenceKey;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.signicat.services.blockchain.crypto.HKDF;
+import com.signicat.services.blockchain.metrics.Metrics;
 import com.signicat.services.blockchain.spi.Assertion;
+import com.signicat.services.blockchain.spi.BlockClaims;
+import com.signicat.services.blockchain.spi.BlockEvent;
+import com.signicat.services.blockchain.spi.BlockIdPage;
 import com.signicat.services.blockchain.spi.ClientSignedAssertion;
 import com.signicat.services.blockchain.spi.MasterKey;
 import com.signicat.services.blockchain.spi.NodeNetwork;
+import com.signicat.services.blockchain.spi.TrueNodeNetwork;
 
 import net.minidev.json.JSONObject;
 
@@ -40,18 +73,70 @@ import net.minidev.json.JSONObject;
  */
 @Path("/chain")
 public class MainResource {
+    public static final String CURSOR_HEADER = "X-Block-Cursor";
+    public static final String HAS_MORE_HEADER = "X-Block-Has-More";
+
+    /** Name of the {@link AdmissionLimiter} of master key generation. */
+    public static final String KEYGEN_LIMIT = "keygen";
+    /** Name of the {@link AdmissionLimiter} of associating assertions with keys. */
+    public static final String ASSOCIATE_LIMIT = "associate";
+
     private static final Logger LOG = LogManager.getLogger(MainResource.class);
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final int MAX_DUMP_PARALLELISM = 32;
+    private static final byte[] NEWLINE = {'\n'};
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final ScheduledExecutorService HEARTBEATS = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("sse-heartbeat").setDaemon(true).build());
 
     private final NodeNetwork nodeNetwork;
+    private final ExecutorService decryptionExecutor;
+    private final ExecutorService cryptoExecutor;
 
     public MainResource(final NodeNetwork nodeNetwork) {
+        this(nodeNetwork, Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new ThreadFactoryBuilder().setNameFormat("block-decrypt-%d").setDaemon(true).build()));
+    }
+
+    /**
+     * @param nodeNetwork node network to use
+     * @param decryptionExecutor executor blocks are fetched and decrypted on when streaming data in parallel
+     */
+    public MainResource(final NodeNetwork nodeNetwork, final ExecutorService decryptionExecutor) {
+        this(nodeNetwork, decryptionExecutor, Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new ThreadFactoryBuilder().setNameFormat("crypto-%d").setDaemon(true).build()));
+    }
+
+    /**
+     * @param cryptoExecutor executor master keys are generated and assertions are signed and pushed on,
+     *                       so that work does not hold server threads
+     */
+    public MainResource(
+            final NodeNetwork nodeNetwork, final ExecutorService decryptionExecutor, final ExecutorService cryptoExecutor) {
         this.nodeNetwork = Objects.requireNonNull(nodeNetwork);
+        this.decryptionExecutor = Objects.requireNonNull(decryptionExecutor);
+        this.cryptoExecutor = Objects.requireNonNull(cryptoExecutor);
+        if (decryptionExecutor instanceof ThreadPoolExecutor) {
+            Metrics.registerPool("pool.decrypt", (ThreadPoolExecutor) decryptionExecutor);
+        }
+        if (cryptoExecutor instanceof ThreadPoolExecutor) {
+            Metrics.registerPool("pool.crypto", (ThreadPoolExecutor) cryptoExecutor);
+        }
     }
 
     @POST
     @Path("new")
     @Produces("application/json")
-    public Response generateNewMasterKey() {
+    @AdmissionLimited(KEYGEN_LIMIT)
+    public void generateNewMasterKey(
+            @Context final ContainerRequestContext request,
+            @Suspended final AsyncResponse response) {
+        resumeOnCryptoExecutor(request, response, this::generateNewMasterKey);
+    }
+
+    private Response generateNewMasterKey() {
         final MasterKey masterKey;
         try {
             masterKey = new MasterKey();
@@ -76,9 +161,7 @@ public class MainResource {
     public Response deriveMtKey(
             @FormParam("masterkey") final MasterKey masterKey,
             @FormParam("t") final String salt) {
-        final OctetSequenceKey mtKey = new OctetSequenceKey.Builder(HKDF.hkdfExpand(HKDF.hkdfExtract(
-                salt.getBytes(), masterKey.getPrivateKey().getEncoded()), new byte[]{}, masterKey.getPrivateKey().getEncoded().length))
-                .build();
+        final OctetSequenceKey mtKey = new OctetSequenceKey.Builder(deriveMtKeyBytes(masterKey, salt)).build();
         return Response.ok(mtKey.toJSONObject().toJSONString()).build();
 
     }
@@ -87,9 +170,27 @@ public class MainResource {
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Produces(MediaType.APPLICATION_JSON)
     @Path("authenticated")
-    public Response associateIdpWithAccount(
+    @AdmissionLimited(ASSOCIATE_LIMIT)
+    public void associateIdpWithAccount(
+            @Context final ContainerRequestContext request,
+            @Suspended final AsyncResponse response,
             @FormParam("ass") final Assertion assertion,
-            @FormParam("key") final MasterKey masterKey) {
+            @FormParam("key") final MasterKey masterKey,
+            @FormParam("login") final Assertion login) {
+        resumeOnCryptoExecutor(request, response, () -> associateIdpWithAccount(assertion, masterKey, login));
+    }
+
+    private Response associateIdpWithAccount(final Assertion assertion, final MasterKey masterKey, final Assertion login) {
+        if (masterKey == null && login != null) {
+            // Threshold signing: the nodes sign for the login's master key, which never leaves them.
+            try {
+                nodeNetwork.pushAssertion(nodeNetwork.signAssertion(login, assertion));
+                return Response.ok().build();
+            } catch (final IOException e) {
+                LOG.error("Failed signing assertion on node network.", e);
+                throw new ServerErrorException("Failed while signing assertion on node network :-(", Response.Status.INTERNAL_SERVER_ERROR);
+            }
+        }
         if (masterKey == null) {
             try {
                 return Response.ok(nodeNetwork.pushAssertion(assertion).getValue()).build();
@@ -108,27 +209,244 @@ public class MainResource {
         }
     }
 
+    /**
+     * Dump data of the given master key. If a cursor or a limit is given, only blocks appended after the
+     * cursor are returned, and the cursor to pass on the next call is returned in the
+     * {@value #CURSOR_HEADER} header. {@value #HAS_MORE_HEADER} tells whether there are more pages.
+     */
     @GET
     @Path("dumpdata")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllData(@QueryParam("key") final MasterKey masterKey) {
+    public Response getAllData(
+            @QueryParam("key") final MasterKey masterKey,
+            @QueryParam("since") final Long cursor,
+            @QueryParam("limit") @DefaultValue("0") final int limit) {
         try {
-            final List<String> blockIds = nodeNetwork.listBlockIds(masterKey);
+            final BlockIdPage page = listBlocks(masterKey, cursor, limit);
             final Map<String, Map<String, Object>> data = new HashMap<>();
-            for (final String blockId : blockIds) {
-                final Assertion assertion = nodeNetwork.getBlock(masterKey, blockId);
-                final String tKey = assertion.getJwt().getJWTClaimsSet().getStringClaim("t");
-                final OctetSequenceKey mtKey = OctetSequenceKey.parse((String)deriveMtKey(masterKey, tKey).getEntity());
-                final JWTClaimsSet claims = assertion.decryptClaims(mtKey.toByteArray());
-                data.put(blockId, claims.getClaims());
+            for (final String blockId : page.getBlockIds()) {
+                data.put(blockId, decryptBlock(masterKey, blockId));
             }
-            return Response.ok(new ObjectMapper().writeValueAsString(data)).build();
-        } catch (final IOException | ParseException e) {
+            return withPageHeaders(Response.ok(OM.writeValueAsString(data)), page, cursor, limit).build();
+        } catch (final IOException e) {
             LOG.error("Failed fetching blocks.", e);
             throw new ServerErrorException("Failed while pushing assertion to node network :-(", Response.Status.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Same data as {@link #getAllData(MasterKey, Long, int)}, but written as newline delimited JSON with one
+     * <code>{"block_id": ..., "claims": {...}}</code> record per block, each flushed as soon as the block
+     * is decrypted. With a parallelism above 1, that many blocks are fetched and decrypted concurrently,
+     * but records are still written in block order. If a block fails, an <code>{"block_id": ..., "error": ...}</code>
+     * record is written and the stream ends.
+     */
+    @GET
+    @Path("dumpdata/stream")
+    @Produces("application/x-ndjson")
+    public Response streamAllData(
+            @QueryParam("key") final MasterKey masterKey,
+            @QueryParam("parallelism") @DefaultValue("1") final int parallelism,
+            @QueryParam("since") final Long cursor,
+            @QueryParam("limit") @DefaultValue("0") final int limit) {
+        final BlockIdPage page;
+        try {
+            page = listBlocks(masterKey, cursor, limit);
+        } catch (final IOException e) {
+            LOG.error("Failed listing blocks.", e);
+            throw new ServerErrorException("Failed while listing blocks :-(", Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        final List<String> blockIds = page.getBlockIds();
+        final int window = Math.max(1, Math.min(parallelism, MAX_DUMP_PARALLELISM));
+        final StreamingOutput stream = out -> {
+            if (window == 1) {
+                for (final String blockId : blockIds) {
+                    try {
+                        writeRecord(out, blockRecord(blockId, decryptBlock(masterKey, blockId)));
+                    } catch (final IOException e) {
+                        LOG.error("Failed fetching block {}", blockId, e);
+                        writeRecord(out, errorRecord(blockId, e));
+                        return;
+                    }
+                }
+            } else {
+                streamInParallel(out, masterKey, blockIds, window);
+            }
+        };
+        return withPageHeaders(Response.ok(stream), page, cursor, limit).build();
+    }
+
+    /**
+     * Server-sent events with the decrypted claims of every block appended for the key, as
+     * <code>{"block_id": ..., "claims": {...}}</code> records (or error records, as for the stream above),
+     * so browsers can wait for new data instead of polling dumpdata. Blocks after the cursor come
+     * first. Event IDs are cursors, so a reconnecting browser sends the last one as Last-Event-ID
+     * and only gets what it missed. A heartbeat comment is written every {@value #HEARTBEAT_SECONDS}
+     * seconds, so the subscription of a browser that left is closed even if no block is appended.
+     */
+    @GET
+    @Path("events")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public EventOutput streamEvents(
+            @QueryParam("key") final MasterKey masterKey,
+            @QueryParam("since") @DefaultValue("0") final long cursor,
+            @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) final Long lastEventId) {
+        final EventOutput output = new EventOutput();
+        final SerialEventWriter writer = new SerialEventWriter(output, decryptionExecutor);
+        try {
+            writer.closeWith(nodeNetwork.subscribe(masterKey, lastEventId != null ? lastEventId : cursor,
+                    event -> writer.submit(() -> blockEvent(masterKey, event))));
+        } catch (final IOException e) {
+            LOG.error("Failed subscribing to blocks.", e);
+            throw new ServerErrorException("Failed while subscribing to blocks :-(", Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        writer.startHeartbeat(HEARTBEATS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        return output;
+    }
+
+    private OutboundEvent blockEvent(final MasterKey masterKey, final BlockEvent event) throws IOException {
+        final String blockId = event.getBlockId();
+        Map<String, Object> record;
+        try {
+            record = blockRecord(blockId, decryptBlock(masterKey, blockId));
+        } catch (final IOException e) {
+            LOG.error("Failed fetching block {}", blockId, e);
+            record = errorRecord(blockId, e);
+        }
+        return new OutboundEvent.Builder()
+                .id(Long.toString(event.getSequence()))
+                .name(TrueNodeNetwork.BLOCK_EVENT)
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(String.class, OM.writeValueAsString(record))
+                .build();
+    }
+
+    /**
+     * Start the work once the request is admitted, see {@link AdmissionFeature#whenAdmitted(ContainerRequestContext)}.
+     * Anything but a WebApplicationException is resumed as a 500, since only mapped exceptions go through
+     * the response filters, which return the admission permit.
+     */
+    private void resumeOnCryptoExecutor(
+            final ContainerRequestContext request, final AsyncResponse response, final Supplier<Response> work) {
+        AdmissionFeature.whenAdmitted(request).whenComplete((ignored, e) -> {
+            if (e != null) {
+                response.resume(e);
+            } else {
+                executeOnCryptoExecutor(response, work);
+            }
+        });
+    }
+
+    private void executeOnCryptoExecutor(final AsyncResponse response, final Supplier<Response> work) {
+        try {
+            cryptoExecutor.execute(() -> {
+                try {
+                    response.resume(work.get());
+                } catch (final WebApplicationException e) {
+                    response.resume(e);
+                } catch (final Throwable e) {
+                    LOG.error("Failed on crypto executor.", e);
+                    response.resume(new ServerErrorException(Response.Status.INTERNAL_SERVER_ERROR, e));
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            response.resume(new ServiceUnavailableException(1L));
+        }
+    }
+
+    private BlockIdPage listBlocks(final MasterKey masterKey, final Long cursor, final int limit) throws IOException {
+        if (cursor == null && limit <= 0) {
+            return new BlockIdPage(nodeNetwork.listBlockIds(masterKey), 0, false);
+        }
+        return nodeNetwork.listBlockIdsSince(
+                masterKey, cursor != null ? cursor : 0, limit > 0 ? limit : Integer.MAX_VALUE);
+    }
+
+    private static Response.ResponseBuilder withPageHeaders(
+            final Response.ResponseBuilder builder, final BlockIdPage page, final Long cursor, final int limit) {
+        if (cursor == null && limit <= 0) {
+            return builder;
+        }
+        return builder
+                .header(CURSOR_HEADER, page.getCursor())
+                .header(HAS_MORE_HEADER, page.hasMore());
+    }
+
+    private void streamInParallel(
+            final OutputStream out,
+            final MasterKey masterKey,
+            final List<String> blockIds,
+            final int window) throws IOException {
+        final Deque<Future<Map<String, Object>>> inFlight = new ArrayDeque<>(window);
+        int submitted = 0;
+        int written = 0;
+        try {
+            while (written < blockIds.size()) {
+                while (submitted < blockIds.size() && inFlight.size() < window) {
+                    final String blockId = blockIds.get(submitted++);
+                    inFlight.add(decryptionExecutor.submit(() -> decryptBlock(masterKey, blockId)));
+                }
+                final String blockId = blockIds.get(written++);
+                try {
+                    writeRecord(out, blockRecord(blockId, inFlight.poll().get()));
+                } catch (final ExecutionException e) {
+                    LOG.error("Failed fetching block {}", blockId, e.getCause());
+                    writeRecord(out, errorRecord(blockId, e.getCause()));
+                    return;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while streaming blocks.", e);
+        } finally {
+            inFlight.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private Map<String, Object> decryptBlock(final MasterKey masterKey, final String blockId) throws IOException {
+        final Assertion assertion = nodeNetwork.getBlock(masterKey, blockId);
+        final String tKey;
+        try {
+            tKey = assertion.getJwt().getJWTClaimsSet().getStringClaim("t");
+        } catch (final ParseException e) {
+            throw new IOException("Block " + blockId + " is corrupt.", e);
+        }
+        return assertion.decryptClaims(deriveMtKeyBytes(masterKey, tKey)).getClaims();
+    }
+
+    @SuppressWarnings("try")
+    private static byte[] deriveMtKeyBytes(final MasterKey masterKey, final String salt) {
+        final byte[] privateKey = masterKey.getPrivateKey().getEncoded();
+        try (Timer.Context time = Metrics.time("crypto.hkdf")) {
+            return HKDF.hkdfExpand(HKDF.hkdfExtract(salt.getBytes(), privateKey), new byte[]{}, privateKey.length);
+        }
+    }
+
+    private static Map<String, Object> blockRecord(final String blockId, final Map<String, Object> claims) {
+        final Map<String, Object> record = new LinkedHashMap<>();
+        record.put("block_id", blockId);
+        record.put("claims", claims);
+        return record;
+    }
+
+    private static Map<String, Object> errorRecord(final String blockId, final Throwable e) {
+        final Map<String, Object> record = new LinkedHashMap<>();
+        record.put("block_id", blockId);
+        record.put("error", String.valueOf(e.getMessage()));
+        return record;
+    }
+
+    private static void writeRecord(final OutputStream out, final Map<String, Object> record) throws IOException {
+        out.write(OM.writeValueAsBytes(record));
+        out.write(NEWLINE);
+        out.flush();
+    }
+
+    /**
+     * Claim keys for the requested claims of each block. Only the T value and claim names of the blocks
+     * are looked up, which spares fetching the blocks only on networks with a trusted claim index, see
+     * {@link NodeNetwork#getBlockClaims(MasterKey, String)}.
+     */
     @POST
     @Path("claimkeys")
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
@@ -143,24 +461,30 @@ public class MainResource {
 
             for (final Map.Entry<String, List<String>> blockIdAndClaimNames : blockAndClaimNames.entrySet()) {
                 final String blockId = blockIdAndClaimNames.getKey();
-                final Assertion assertion = nodeNetwork.getBlock(key, blockId);
-                final String tKey = assertion.getJwt().getJWTClaimsSet().getStringClaim("t");
-                final OctetSequenceKey mtKey = OctetSequenceKey.parse((String) deriveMtKey(key, tKey).getEntity());
+                final BlockClaims blockClaims = nodeNetwork.getBlockClaims(key, blockId);
+                if (blockClaims.getT() == null) {
+                    throw new IOException("Block " + blockId + " has no T value.");
+                }
+                final byte[] mtKey = deriveMtKeyBytes(key, blockClaims.getT());
                 for (final String claim : blockIdAndClaimNames.getValue()) {
-                    if (assertion.getJwt().getJWTClaimsSet().getClaim(claim) != null) {
-                        final OctetSequenceKey claimKey = new OctetSequenceKey.Builder(Assertion.makeClaimKey(mtKey.toByteArray(), claim)).build();
+                    if (blockClaims.getClaimNames().contains(claim)) {
+                        final OctetSequenceKey claimKey = new OctetSequenceKey.Builder(Assertion.makeClaimKey(mtKey, claim)).build();
                         claimNameToKeys.put(claim, new Pair(claimKey.toJSONObject(), blockId));
                     }
                 }
             }
-            LOG.info("Master key: " + key.getValue() + " Reuested Claims: " + blockAndClaimNames.toString());
+            LOG.debug("Created claim keys with master key {} for claims {}", key.getKeyId(), blockAndClaimNames);
             return Response.ok(mapper.writeValueAsString(claimNameToKeys)).build();
-        } catch(final ParseException | IOException e){
+        } catch(final IOException e){
             LOG.error("Failed while generating Claim Keys", e);
             throw new ServerErrorException("Failed while creating Claim Keys :-(", Response.Status.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Decrypt claims with the keys from {@link #generateKeys(MasterKey, String)}. Claims are grouped by
+     * block, so every block is fetched once.
+     */
     @POST
     @Path("decryptclaims")
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
@@ -169,14 +493,18 @@ public class MainResource {
         final ObjectMapper mapper = new ObjectMapper();
 
         final Map<String, Pair> keys = mapper.readValue(keysString, new TypeReference<Map<String, Pair>>() {});
+        final Map<String, List<Map.Entry<String, Pair>>> keysByBlock = keys.entrySet().stream()
+                .collect(Collectors.groupingBy(key -> key.getValue().getBlockId(), LinkedHashMap::new, Collectors.toList()));
         final Map<String, String> decryptedClaims = new HashMap<>();
-        for (final Map.Entry<String, Pair> key : keys.entrySet()) {
-            final Assertion ass = nodeNetwork.getBlock(null, key.getValue().blockId);
-            try {
-                decryptedClaims.put(key.getKey(), ass.decryptClaim(key.getKey(), OctetSequenceKey.parse(key.getValue().getKey()).toByteArray(), String.class));
-            } catch (final ParseException e) {
-                LOG.error("Failed parsing key of claim " + key.getKey(), e);
-                throw new ServerErrorException("I failed miserably :-(", Response.Status.INTERNAL_SERVER_ERROR);
+        for (final Map.Entry<String, List<Map.Entry<String, Pair>>> block : keysByBlock.entrySet()) {
+            final Assertion ass = nodeNetwork.getBlock(null, block.getKey());
+            for (final Map.Entry<String, Pair> key : block.getValue()) {
+                try {
+                    decryptedClaims.put(key.getKey(), ass.decryptClaim(key.getKey(), OctetSequenceKey.parse(key.getValue().getKey()).toByteArray(), String.class));
+                } catch (final ParseException e) {
+                    LOG.error("Failed parsing key of claim {}", key.getKey(), e);
+                    throw new ServerErrorException("I failed miserably :-(", Response.Status.INTERNAL_SERVER_ERROR);
+                }
             }
         }
         return Response.ok(mapper.writeValueAsString(decryptedClaims)).build();
@@ -0,0 +1,65 @@
+package com.signicat.services.blockchain.rs;
+
+import java.lang.reflect.Method;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.Response;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Times every resource method, from the request reaching it until its response is ready, so
+ * methods resuming an AsyncResponse are timed to the resume. Server errors are metered too.
+ * Metrics are named <code>rs.&lt;resource class&gt;.&lt;method&gt;</code>.
+ */
+public class MetricsFeature implements DynamicFeature {
+    private static final String TIMER_PROPERTY = MetricsFeature.class.getName() + ".timer";
+
+    private final MetricRegistry registry;
+
+    public MetricsFeature(final MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void configure(final ResourceInfo resourceInfo, final FeatureContext context) {
+        final Method method = resourceInfo.getResourceMethod();
+        final String name = MetricRegistry.name("rs", resourceInfo.getResourceClass().getSimpleName(), method.getName());
+        context.register(new TimingFilter(registry.timer(name), registry.meter(MetricRegistry.name(name, "errors"))));
+    }
+
+    private static class TimingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+        private final Timer timer;
+        private final Meter errors;
+
+        TimingFilter(final Timer timer, final Meter errors) {
+            this.timer = timer;
+            this.errors = errors;
+        }
+
+        @Override
+        public void filter(final ContainerRequestContext request) {
+            request.setProperty(TIMER_PROPERTY, timer.time());
+        }
+
+        @Override
+        public void filter(final ContainerRequestContext request, final ContainerResponseContext response) {
+            final Object context = request.getProperty(TIMER_PROPERTY);
+            if (context instanceof Timer.Context) {
+                request.removeProperty(TIMER_PROPERTY);
+                ((Timer.Context) context).stop();
+            }
+            if (response.getStatusInfo().getFamily() == Response.Status.Family.SERVER_ERROR) {
+                errors.mark();
+            }
+        }
+    }
+}
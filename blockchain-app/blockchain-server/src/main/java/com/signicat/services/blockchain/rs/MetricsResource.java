@@ -0,0 +1,35 @@
+package com.signicat.services.blockchain.rs;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.json.MetricsModule;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Every metric of the server as JSON, for looking at them locally without a Graphite.
+ */
+@Path("/metrics")
+public class MetricsResource {
+    private final MetricRegistry registry;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new MetricsModule(TimeUnit.SECONDS, TimeUnit.MILLISECONDS, false, MetricFilter.ALL));
+
+    public MetricsResource(final MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics() throws JsonProcessingException {
+        return Response.ok(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(registry)).build();
+    }
+}
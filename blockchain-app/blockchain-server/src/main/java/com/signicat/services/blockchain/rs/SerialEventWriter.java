@@ -0,0 +1,110 @@
+package com.signicat.services.blockchain.rs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+/**
+ * Writes server-sent events to an {@link EventOutput} one at a time, in the order they are submitted,
+ * on an executor, so whoever produces them never waits for the client. Once a write fails, usually
+ * because the client went away, the output is closed, later events are dropped and the resource
+ * given to {@link #closeWith(Closeable)} is closed. A client that leaves is noticed on the next event,
+ * or on the next heartbeat when there are none, see {@link #startHeartbeat(ScheduledExecutorService, long, TimeUnit)}.
+ */
+public class SerialEventWriter {
+    private static final Logger LOG = LogManager.getLogger(SerialEventWriter.class);
+    private static final OutboundEvent HEARTBEAT = new OutboundEvent.Builder().comment("heartbeat").build();
+
+    private final EventOutput output;
+    private final Executor executor;
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private Closeable onClose;
+    private ScheduledFuture<?> heartbeat;
+    private boolean closed;
+
+    public SerialEventWriter(final EventOutput output, final Executor executor) {
+        this.output = Objects.requireNonNull(output);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * @param event creates the event to write. Called on the executor, after every event submitted before it is written.
+     */
+    public synchronized void submit(final Callable<OutboundEvent> event) {
+        tail = tail.thenRunAsync(() -> {
+            if (isClosed()) {
+                return;
+            }
+            try {
+                output.write(event.call());
+            } catch (final Exception e) {
+                LOG.debug("Failed writing event, closing stream.", e);
+                close();
+            }
+        }, executor);
+    }
+
+    /**
+     * Write a comment event every period, which clients ignore, so a client that left is noticed even
+     * if no block is ever appended. Stopped when the output is closed.
+     */
+    public synchronized void startHeartbeat(final ScheduledExecutorService scheduler, final long period, final TimeUnit unit) {
+        if (!closed && heartbeat == null) {
+            heartbeat = scheduler.scheduleAtFixedRate(() -> submit(() -> HEARTBEAT), period, period, unit);
+        }
+    }
+
+    /**
+     * @param resource closed along with the output, right away if it already is
+     */
+    public void closeWith(final Closeable resource) {
+        synchronized (this) {
+            if (!closed) {
+                onClose = resource;
+                return;
+            }
+        }
+        closeQuietly(resource);
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public void close() {
+        final Closeable resource;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            resource = onClose;
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+            }
+        }
+        closeQuietly(output);
+        if (resource != null) {
+            closeQuietly(resource);
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            LOG.debug("Failed closing {}", closeable, e);
+        }
+    }
+}
@@ -1,44 +1,182 @@
 package com.signicat.services.blockchain.rs;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.NotFoundException;
-import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-@Path("/static")
+import com.google.common.collect.ImmutableMap;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * Serves the files under static/ on the classpath. They are all read once, when the resource is
+ * created, along with their content type, a strong ETag and a gzipped copy where that is smaller,
+ * so requests are answered from memory. Clients get the gzipped copy if they accept it, a 304 if
+ * their copy is still current, and may cache assets for the max age. HTML pages are revalidated on
+ * every use instead, since their URLs never change.
+ */
+@javax.ws.rs.Path("/static")
 public class StaticResource {
     private static final Logger LOG = LogManager.getLogger(StaticResource.class);
+    private static final String ROOT = "static";
+    private static final Map<String, String> CONTENT_TYPES = ImmutableMap.<String, String>builder()
+            .put("html", "text/html; charset=UTF-8")
+            .put("css", "text/css; charset=UTF-8")
+            .put("js", "application/javascript; charset=UTF-8")
+            .put("json", "application/json")
+            .put("svg", "image/svg+xml")
+            .put("png", "image/png")
+            .put("ico", "image/x-icon")
+            .build();
+
+    private final Map<String, Asset> assets;
+    private final Date loaded = new Date();
+    private final CacheControl assetCacheControl;
+    private final CacheControl pageCacheControl;
+
+    public StaticResource() throws IOException {
+        this(86400);
+    }
+
+    /**
+     * @param maxAgeSeconds how long clients may use a cached asset other than an HTML page without asking
+     */
+    public StaticResource(final int maxAgeSeconds) throws IOException {
+        this.assets = loadAssets();
+        this.assetCacheControl = new CacheControl();
+        assetCacheControl.setMaxAge(maxAgeSeconds);
+        this.pageCacheControl = new CacheControl();
+        pageCacheControl.setNoCache(true);
+        LOG.info("Loaded {} static files.", assets.size());
+    }
 
     @GET
-    @Path("{path:.*}")
+    @javax.ws.rs.Path("{path:.*}")
     public Response getStaticFile(
             @PathParam("path") final String path,
-            @HeaderParam("Accept") final String acceptHeader) throws IOException{
-        final InputStream is = getClass().getClassLoader().getResourceAsStream("static/" + path);
-        if (is == null) {
-            LOG.info("Request for path " + path + " failed. Not found.");
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String acceptEncoding,
+            @Context final Request request) {
+        final Asset asset = assets.get(path);
+        if (asset == null) {
+            LOG.info("Request for path {} failed. Not found.", path);
             throw new NotFoundException("The requested file was not found.");
         }
-        ;
-        final String contentType = Files.probeContentType(new File(path).toPath());
-/*
-        final String contentType;
+        final boolean gzip = asset.gzipped != null && GzipInterceptor.acceptsGzip(acceptEncoding);
+        final EntityTag etag = gzip ? asset.gzippedEtag : asset.etag;
+        final Response.ResponseBuilder notModified = request.evaluatePreconditions(loaded, etag);
+        final Response.ResponseBuilder builder = notModified != null
+                ? notModified
+                : Response.ok(gzip ? asset.gzipped : asset.content, asset.contentType);
+        if (gzip && notModified == null) {
+            builder.encoding("gzip");
+        }
+        return builder
+                .tag(etag)
+                .lastModified(loaded)
+                .cacheControl(asset.contentType.startsWith("text/html") ? pageCacheControl : assetCacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .build();
+    }
+
+    private static Map<String, Asset> loadAssets() throws IOException {
+        final URL root = StaticResource.class.getClassLoader().getResource(ROOT);
+        if (root == null) {
+            LOG.warn("No static files found on the classpath.");
+            return Collections.emptyMap();
+        }
+        final URI uri;
         try {
-            contentType = URLConnection.guessContentTypeFromStream(is);
-        } catch (final IOException e) {
-            LOG.error("Requested static file " + path + " has unrecognizeable content type.", e);
-            throw new ServerErrorException("Internal server error.", Response.Status.INTERNAL_SERVER_ERROR);
-        }*/
-        return Response.ok(is, contentType).build();
+            uri = root.toURI();
+        } catch (final URISyntaxException e) {
+            throw new IOException("Bad static file location " + root, e);
+        }
+        if ("jar".equals(uri.getScheme())) {
+            try (FileSystem jar = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+                return loadAssets(jar.getPath(ROOT));
+            }
+        }
+        return loadAssets(Paths.get(uri));
+    }
+
+    private static Map<String, Asset> loadAssets(final Path root) throws IOException {
+        final ImmutableMap.Builder<String, Asset> assets = ImmutableMap.builder();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                final String path = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                assets.put(path, new Asset(Files.readAllBytes(file), contentType(file)));
+            }
+        }
+        return assets.build();
+    }
+
+    private static String contentType(final Path file) throws IOException {
+        final String name = file.getFileName().toString();
+        final String type = CONTENT_TYPES.get(name.substring(name.lastIndexOf('.') + 1).toLowerCase());
+        if (type != null) {
+            return type;
+        }
+        final String probed = Files.probeContentType(file);
+        return probed != null ? probed : "application/octet-stream";
+    }
+
+    private static class Asset {
+        private final byte[] content;
+        private final byte[] gzipped;
+        private final String contentType;
+        private final EntityTag etag;
+        private final EntityTag gzippedEtag;
+
+        Asset(final byte[] content, final String contentType) throws IOException {
+            this.content = content;
+            this.contentType = contentType;
+            final byte[] compressed = gzip(content);
+            this.gzipped = compressed.length < content.length ? compressed : null;
+            final String hash = Base64URL.encode(sha256(content)).toString();
+            this.etag = new EntityTag(hash);
+            this.gzippedEtag = new EntityTag(hash + "-gz");
+        }
+
+        private static byte[] gzip(final byte[] content) throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(content);
+            }
+            return out.toByteArray();
+        }
+
+        private static byte[] sha256(final byte[] content) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(content);
+            } catch (final NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 }
@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -30,6 +31,9 @@ import com.nimbusds.jose.util.Base64;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import com.signicat.services.blockchain.crypto.HKDF;
+import com.signicat.services.blockchain.metrics.FlightEvents;
+import com.signicat.services.blockchain.metrics.Metrics;
+import com.signicat.services.blockchain.metrics.Trace;
 
 /**
  * Data from an IdP, encrypted by TM and signed by the IdP.
@@ -58,6 +62,7 @@ public class Assertion {
         this.jwt = jwt;
     }
 
+    @SuppressWarnings("try")
     public Assertion(
             final JWTClaimsSet claimsPlainText,
             final byte[] mtKey,
@@ -84,7 +89,8 @@ public class Assertion {
         }
         final SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.RS256), encJwtBuilder.build());
         final JWSSigner signer = new RSASSASigner(idpKey);
-        try {
+        try (Timer.Context time = Metrics.time("crypto.rsa.sign");
+                Trace trace = FlightEvents.crypto("rsa.sign").size(signedJWT.getSigningInput().length)) {
             signedJWT.sign(signer);
         } catch (final JOSEException e) {
             throw new IOException("Failed when signing Assertion.", e);
@@ -92,8 +98,12 @@ public class Assertion {
         this.jwt = signedJWT;
     }
 
+    @SuppressWarnings("try")
     public void validateIdPSignature(final PublicKey idpPubKey) throws IOException {
-        try {
+        try (Timer.Context time = Metrics.time("crypto.rsa.verify");
+                Trace trace = FlightEvents.crypto("rsa.verify")
+                        .keyId(jwt.getHeader().getKeyID())
+                        .size(jwt.getSigningInput().length)) {
             final JWSVerifier verifier = new DefaultJWSVerifierFactory().createJWSVerifier(jwt.getHeader(), idpPubKey);
             jwt.verify(verifier);
         } catch (final JOSEException e) {
@@ -0,0 +1,238 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Node network collecting pushed {@link ClientSignedAssertion}s into batches, sent on with one
+ * {@link NodeNetwork#pushAssertions(List)} call each.
+ *
+ * A batch is sent when it is full, or when its first assertion has waited for the linger time,
+ * whatever comes first. A single sender thread does the sending, so while a batch is in flight the
+ * next one fills up, and the batch size adapts to load. Each push completes when its batch is
+ * acknowledged. If a batch fails, its assertions are pushed one by one, so only the pushes that
+ * fail on their own fail. Blocking pushes give up after the push timeout.
+ */
+public class BatchingNodeNetwork extends ForwardingNodeNetwork implements Closeable {
+    private static final Logger LOG = LogManager.getLogger(BatchingNodeNetwork.class);
+
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final long pushTimeoutMillis;
+    private final BlockingQueue<PendingPush> queue = new LinkedBlockingQueue<>();
+    private final Thread sender;
+    private volatile boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder assertions = new LongAdder();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final LongAdder totalLingerNanos = new LongAdder();
+    private final AtomicLong longestLingerNanos = new AtomicLong();
+
+    /**
+     * @param delegate network to send batches to
+     * @param maxBatchSize max number of assertions per batch
+     * @param lingerMillis max time an assertion waits for others to join its batch
+     * @param pushTimeoutMillis max time {@link #pushAssertion} waits for its batch to be acknowledged
+     */
+    public BatchingNodeNetwork(final NodeNetwork delegate, final int maxBatchSize, final long lingerMillis,
+            final long pushTimeoutMillis) {
+        super(delegate);
+        if (maxBatchSize < 1 || lingerMillis < 0 || pushTimeoutMillis < 1) {
+            throw new IllegalArgumentException(
+                    "Batch size and push timeout must be positive and linger time not negative.");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.pushTimeoutMillis = pushTimeoutMillis;
+        sender = new Thread(this::sendLoop, "assertion-batcher");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Queue an assertion for the next batch.
+     * @return future completed once the batch holding the assertion is acknowledged by the network
+     */
+    public CompletableFuture<Void> pushAssertionAsync(final ClientSignedAssertion assertion) {
+        final PendingPush pending = new PendingPush(assertion);
+        synchronized (queue) {
+            if (closed) {
+                pending.future.completeExceptionally(new IOException("Batching node network is closed."));
+            } else {
+                queue.add(pending);
+            }
+        }
+        return pending.future;
+    }
+
+    /**
+     * Queue an assertion for the next batch and wait for the batch to be acknowledged.
+     */
+    @Override
+    public void pushAssertion(final ClientSignedAssertion assertion) throws IOException {
+        try {
+            pushAssertionAsync(assertion).get(pushTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while pushing assertion.", e);
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException("Failed pushing assertion.", e.getCause());
+        } catch (final TimeoutException e) {
+            throw new IOException("Timed out after " + pushTimeoutMillis + " ms waiting for assertion batch.", e);
+        }
+    }
+
+    /**
+     * @return number of batches sent
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return number of assertions sent in batches
+     */
+    public long getAssertionCount() {
+        return assertions.sum();
+    }
+
+    public double getMeanBatchSize() {
+        final long count = batches.sum();
+        return count == 0 ? 0 : (double) assertions.sum() / count;
+    }
+
+    public long getMaxBatchSize() {
+        return largestBatch.get();
+    }
+
+    /**
+     * @return mean time from the first assertion of a batch being queued until the batch was sent
+     */
+    public double getMeanLingerMillis() {
+        final long count = batches.sum();
+        return count == 0 ? 0 : totalLingerNanos.sum() / 1e6 / count;
+    }
+
+    public double getMaxLingerMillis() {
+        return longestLingerNanos.get() / 1e6;
+    }
+
+    /**
+     * Stop accepting pushes and send what is queued.
+     */
+    @Override
+    public void close() {
+        markClosed();
+        try {
+            sender.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendLoop() {
+        final List<PendingPush> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                final PendingPush first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = first.queuedAt + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    final long remaining = deadline - System.nanoTime();
+                    final PendingPush next = remaining > 0 && !closed
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                send(batch, System.nanoTime() - first.queuedAt);
+            } catch (final InterruptedException e) {
+                LOG.warn("Assertion batcher interrupted, pending pushes are failed.");
+                markClosed();
+                batch.forEach(p -> p.future.completeExceptionally(new IOException("Batcher interrupted.", e)));
+            } finally {
+                batch.clear();
+            }
+        }
+        final IOException closedException = new IOException("Batching node network is closed.");
+        PendingPush pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(closedException);
+        }
+    }
+
+    /**
+     * Closed is set under the queue lock, so no push can be queued after the sender has seen the
+     * queue closed and empty.
+     */
+    private void markClosed() {
+        synchronized (queue) {
+            closed = true;
+        }
+    }
+
+    private void send(final List<PendingPush> batch, final long lingeredNanos) {
+        batches.increment();
+        assertions.add(batch.size());
+        largestBatch.accumulateAndGet(batch.size(), Math::max);
+        totalLingerNanos.add(lingeredNanos);
+        longestLingerNanos.accumulateAndGet(lingeredNanos, Math::max);
+        try {
+            delegate.pushAssertions(batch.stream().map(p -> p.assertion).collect(Collectors.toList()));
+            batch.forEach(p -> p.future.complete(null));
+        } catch (final IOException | RuntimeException e) {
+            if (batch.size() == 1) {
+                LOG.error("Failed pushing assertion.", e);
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+            LOG.warn("Failed pushing batch of {} assertions, pushing them one by one.", batch.size(), e);
+            batch.forEach(this::sendOne);
+        }
+    }
+
+    /**
+     * Push a single assertion of a failed batch, so a bad assertion only fails its own push.
+     */
+    private void sendOne(final PendingPush pending) {
+        try {
+            delegate.pushAssertion(pending.assertion);
+            pending.future.complete(null);
+        } catch (final IOException | RuntimeException e) {
+            LOG.error("Failed pushing assertion.", e);
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private static class PendingPush {
+        private final ClientSignedAssertion assertion;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingPush(final ClientSignedAssertion assertion) {
+            this.assertion = assertion;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import net.minidev.json.JSONObject;
+
+/**
+ * Plaintext parts of a block needed to derive claim keys: the T value and the names of the claims,
+ * which are the (unencrypted) keys of the wrapped assertion's payload. Kept alongside every block, so
+ * claim keys can be handed out without fetching and parsing the block.
+ */
+public class BlockClaims {
+    private final String blockId;
+    private final String keyId;
+    private final String t;
+    private final List<String> claimNames;
+
+    @JsonCreator
+    public BlockClaims(
+            @JsonProperty("block_id") final String blockId,
+            @JsonProperty("key_id") final String keyId,
+            @JsonProperty("t") final String t,
+            @JsonProperty("claim_names") final List<String> claimNames) {
+        this.blockId = blockId;
+        this.keyId = keyId;
+        this.t = t;
+        this.claimNames = ImmutableList.copyOf(claimNames);
+    }
+
+    /**
+     * Read the claim names of a block without validating or unwrapping it. Claims with null values are left out.
+     */
+    public static BlockClaims of(final String blockId, final ClientSignedAssertion block) throws IOException {
+        final JSONObject payload;
+        try {
+            payload = block.getJWT().getJWTClaimsSet().getJSONObjectClaim("payload");
+        } catch (final ParseException e) {
+            throw new IOException("Block " + blockId + " is corrupt.", e);
+        }
+        if (payload == null) {
+            throw new IOException("Block " + blockId + " wraps no assertion.");
+        }
+        final Object t = payload.get("t");
+        return new BlockClaims(blockId, block.getKeyId(), t != null ? t.toString() : null, payload.entrySet().stream()
+                .filter(claim -> claim.getValue() != null)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .collect(Collectors.toList()));
+    }
+
+    @JsonProperty("block_id")
+    public String getBlockId() {
+        return blockId;
+    }
+
+    @JsonProperty("key_id")
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * @return the T value the block's MT key is derived with, or null if the block has none
+     */
+    @JsonProperty("t")
+    public String getT() {
+        return t;
+    }
+
+    /**
+     * @return names of the claims in the block, sorted
+     */
+    @JsonProperty("claim_names")
+    public List<String> getClaimNames() {
+        return claimNames;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof BlockClaims)) {
+            return false;
+        }
+        final BlockClaims other = (BlockClaims) o;
+        return Objects.equals(blockId, other.blockId)
+                && Objects.equals(keyId, other.keyId)
+                && Objects.equals(t, other.t)
+                && Objects.equals(claimNames, other.claimNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(blockId, keyId, t, claimNames);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(BlockClaims.class)
+                .add("blockId", blockId)
+                .add("keyId", keyId)
+                .add("claimNames", claimNames)
+                .toString();
+    }
+}
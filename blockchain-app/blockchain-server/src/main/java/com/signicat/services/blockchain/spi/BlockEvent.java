@@ -0,0 +1,68 @@
+package com.signicat.services.blockchain.spi;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+
+/**
+ * A block appended for a master key, as told to a {@link BlockListener}.
+ */
+public class BlockEvent {
+    private final String keyId;
+    private final String blockId;
+    private final long sequence;
+
+    @JsonCreator
+    public BlockEvent(
+            @JsonProperty("key_id") final String keyId,
+            @JsonProperty("block_id") final String blockId,
+            @JsonProperty("sequence") final long sequence) {
+        this.keyId = keyId;
+        this.blockId = blockId;
+        this.sequence = sequence;
+    }
+
+    @JsonProperty("key_id")
+    public String getKeyId() {
+        return keyId;
+    }
+
+    @JsonProperty("block_id")
+    public String getBlockId() {
+        return blockId;
+    }
+
+    /**
+     * @return sequence number of the append within its key, usable as cursor for
+     * {@link NodeNetwork#listBlockIdsSince(MasterKey, long, int)} and {@link NodeNetwork#subscribe(MasterKey, long, BlockListener)}
+     */
+    @JsonProperty("sequence")
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof BlockEvent)) {
+            return false;
+        }
+        final BlockEvent other = (BlockEvent) o;
+        return Objects.equals(keyId, other.keyId) && Objects.equals(blockId, other.blockId) && sequence == other.sequence;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(keyId, blockId, sequence);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(BlockEvent.class)
+                .add("keyId", keyId)
+                .add("blockId", blockId)
+                .add("sequence", sequence)
+                .toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.signicat.services.blockchain.spi;
+
+import java.util.List;
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * One page of block IDs from {@link NodeNetwork#listBlockIdsSince(MasterKey, long, int)}.
+ */
+public class BlockIdPage {
+    private final List<String> blockIds;
+    private final long cursor;
+    private final boolean hasMore;
+
+    @JsonCreator
+    public BlockIdPage(
+            @JsonProperty("block_ids") final List<String> blockIds,
+            @JsonProperty("cursor") final long cursor,
+            @JsonProperty("has_more") final boolean hasMore) {
+        this.blockIds = ImmutableList.copyOf(blockIds);
+        this.cursor = cursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * @return IDs of blocks appended or replaced after the requested cursor, oldest first
+     */
+    @JsonProperty("block_ids")
+    public List<String> getBlockIds() {
+        return blockIds;
+    }
+
+    /**
+     * @return cursor to pass on the next call to only get blocks after this page
+     */
+    @JsonProperty("cursor")
+    public long getCursor() {
+        return cursor;
+    }
+
+    @JsonProperty("has_more")
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof BlockIdPage)) {
+            return false;
+        }
+        final BlockIdPage other = (BlockIdPage) o;
+        return Objects.equals(blockIds, other.blockIds) && cursor == other.cursor && hasMore == other.hasMore;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(blockIds, cursor, hasMore);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(BlockIdPage.class)
+                .add("blockIds", blockIds)
+                .add("cursor", cursor)
+                .add("hasMore", hasMore)
+                .toString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.signicat.services.blockchain.spi;
+
+/**
+ * Gets told about appended blocks, see {@link NodeNetwork#subscribe(MasterKey, long, BlockListener)}.
+ */
+@FunctionalInterface
+public interface BlockListener {
+    /**
+     * Called once per appended block, in sequence order per key. Must return quickly; it may be
+     * called while appends to the same key wait.
+     */
+    void blockAppended(BlockEvent event);
+}
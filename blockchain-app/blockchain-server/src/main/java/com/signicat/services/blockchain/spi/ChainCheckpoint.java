@@ -0,0 +1,81 @@
+package com.signicat.services.blockchain.spi;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * Size and Merkle root of the blocks appended for a key ID, or to the whole chain when the key ID is null.
+ */
+public class ChainCheckpoint {
+    private final String keyId;
+    private final long treeSize;
+    private final String rootHash;
+
+    @JsonCreator
+    public ChainCheckpoint(
+            @JsonProperty("key_id") final String keyId,
+            @JsonProperty("tree_size") final long treeSize,
+            @JsonProperty("root_hash") final String rootHash) {
+        this.keyId = keyId;
+        this.treeSize = treeSize;
+        this.rootHash = Objects.requireNonNull(rootHash);
+    }
+
+    public ChainCheckpoint(final String keyId, final long treeSize, final byte[] rootHash) {
+        this(keyId, treeSize, Base64URL.encode(rootHash).toString());
+    }
+
+    @JsonProperty("key_id")
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * @return number of blocks appended, counting blocks that were pushed again once per push
+     */
+    @JsonProperty("tree_size")
+    public long getTreeSize() {
+        return treeSize;
+    }
+
+    /**
+     * @return base64url encoded Merkle root hash
+     */
+    @JsonProperty("root_hash")
+    public String getRootHash() {
+        return rootHash;
+    }
+
+    @JsonIgnore
+    public byte[] getRootHashBytes() {
+        return new Base64URL(rootHash).decode();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof ChainCheckpoint)) {
+            return false;
+        }
+        final ChainCheckpoint other = (ChainCheckpoint) o;
+        return Objects.equals(keyId, other.keyId) && treeSize == other.treeSize && rootHash.equals(other.rootHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(keyId, treeSize, rootHash);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(ChainCheckpoint.class)
+                .add("keyId", keyId)
+                .add("treeSize", treeSize)
+                .add("rootHash", rootHash)
+                .toString();
+    }
+}
@@ -0,0 +1,397 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.ImmutableList;
+import com.signicat.services.blockchain.crypto.KeyShard;
+import com.signicat.services.blockchain.crypto.KeyShardCodec;
+import com.signicat.services.blockchain.crypto.MerkleTree;
+import com.signicat.services.blockchain.store.SnapshotReader;
+import com.signicat.services.blockchain.store.SnapshotWriter;
+
+/**
+ * Snapshot of the keys and blocks of a chain, for seeding a node or a replica in bulk instead of
+ * pushing assertions one by one, and for backups.
+ *
+ * A snapshot is a {@link SnapshotWriter} stream of key sections, then block sections with the blocks
+ * of each key in append order, and last an index section with the number of keys and blocks and the
+ * Merkle root of the blocks in stream order. Besides the checksum of every section, the index is
+ * checked when reading, so a snapshot with blocks missing, reordered or spliced in is rejected. Only
+ * the latest version of a replaced block is in a snapshot, so sequence numbers and Merkle trees of
+ * the imported chain may differ from those of the exported one.
+ *
+ * Both ways are streamed: memory use depends on the number of sections in flight, not on the size of
+ * the chain. Sections are read one by one, decoded (public key and assertion parsing, leaf hashing)
+ * in parallel, and applied in stream order.
+ */
+public final class ChainSnapshot {
+    static final byte[] MAGIC = "BCSNAP\u0000\u0001".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte KEY_SECTION = 1;
+    private static final byte BLOCK_SECTION = 2;
+    private static final byte INDEX_SECTION = 3;
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final int SECTIONS_IN_FLIGHT = 4 * Runtime.getRuntime().availableProcessors();
+
+    private ChainSnapshot() {
+    }
+
+    /**
+     * Gets the contents of a snapshot, in stream order.
+     */
+    public interface Visitor {
+        void key(KeyEntry key) throws IOException;
+
+        void block(BlockEntry block) throws IOException;
+    }
+
+    /**
+     * Source of block values when exporting from a {@link KeyBlockIndex}.
+     */
+    @FunctionalInterface
+    interface BlockValues {
+        byte[] get(String blockId) throws IOException;
+    }
+
+    /**
+     * Read a snapshot, decoding on the common fork-join pool.
+     * @throws IOException if the snapshot is corrupt or incomplete, or the visitor fails. What was visited before stays applied.
+     */
+    public static void read(final ReadableByteChannel channel, final Visitor visitor) throws IOException {
+        read(channel, ForkJoinPool.commonPool(), SECTIONS_IN_FLIGHT, visitor);
+    }
+
+    /**
+     * @param executor executor sections are decoded on
+     * @param sectionsInFlight max number of sections read ahead of the one being applied
+     */
+    public static void read(
+            final ReadableByteChannel channel,
+            final ExecutorService executor,
+            final int sectionsInFlight,
+            final Visitor visitor) throws IOException {
+        final SnapshotReader reader = new SnapshotReader(channel, MAGIC);
+        final Deque<Future<Entry>> inFlight = new ArrayDeque<>(sectionsInFlight);
+        final Tally tally = new Tally();
+        ByteBuffer index = null;
+        try {
+            SnapshotReader.Section section;
+            while ((section = reader.next()) != null) {
+                if (index != null) {
+                    throw new IOException("Snapshot has sections after its index.");
+                }
+                final byte[] payload = section.getPayload();
+                if (section.getType() == KEY_SECTION) {
+                    inFlight.add(executor.submit(() -> decodeKey(payload)));
+                } else if (section.getType() == BLOCK_SECTION) {
+                    inFlight.add(executor.submit(() -> decodeBlock(payload)));
+                } else if (section.getType() == INDEX_SECTION) {
+                    index = ByteBuffer.wrap(payload);
+                }
+                // Sections of unknown types are skipped, so newer snapshots stay readable.
+                while (inFlight.size() >= sectionsInFlight) {
+                    apply(inFlight.poll(), visitor, tally);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                apply(inFlight.poll(), visitor, tally);
+            }
+        } finally {
+            inFlight.forEach(f -> f.cancel(true));
+        }
+        if (index == null) {
+            throw new IOException("Snapshot has no index.");
+        }
+        final long keys = index.getLong();
+        final long blocks = index.getLong();
+        final byte[] root = new byte[index.remaining()];
+        index.get(root);
+        if (keys != tally.keys || blocks != tally.blocks.size() || !MessageDigest.isEqual(root, tally.blocks.root())) {
+            throw new IOException("Snapshot content does not match its index of " + keys + " keys and " + blocks + " blocks.");
+        }
+    }
+
+    /**
+     * Write the blocks of every key in an index, page by page.
+     */
+    static void writeBlocks(final Writer writer, final KeyBlockIndex index, final BlockValues values) throws IOException {
+        for (final String keyId : index.keyIds()) {
+            long cursor = 0;
+            BlockIdPage page;
+            do {
+                page = index.since(keyId, cursor, EXPORT_PAGE_SIZE);
+                for (final String blockId : page.getBlockIds()) {
+                    writer.writeBlock(keyId, blockId, values.get(blockId));
+                }
+                cursor = page.getCursor();
+            } while (page.hasMore());
+        }
+    }
+
+    private static void apply(final Future<Entry> decoded, final Visitor visitor, final Tally tally) throws IOException {
+        final Entry entry;
+        try {
+            entry = decoded.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading snapshot.", e);
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException("Failed decoding snapshot section.", e.getCause());
+        }
+        entry.apply(visitor, tally);
+    }
+
+    private static KeyEntry decodeKey(final byte[] payload) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(payload);
+        final String keyId = readString(buffer);
+        final byte[] publicKey = new byte[buffer.getInt()];
+        buffer.get(publicKey);
+        final List<String> shards = new ArrayList<>();
+        for (int i = buffer.getShort(); i > 0; i--) {
+            shards.add(readString(buffer));
+        }
+        final String signingKeyPart = readString(buffer);
+        return new KeyEntry(keyId, decodePublicKey(publicKey), shards, signingKeyPart.isEmpty() ? null : signingKeyPart);
+    }
+
+    private static BlockEntry decodeBlock(final byte[] payload) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(payload);
+        final String keyId = readString(buffer);
+        final String blockId = readString(buffer);
+        final byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        final ClientSignedAssertion assertion;
+        try {
+            assertion = ClientSignedAssertion.valueOf(new String(value, StandardCharsets.UTF_8));
+        } catch (final ParseException e) {
+            throw new IOException("Block " + blockId + " in snapshot is corrupt.", e);
+        }
+        if (!keyId.equals(assertion.getKeyId()) || !blockId.equals(assertion.getSubject())) {
+            throw new IOException("Block " + blockId + " in snapshot does not match its IDs.");
+        }
+        return new BlockEntry(keyId, blockId, assertion, value, KeyBlockIndex.leafHash(blockId, value));
+    }
+
+    private static RSAPublicKey decodePublicKey(final byte[] encoded) throws IOException {
+        try {
+            return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (final InvalidKeySpecException | NoSuchAlgorithmException e) {
+            throw new IOException("Public key in snapshot is corrupt.", e);
+        }
+    }
+
+    private static void putString(final ByteBuffer buffer, final byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a snapshot. Keys should be written before blocks.
+     */
+    public static class Writer {
+        private final SnapshotWriter out;
+        private final MerkleTree.RootBuilder blocks = new MerkleTree.RootBuilder();
+        private long keys;
+
+        /**
+         * @param channel channel to write to. It is not closed.
+         */
+        public Writer(final WritableByteChannel channel) throws IOException {
+            this.out = new SnapshotWriter(channel, MAGIC);
+        }
+
+        public void writeKey(final KeyEntry key) throws IOException {
+            final byte[] keyId = key.keyId.getBytes(StandardCharsets.UTF_8);
+            final byte[] publicKey = key.publicKey.getEncoded();
+            final List<byte[]> shards = new ArrayList<>(key.shards.size());
+            int size = 2 + keyId.length + 4 + publicKey.length + 2;
+            for (final String shard : key.shards) {
+                final byte[] bytes = shard.getBytes(StandardCharsets.UTF_8);
+                shards.add(bytes);
+                size += 2 + bytes.length;
+            }
+            final byte[] signingKeyPart = key.signingKeyPart != null
+                    ? key.signingKeyPart.getBytes(StandardCharsets.UTF_8)
+                    : new byte[0];
+            size += 2 + signingKeyPart.length;
+            final ByteBuffer payload = ByteBuffer.allocate(size);
+            putString(payload, keyId);
+            payload.putInt(publicKey.length).put(publicKey);
+            payload.putShort((short) shards.size());
+            shards.forEach(shard -> putString(payload, shard));
+            putString(payload, signingKeyPart);
+            out.write(KEY_SECTION, payload.array());
+            keys++;
+        }
+
+        /**
+         * @param value the serialized {@link ClientSignedAssertion}
+         */
+        public void writeBlock(final String keyId, final String blockId, final byte[] value) throws IOException {
+            final byte[] keyIdBytes = keyId.getBytes(StandardCharsets.UTF_8);
+            final byte[] blockIdBytes = blockId.getBytes(StandardCharsets.UTF_8);
+            final ByteBuffer payload = ByteBuffer.allocate(4 + keyIdBytes.length + blockIdBytes.length + value.length);
+            putString(payload, keyIdBytes);
+            putString(payload, blockIdBytes);
+            payload.put(value);
+            out.write(BLOCK_SECTION, payload.array());
+            blocks.add(KeyBlockIndex.leafHash(blockId, value));
+        }
+
+        /**
+         * Write the index and the end of the snapshot.
+         */
+        public void finish() throws IOException {
+            final byte[] root = blocks.root();
+            out.write(INDEX_SECTION, ByteBuffer.allocate(16 + root.length)
+                    .putLong(keys)
+                    .putLong(blocks.size())
+                    .put(root)
+                    .array());
+            out.finish();
+        }
+    }
+
+    private static class Tally {
+        private final MerkleTree.RootBuilder blocks = new MerkleTree.RootBuilder();
+        private long keys;
+    }
+
+    private abstract static class Entry {
+        abstract void apply(Visitor visitor, Tally tally) throws IOException;
+    }
+
+    /**
+     * A master key as it is split for storage.
+     */
+    public static class KeyEntry extends Entry {
+        private final String keyId;
+        private final RSAPublicKey publicKey;
+        private final List<String> shards;
+        private final String signingKeyPart;
+
+        /**
+         * @param shards shards encoded with {@link KeyShardCodec}
+         * @param signingKeyPart signing share of a node, or null
+         */
+        public KeyEntry(
+                final String keyId, final RSAPublicKey publicKey, final List<String> shards, final String signingKeyPart) {
+            this.keyId = keyId;
+            this.publicKey = publicKey;
+            this.shards = ImmutableList.copyOf(shards);
+            this.signingKeyPart = signingKeyPart;
+        }
+
+        public String getKeyId() {
+            return keyId;
+        }
+
+        public RSAPublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        public List<String> getShards() {
+            return shards;
+        }
+
+        public KeyShard[] getKeyShards() throws IOException {
+            final KeyShard[] keyShards = new KeyShard[shards.size()];
+            for (int i = 0; i < keyShards.length; i++) {
+                keyShards[i] = KeyShardCodec.decode(shards.get(i), publicKey);
+            }
+            return keyShards;
+        }
+
+        public String getSigningKeyPart() {
+            return signingKeyPart;
+        }
+
+        @Override
+        void apply(final Visitor visitor, final Tally tally) throws IOException {
+            visitor.key(this);
+            tally.keys++;
+        }
+    }
+
+    /**
+     * A block along with everything needed to store and index it.
+     */
+    public static class BlockEntry extends Entry {
+        private final String keyId;
+        private final String blockId;
+        private final ClientSignedAssertion assertion;
+        private final byte[] value;
+        private final byte[] leafHash;
+
+        private BlockEntry(
+                final String keyId,
+                final String blockId,
+                final ClientSignedAssertion assertion,
+                final byte[] value,
+                final byte[] leafHash) {
+            this.keyId = keyId;
+            this.blockId = blockId;
+            this.assertion = assertion;
+            this.value = value;
+            this.leafHash = leafHash;
+        }
+
+        public String getKeyId() {
+            return keyId;
+        }
+
+        public String getBlockId() {
+            return blockId;
+        }
+
+        public ClientSignedAssertion getAssertion() {
+            return assertion;
+        }
+
+        /**
+         * @return the serialized assertion
+         */
+        public byte[] getValue() {
+            return value;
+        }
+
+        /**
+         * @return leaf hash as returned from {@link KeyBlockIndex#leafHash(String, byte[])}
+         */
+        public byte[] getLeafHash() {
+            return leafHash;
+        }
+
+        @Override
+        void apply(final Visitor visitor, final Tally tally) throws IOException {
+            visitor.block(this);
+            tally.blocks.add(leafHash);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Node network holding the whole chain itself, so it can be written to and loaded from a {@link ChainSnapshot}.
+ */
+public interface ChainSnapshotStore {
+    /**
+     * Write every key and the latest version of every block to a snapshot.
+     * @param channel channel to write the snapshot to
+     * @throws IOException if reading the chain or writing the snapshot failed
+     */
+    void exportSnapshot(WritableByteChannel channel) throws IOException;
+
+    /**
+     * Add the keys and blocks of a snapshot, as if they were pushed in snapshot order.
+     * @param channel channel to read the snapshot from
+     * @throws IOException if the snapshot is corrupt or incomplete. Keys and blocks read before the problem stay added.
+     */
+    void importSnapshot(ReadableByteChannel channel) throws IOException;
+}
@@ -0,0 +1,108 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.signicat.services.blockchain.crypto.MerkleTree;
+
+/**
+ * Client side keeper of verified Merkle checkpoints, one per key ID plus one for the whole chain.
+ *
+ * The first checkpoint seen for a key is trusted as is. Every later one is only accepted along with
+ * a consistency proof from the trusted one, so a node can not drop or rewrite blocks it has already
+ * reported without being caught, and moving to a new checkpoint costs O(log n) hashes. Blocks are
+ * then checked with inclusion proofs against the trusted checkpoint instead of being re-listed.
+ */
+public class ChainVerifier {
+    private static final Logger LOG = LogManager.getLogger(ChainVerifier.class);
+    private static final String GLOBAL = "";
+
+    private final Map<String, ChainCheckpoint> trusted = new ConcurrentHashMap<>();
+
+    /**
+     * @param keyId key ID, or null for the whole chain
+     * @return the latest verified checkpoint, or null if none has been seen yet
+     */
+    public ChainCheckpoint getCheckpoint(final String keyId) {
+        return trusted.get(keyId != null ? keyId : GLOBAL);
+    }
+
+    /**
+     * Fetch the current checkpoint from the network and move to it if it is consistent with the trusted one.
+     * Refreshes are serialized, so two checkpoints are never accepted based on the same predecessor.
+     * @param masterKey master key of the blocks, or null for the whole chain
+     * @return the new trusted checkpoint
+     * @throws IOException if the network is unreachable, or the new checkpoint is not consistent with the trusted one
+     */
+    public synchronized ChainCheckpoint refresh(final NodeNetwork network, final MasterKey masterKey) throws IOException {
+        final ChainCheckpoint latest = network.getCheckpoint(masterKey);
+        final ChainCheckpoint previous = getCheckpoint(masterKey != null ? masterKey.getKeyId() : null);
+        final MerkleProof proof = previous != null && previous.getTreeSize() < latest.getTreeSize()
+                ? network.getConsistencyProof(masterKey, previous.getTreeSize(), latest.getTreeSize())
+                : null;
+        return advance(latest, proof);
+    }
+
+    /**
+     * Move to a new checkpoint.
+     * @param latest checkpoint reported by the network
+     * @param proof consistency proof from the trusted checkpoint to the new one, ignored if there is no trusted checkpoint
+     *              or the sizes are the same
+     * @return the new trusted checkpoint
+     * @throws IOException if the new checkpoint is not consistent with the trusted one
+     */
+    public synchronized ChainCheckpoint advance(final ChainCheckpoint latest, final MerkleProof proof) throws IOException {
+        final String key = latest.getKeyId() != null ? latest.getKeyId() : GLOBAL;
+        final ChainCheckpoint previous = trusted.get(key);
+        if (previous != null) {
+            if (latest.getTreeSize() < previous.getTreeSize()) {
+                throw new IOException("Chain for " + describe(key) + " shrunk from " + previous.getTreeSize()
+                        + " to " + latest.getTreeSize() + " blocks.");
+            }
+            final boolean consistent = latest.getTreeSize() == previous.getTreeSize()
+                    ? latest.getRootHash().equals(previous.getRootHash())
+                    : proof != null
+                            && proof.getFirst() == previous.getTreeSize()
+                            && proof.getTreeSize() == latest.getTreeSize()
+                            && MerkleTree.verifyConsistency(
+                                    previous.getTreeSize(), latest.getTreeSize(),
+                                    previous.getRootHashBytes(), latest.getRootHashBytes(), proof.getHashBytes());
+            if (!consistent) {
+                throw new IOException("Chain for " + describe(key) + " at " + latest.getTreeSize()
+                        + " blocks is not consistent with the one verified at " + previous.getTreeSize() + " blocks.");
+            }
+        } else {
+            LOG.info("Trusting first checkpoint of {} at {} blocks.", describe(key), latest.getTreeSize());
+        }
+        trusted.put(key, latest);
+        return latest;
+    }
+
+    /**
+     * Check that a block is in a trusted tree. The checkpoint the proof was asked for is passed in, rather
+     * than looked up, since a concurrent {@link #refresh(NodeNetwork, MasterKey)} may have moved on from
+     * it in the meantime; it is still verified, as every later one is consistent with it.
+     * @param checkpoint checkpoint returned by this verifier that the proof was asked for
+     * @param leafHash hash of the block as returned from {@link KeyBlockIndex#leafHash(String, byte[])}
+     * @param proof inclusion proof against the checkpoint
+     * @throws IOException if the proof is for a tree of another size, or does not hold
+     */
+    public void verifyInclusion(final ChainCheckpoint checkpoint, final byte[] leafHash, final MerkleProof proof) throws IOException {
+        if (checkpoint.getTreeSize() != proof.getTreeSize()) {
+            throw new IOException("Proof of size " + proof.getTreeSize() + " is not for the verified checkpoint of size "
+                    + checkpoint.getTreeSize() + " for " + describe(checkpoint.getKeyId()));
+        }
+        if (!MerkleTree.verifyInclusion(leafHash, proof.getFirst(), proof.getTreeSize(),
+                proof.getHashBytes(), checkpoint.getRootHashBytes())) {
+            throw new IOException("Block is not in the verified chain for " + describe(checkpoint.getKeyId()));
+        }
+    }
+
+    private static String describe(final String key) {
+        return key == null || key.equals(GLOBAL) ? "the whole chain" : "key " + key;
+    }
+}
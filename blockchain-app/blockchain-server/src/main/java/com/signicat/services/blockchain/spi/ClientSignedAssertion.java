@@ -5,6 +5,7 @@ import java.security.PublicKey;
 import java.text.ParseException;
 import java.util.Objects;
 
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
 import com.nimbusds.jose.JOSEException;
@@ -17,6 +18,9 @@ import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
 import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
+import com.signicat.services.blockchain.metrics.FlightEvents;
+import com.signicat.services.blockchain.metrics.Metrics;
+import com.signicat.services.blockchain.metrics.Trace;
 
 /**
  * Data from an IdP, encrypted by TM and signed by the IdP. Lastly, signed by this Client.
@@ -47,8 +51,21 @@ public class ClientSignedAssertion {
      */
     public static ClientSignedAssertion createFromAssertion(
             final MasterKey masterKey, final Assertion assertion) throws IOException {
+        return createFromAssertion(masterKey.getKeyId(), new RSASSASigner(masterKey.getPrivateKey()), assertion);
+    }
+
+    /**
+     * Create a ClientSignedAssertion from an assertion, signed with RS256 by the given signer, for instance a
+     * {@link com.signicat.services.blockchain.crypto.ThresholdJWSSigner} when the master key is not at hand.
+     *
+     * @param keyId ID of the master key the signer signs for
+     * @param signer RS256 signer
+     * @param assertion assertion to sign
+     */
+    @SuppressWarnings("try")
+    public static ClientSignedAssertion createFromAssertion(
+            final String keyId, final JWSSigner signer, final Assertion assertion) throws IOException {
         try {
-            final JWSSigner signer = new RSASSASigner(masterKey.getPrivateKey());
             final SignedJWT assertionJwt = assertion.getJwt();
             final JWTClaimsSet claims = new JWTClaimsSet.Builder()
                     .claim("header", assertionJwt.getHeader().toJSONObject())
@@ -57,21 +74,32 @@ public class ClientSignedAssertion {
                     .build();
 
             final SignedJWT signedJWT = new SignedJWT(
-                    new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(masterKey.getKeyId()).build(),
+                    new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(keyId).build(),
                     claims);
             // Apply the HMAC
-            signedJWT.sign(signer);
+            try (Timer.Context time = Metrics.time("crypto.rsa.sign");
+                    Trace trace = FlightEvents.crypto("rsa.sign")
+                            .keyId(keyId)
+                            .size(signedJWT.getSigningInput().length)) {
+                signedJWT.sign(signer);
+            }
             return new ClientSignedAssertion(signedJWT);
         } catch (final JOSEException | ParseException e) {
             throw new IOException("Failed while signing Assertion.", e);
         }
     }
 
+    @SuppressWarnings("try")
     public Assertion getAssertion(final PublicKey pubKey) throws IOException {
         try {
             if (pubKey != null) {
                 final JWSVerifier verifier = new DefaultJWSVerifierFactory().createJWSVerifier(jwt.getHeader(), pubKey);
-                jwt.verify(verifier);
+                try (Timer.Context time = Metrics.time("crypto.rsa.verify");
+                        Trace trace = FlightEvents.crypto("rsa.verify")
+                                .keyId(jwt.getHeader().getKeyID())
+                                .size(jwt.getSigningInput().length)) {
+                    jwt.verify(verifier);
+                }
             }
             final JWTClaimsSet claims = jwt.getJWTClaimsSet();
             final Base64URL header = Base64URL.encode(
@@ -91,6 +119,24 @@ public class ClientSignedAssertion {
         return jwt;
     }
 
+    /**
+     * @return ID of the master key this assertion was signed with
+     */
+    public String getKeyId() {
+        return jwt.getHeader().getKeyID();
+    }
+
+    /**
+     * @return subject of the wrapped IdP assertion. No signatures are validated.
+     */
+    public String getSubject() throws IOException {
+        try {
+            return getAssertion(null).getJwt().getJWTClaimsSet().getSubject();
+        } catch (final ParseException e) {
+            throw new IOException("Corrupt assertion..", e);
+        }
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (!(o instanceof ClientSignedAssertion)) {
@@ -0,0 +1,105 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Node network letting concurrent identical block lookups share one request. The first caller of
+ * a lookup asks the delegate, and callers arriving while it is in flight wait for and get the same
+ * result, or the same failure. Nothing is cached once the request completes.
+ */
+public class CoalescingNodeNetwork extends ForwardingNodeNetwork {
+    private final Map<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CoalescingNodeNetwork(final NodeNetwork delegate) {
+        super(delegate);
+    }
+
+    /**
+     * @return an immutable list shared by all callers coalesced into the same request
+     */
+    @Override
+    public List<String> listBlockIds(final MasterKey masterKey) throws IOException {
+        return coalesce(Arrays.asList("listBlockIds", masterKey),
+                () -> ImmutableList.copyOf(delegate.listBlockIds(masterKey)));
+    }
+
+    @Override
+    public Assertion getBlock(final MasterKey masterKey, final String blockId) throws IOException {
+        return coalesce(Arrays.asList("getBlock", masterKey, blockId), () -> delegate.getBlock(masterKey, blockId));
+    }
+
+    @Override
+    public BlockClaims getBlockClaims(final MasterKey masterKey, final String blockId) throws IOException {
+        return coalesce(Arrays.asList("getBlockClaims", masterKey, blockId),
+                () -> delegate.getBlockClaims(masterKey, blockId));
+    }
+
+    /**
+     * @return number of lookups made through this network
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of lookups answered by a request another caller already had in flight
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(final List<Object> key, final Lookup<T> lookup) throws IOException {
+        requests.increment();
+        final CompletableFuture<Object> mine = new CompletableFuture<>();
+        final CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            return (T) await(running);
+        }
+        try {
+            final T result = lookup.call();
+            mine.complete(result);
+            return result;
+        } catch (final Throwable e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static Object await(final CompletableFuture<Object> running) throws IOException {
+        try {
+            return running.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a lookup in flight.");
+        } catch (final ExecutionException e) {
+            // Wrapped so the waiter's own stack shows up too.
+            if (e.getCause() instanceof IOException) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private interface Lookup<T> {
+        T call() throws IOException;
+    }
+}
@@ -0,0 +1,91 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * Node network skipping pushes of assertions and master keys it has recently pushed successfully,
+ * so retried associations do not reach the nodes at all.
+ */
+public class DeduplicatingNodeNetwork extends ForwardingNodeNetwork {
+    private static final Logger LOG = LogManager.getLogger(DeduplicatingNodeNetwork.class);
+
+    private final RecentPushes recent;
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * @param delegate network to push to
+     * @param maxRemembered max number of pushes remembered
+     */
+    public DeduplicatingNodeNetwork(final NodeNetwork delegate, final long maxRemembered) {
+        super(delegate);
+        this.recent = new RecentPushes(maxRemembered);
+    }
+
+    /**
+     * Splitting and distributing a key is expensive, and a new split would not match shards already
+     * handed out, so a key is only pushed once.
+     */
+    @Override
+    public void pushMasterKey(final MasterKey masterKey) throws IOException {
+        final String digest = RecentPushes.digest(
+                masterKey.getKeyId() + '.' + Base64URL.encode(masterKey.getPublicKey().getEncoded()));
+        if (recent.get(digest) != null) {
+            duplicates.increment();
+            LOG.debug("Master key {} was already pushed.", masterKey.getKeyId());
+            return;
+        }
+        delegate.pushMasterKey(masterKey);
+        recent.put(digest, masterKey.getKeyId());
+    }
+
+    @Override
+    public void pushAssertion(final ClientSignedAssertion assertion) throws IOException {
+        final String digest = RecentPushes.digest(assertion.getValue());
+        if (recent.get(digest) != null) {
+            duplicates.increment();
+            return;
+        }
+        delegate.pushAssertion(assertion);
+        recent.put(digest, assertion.getKeyId());
+    }
+
+    @Override
+    public void pushAssertions(final List<ClientSignedAssertion> assertions) throws IOException {
+        final Map<String, ClientSignedAssertion> fresh = new LinkedHashMap<>();
+        for (final ClientSignedAssertion assertion : assertions) {
+            final String digest = RecentPushes.digest(assertion.getValue());
+            if (recent.get(digest) != null || fresh.putIfAbsent(digest, assertion) != null) {
+                duplicates.increment();
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+        delegate.pushAssertions(new ArrayList<>(fresh.values()));
+        fresh.forEach((digest, assertion) -> recent.put(digest, assertion.getKeyId()));
+    }
+
+    /**
+     * @return number of pushes skipped as duplicates
+     */
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * @return number of pushes remembered
+     */
+    public long getRememberedCount() {
+        return recent.size();
+    }
+}
@@ -1,34 +1,41 @@
 package com.signicat.services.blockchain.spi;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
 import java.text.ParseException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.common.collect.ImmutableList;
-import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.util.Base64URL;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
+import com.signicat.services.blockchain.crypto.KeyShardCodec;
 
 /**
- * Memory-only implementation of a node network..
+ * Memory-only implementation of a node network. Safe for concurrent use.
  */
-public class DummyNodeNetwork implements NodeNetwork {
+public class DummyNodeNetwork implements NodeNetwork, ChainSnapshotStore {
     private static final Logger LOG = LogManager.getLogger(NodeNetwork.class);
+    private static final PayloadLogging PAYLOAD_LOGGING = new PayloadLogging(100);
+    private static final long RECENT_PUSHES = 10_000;
+    private static final int SHARDS_NEEDED = 10;
+    private static final int SHARDS_TOTAL = 15;
 
-    private final Map<String, MasterKey> keys = new HashMap<>();
-    private final Map<String, ClientSignedAssertion> assertionMap = new HashMap<>();
+    private final Map<String, MasterKey> keys = new ConcurrentHashMap<>();
+    private final Map<String, StoredBlock> blocks = new ConcurrentHashMap<>();
+    private final KeyBlockIndex blockIndex = new KeyBlockIndex();
+    private final RecentPushes recentPushes = new RecentPushes(RECENT_PUSHES);
 
     @Override
     public void pushMasterKey(final MasterKey masterKey) throws IOException {
-        keys.put(masterKey.getKeyId(), new MasterKey(masterKey.getKeyId(), masterKey.getPublicKey(), masterKey.getSplitPrivateKey(10, 15)));
+        keys.put(masterKey.getKeyId(), new MasterKey(masterKey.getKeyId(), masterKey.getPublicKey(), masterKey.getSplitPrivateKey(SHARDS_NEEDED, SHARDS_TOTAL)));
     }
 
     @Override
@@ -40,40 +47,161 @@ public class DummyNodeNetwork implements NodeNetwork {
         } catch (final ParseException e) {
             throw new IOException("Failed when deserializing stored assertion.");
         }
-        final String keyId = assertionMap.get(subjectId).getJWT().getHeader().getKeyID();
-        LOG.info("Got assertion from subject " + subjectId + " and fetching master key with ID " + keyId);
-        return keys.get(keyId);
+        final StoredBlock block = blocks.get(subjectId);
+        if (block == null) {
+            throw new IOException("Subject " + subjectId + " is not known to the blockchain.");
+        }
+        LOG.debug("Got assertion from subject {} and fetching master key with ID {}", subjectId, block.keyId);
+        return keys.get(block.keyId);
     }
 
     @Override
     public void pushAssertion(final ClientSignedAssertion assertion) throws IOException {
-        LOG.info(assertion.getValue());
-        final String subjectId;
-        try {
-            final JWTClaimsSet claims = assertion.getJWT().getJWTClaimsSet();
-            final JWSHeader header = JWSHeader.parse(claims.getJSONObjectClaim("header").toJSONString());
-            final JWTClaimsSet payload = JWTClaimsSet.parse(claims.getJSONObjectClaim("payload"));
-            final SignedJWT wrappedAssertion = new SignedJWT(header, payload);
-            subjectId = wrappedAssertion.getJWTClaimsSet().getSubject();
-        } catch (final ParseException e) {
-            throw new IOException("Corrupt assertion..", e);
+        final String value = assertion.getValue();
+        final String digest = RecentPushes.digest(value);
+        final String knownId = recentPushes.get(digest);
+        final StoredBlock known = knownId != null ? blocks.get(knownId) : null;
+        if (known != null && known.assertion.getValue().equals(value)) {
+            LOG.debug("Block {} is already stored.", knownId);
+            return;
+        }
+        if (LOG.isDebugEnabled() && PAYLOAD_LOGGING.sample()) {
+            LOG.debug("Storing assertion {}", PayloadLogging.truncate(value));
         }
-        LOG.info("Subject ID " + subjectId + " is now known to the blockchain.");
-        assertionMap.put(subjectId, assertion);
+        final String subjectId = assertion.getSubject();
+        final String keyId = assertion.getKeyId();
+        LOG.debug("Subject ID {} is now known to the blockchain.", subjectId);
+        final StoredBlock block = new StoredBlock(keyId, assertion, BlockClaims.of(subjectId, assertion));
+        // Store before indexing, so a listed block can always be fetched, and under the index lock,
+        // so the latest entry of a block is for the stored version.
+        blockIndex.append(keyId, subjectId,
+                KeyBlockIndex.leafHash(subjectId, value.getBytes(StandardCharsets.UTF_8)),
+                () -> blocks.put(subjectId, block));
+        recentPushes.put(digest, subjectId);
+    }
+
+    /**
+     * Keys are held here whole, so this is ordinary signing.
+     */
+    @Override
+    public ClientSignedAssertion signAssertion(final Assertion login, final Assertion assertion) throws IOException {
+        return ClientSignedAssertion.createFromAssertion(pushAssertion(login), assertion);
     }
 
     @Override
     public List<String> listBlockIds(final MasterKey masterKey) throws IOException {
-        return assertionMap.entrySet()
-                .stream()
-                .filter(a -> {return a.getValue().getJWT().getHeader().getKeyID().equals(masterKey.getKeyId());})
-                .map(a -> a.getKey())
-                .collect(Collectors.toList());
+        return blockIndex.blockIds(masterKey.getKeyId());
+    }
+
+    @Override
+    public BlockIdPage listBlockIdsSince(final MasterKey masterKey, final long cursor, final int limit) throws IOException {
+        return blockIndex.since(masterKey.getKeyId(), cursor, limit);
+    }
+
+    @Override
+    public Closeable subscribe(final MasterKey masterKey, final long cursor, final BlockListener listener) throws IOException {
+        return blockIndex.subscribe(masterKey.getKeyId(), cursor, listener);
     }
 
     @Override
     public Assertion getBlock(final MasterKey masterKey, final String blockId) throws IOException {
+        final StoredBlock block = blocks.get(blockId);
+        if (block == null) {
+            throw new IOException("No block with ID " + blockId);
+        }
         final PublicKey pubKey = masterKey != null ? masterKey.getPublicKey() : null;
-        return assertionMap.get(blockId).getAssertion(pubKey);
+        return block.assertion.getAssertion(pubKey);
+    }
+
+    @Override
+    public BlockClaims getBlockClaims(final MasterKey masterKey, final String blockId) throws IOException {
+        final StoredBlock block = blocks.get(blockId);
+        if (block == null || masterKey != null && !masterKey.getKeyId().equals(block.keyId)) {
+            throw new IOException("No block with ID " + blockId + " for the given key.");
+        }
+        return block.claims;
+    }
+
+    @Override
+    public ChainCheckpoint getCheckpoint(final MasterKey masterKey) throws IOException {
+        return blockIndex.checkpoint(keyIdOf(masterKey));
+    }
+
+    @Override
+    public MerkleProof getConsistencyProof(final MasterKey masterKey, final long fromSize, final long toSize) throws IOException {
+        try {
+            return blockIndex.consistencyProof(keyIdOf(masterKey), fromSize, toSize);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public MerkleProof getInclusionProof(final MasterKey masterKey, final String blockId, final long treeSize) throws IOException {
+        final MerkleProof proof;
+        try {
+            proof = blockIndex.inclusionProof(keyIdOf(masterKey), blockId, treeSize);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (proof == null) {
+            throw new IOException("Block " + blockId + " is not in the first " + treeSize + " blocks.");
+        }
+        return proof;
+    }
+
+    /**
+     * Keys are split anew for the snapshot.
+     */
+    @Override
+    public void exportSnapshot(final WritableByteChannel channel) throws IOException {
+        final ChainSnapshot.Writer writer = new ChainSnapshot.Writer(channel);
+        for (final MasterKey key : keys.values()) {
+            writer.writeKey(new ChainSnapshot.KeyEntry(key.getKeyId(), key.getPublicKey(),
+                    Arrays.stream(key.getSplitPrivateKey(SHARDS_NEEDED, SHARDS_TOTAL))
+                            .map(KeyShardCodec::encode)
+                            .collect(Collectors.toList()),
+                    null));
+        }
+        ChainSnapshot.writeBlocks(writer, blockIndex,
+                blockId -> blocks.get(blockId).assertion.getValue().getBytes(StandardCharsets.UTF_8));
+        writer.finish();
+    }
+
+    @Override
+    public void importSnapshot(final ReadableByteChannel channel) throws IOException {
+        ChainSnapshot.read(channel, new ChainSnapshot.Visitor() {
+            @Override
+            public void key(final ChainSnapshot.KeyEntry key) throws IOException {
+                keys.put(key.getKeyId(), new MasterKey(key.getKeyId(), key.getPublicKey(), key.getKeyShards()));
+            }
+
+            @Override
+            public void block(final ChainSnapshot.BlockEntry block) throws IOException {
+                final StoredBlock stored = new StoredBlock(block.getKeyId(), block.getAssertion(),
+                        BlockClaims.of(block.getBlockId(), block.getAssertion()));
+                blockIndex.append(block.getKeyId(), block.getBlockId(), block.getLeafHash(),
+                        () -> blocks.put(block.getBlockId(), stored));
+            }
+        });
+    }
+
+    private static String keyIdOf(final MasterKey masterKey) {
+        return masterKey != null ? masterKey.getKeyId() : null;
+    }
+
+    /**
+     * A block along with the key ID and claim names extracted from it when it was inserted.
+     */
+    private static class StoredBlock {
+        private final String keyId;
+        private final ClientSignedAssertion assertion;
+        private final BlockClaims claims;
+
+        private StoredBlock(final String keyId, final ClientSignedAssertion assertion, final BlockClaims claims) {
+            this.keyId = keyId;
+            this.assertion = assertion;
+            this.claims = claims;
+        }
     }
 }
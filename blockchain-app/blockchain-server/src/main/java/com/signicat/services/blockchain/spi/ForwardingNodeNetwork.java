@@ -0,0 +1,82 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Node network passing every call on to another one. Base for decorators, which override what they change.
+ */
+public abstract class ForwardingNodeNetwork implements NodeNetwork {
+    protected final NodeNetwork delegate;
+
+    protected ForwardingNodeNetwork(final NodeNetwork delegate) {
+        this.delegate = Objects.requireNonNull(delegate);
+    }
+
+    @Override
+    public void pushMasterKey(final MasterKey masterKey) throws IOException {
+        delegate.pushMasterKey(masterKey);
+    }
+
+    @Override
+    public MasterKey pushAssertion(final Assertion assertion) throws IOException {
+        return delegate.pushAssertion(assertion);
+    }
+
+    @Override
+    public void pushAssertion(final ClientSignedAssertion assertion) throws IOException {
+        delegate.pushAssertion(assertion);
+    }
+
+    @Override
+    public void pushAssertions(final List<ClientSignedAssertion> assertions) throws IOException {
+        delegate.pushAssertions(assertions);
+    }
+
+    @Override
+    public ClientSignedAssertion signAssertion(final Assertion login, final Assertion assertion) throws IOException {
+        return delegate.signAssertion(login, assertion);
+    }
+
+    @Override
+    public List<String> listBlockIds(final MasterKey masterKey) throws IOException {
+        return delegate.listBlockIds(masterKey);
+    }
+
+    @Override
+    public BlockIdPage listBlockIdsSince(final MasterKey masterKey, final long cursor, final int limit) throws IOException {
+        return delegate.listBlockIdsSince(masterKey, cursor, limit);
+    }
+
+    @Override
+    public Closeable subscribe(final MasterKey masterKey, final long cursor, final BlockListener listener) throws IOException {
+        return delegate.subscribe(masterKey, cursor, listener);
+    }
+
+    @Override
+    public Assertion getBlock(final MasterKey masterKey, final String blockId) throws IOException {
+        return delegate.getBlock(masterKey, blockId);
+    }
+
+    @Override
+    public BlockClaims getBlockClaims(final MasterKey masterKey, final String blockId) throws IOException {
+        return delegate.getBlockClaims(masterKey, blockId);
+    }
+
+    @Override
+    public ChainCheckpoint getCheckpoint(final MasterKey masterKey) throws IOException {
+        return delegate.getCheckpoint(masterKey);
+    }
+
+    @Override
+    public MerkleProof getConsistencyProof(final MasterKey masterKey, final long fromSize, final long toSize) throws IOException {
+        return delegate.getConsistencyProof(masterKey, fromSize, toSize);
+    }
+
+    @Override
+    public MerkleProof getInclusionProof(final MasterKey masterKey, final String blockId, final long treeSize) throws IOException {
+        return delegate.getInclusionProof(masterKey, blockId, treeSize);
+    }
+}
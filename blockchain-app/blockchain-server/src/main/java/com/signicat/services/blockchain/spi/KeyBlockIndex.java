@@ -0,0 +1,249 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import com.google.common.util.concurrent.Striped;
+import com.signicat.services.blockchain.crypto.MerkleTree;
+
+/**
+ * Per master key log of appended block IDs. Every append gets the next sequence number of its
+ * key, starting at 1, so the sequence number of the last block seen is a cursor for incremental
+ * sync. A block that is pushed again is appended again; its older entries are then skipped.
+ *
+ * Every entry is also a leaf of a Merkle tree for its key and of one for all keys, so clients can
+ * hold on to a checkpoint (tree size and root) and check later ones against it with a consistency
+ * proof, and check single blocks with an inclusion proof. Leaf N - 1 is the entry with sequence
+ * number N. Passing a null key ID to the checkpoint and proof methods selects the global tree.
+ *
+ * Listeners subscribed to a key are told about each append to it while its lock is still held, so
+ * they see the key's appends in sequence order, and a subscription never misses or repeats an entry
+ * between its replay and the live ones.
+ *
+ * Thread safe. Each key's log is guarded by one of a fixed number of striped locks, so appends and
+ * reads for different keys rarely contend, and reading a key costs O(entries of that key).
+ */
+public class KeyBlockIndex {
+    private static final int LOCK_STRIPES = 64;
+
+    private static final MerkleTree EMPTY_TREE = new MerkleTree();
+
+    private final Map<String, List<String>> logs = new ConcurrentHashMap<>();
+    private final Map<String, MerkleTree> trees = new ConcurrentHashMap<>();
+    private final Map<String, Position> latest = new ConcurrentHashMap<>();
+    private final Map<String, Long> globalLeaves = new ConcurrentHashMap<>();
+    private final Map<String, List<BlockListener>> listeners = new ConcurrentHashMap<>();
+    private final MerkleTree globalTree = new MerkleTree();
+    private final Striped<ReadWriteLock> locks = Striped.readWriteLock(LOCK_STRIPES);
+
+    /**
+     * @return Merkle leaf hash of a block, covering its ID and serialized value
+     */
+    public static byte[] leafHash(final String blockId, final byte[] value) {
+        final byte[] id = blockId.getBytes(StandardCharsets.UTF_8);
+        return MerkleTree.leafHash(ByteBuffer.allocate(4 + id.length + value.length)
+                .putInt(id.length).put(id).put(value).array());
+    }
+
+    /**
+     * @param leafHash hash of the block as returned from {@link #leafHash(String, byte[])}
+     * @return sequence number of the appended entry
+     */
+    public long append(final String keyId, final String blockId, final byte[] leafHash) {
+        return append(keyId, blockId, leafHash, null);
+    }
+
+    /**
+     * @param leafHash hash of the block as returned from {@link #leafHash(String, byte[])}
+     * @param store run under the key's lock right before the entry is appended, so blocks stored
+     *              by it are indexed in the order they were stored; may be null
+     * @return sequence number of the appended entry
+     */
+    public long append(final String keyId, final String blockId, final byte[] leafHash, final Runnable store) {
+        final Lock lock = locks.get(keyId).writeLock();
+        lock.lock();
+        try {
+            if (store != null) {
+                store.run();
+            }
+            final List<String> log = logs.computeIfAbsent(keyId, k -> new ArrayList<>());
+            log.add(blockId);
+            trees.computeIfAbsent(keyId, k -> new MerkleTree()).append(leafHash);
+            latest.put(blockId, new Position(keyId, log.size()));
+            globalLeaves.put(blockId, globalTree.append(leafHash));
+            notifyListeners(new BlockEvent(keyId, blockId, log.size()));
+            return log.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param keyId key ID, or null for the global tree
+     */
+    public ChainCheckpoint checkpoint(final String keyId) {
+        if (keyId == null) {
+            synchronized (globalTree) {
+                return new ChainCheckpoint(null, globalTree.size(), globalTree.root(globalTree.size()));
+            }
+        }
+        final Lock lock = locks.get(keyId).readLock();
+        lock.lock();
+        try {
+            final MerkleTree tree = trees.getOrDefault(keyId, EMPTY_TREE);
+            return new ChainCheckpoint(keyId, tree.size(), tree.root(tree.size()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param keyId key ID, or null for the global tree
+     * @param treeSize size of the checkpoint to prove against
+     * @return proof for the latest entry of the block, or null if it is not in the first treeSize leaves of the tree
+     * @throws IllegalArgumentException if the tree is smaller than treeSize
+     */
+    public MerkleProof inclusionProof(final String keyId, final String blockId, final long treeSize) {
+        if (keyId == null) {
+            final Long leaf = globalLeaves.get(blockId);
+            return leaf == null || leaf >= treeSize
+                    ? null
+                    : MerkleProof.of(leaf, treeSize, globalTree.inclusionProof(leaf, treeSize));
+        }
+        final Lock lock = locks.get(keyId).readLock();
+        lock.lock();
+        try {
+            final Position position = latest.get(blockId);
+            if (position == null || !position.keyId.equals(keyId) || position.sequence > treeSize) {
+                return null;
+            }
+            final long leaf = position.sequence - 1;
+            return MerkleProof.of(leaf, treeSize, trees.get(keyId).inclusionProof(leaf, treeSize));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param keyId key ID, or null for the global tree
+     * @throws IllegalArgumentException if the sizes are out of order or the tree is smaller than toSize
+     */
+    public MerkleProof consistencyProof(final String keyId, final long fromSize, final long toSize) {
+        final MerkleTree tree = keyId == null ? globalTree : trees.getOrDefault(keyId, EMPTY_TREE);
+        return MerkleProof.of(fromSize, toSize, tree.consistencyProof(fromSize, toSize));
+    }
+
+    /**
+     * @return IDs of the keys with blocks. A live view, safe to iterate while blocks are appended.
+     */
+    public Set<String> keyIds() {
+        return Collections.unmodifiableSet(logs.keySet());
+    }
+
+    /**
+     * @return every live block ID of the given key, oldest first
+     */
+    public List<String> blockIds(final String keyId) {
+        return since(keyId, 0, Integer.MAX_VALUE).getBlockIds();
+    }
+
+    /**
+     * @param cursor sequence number of the last entry already seen, 0 to start from the beginning
+     * @param limit max number of block IDs to return
+     */
+    public BlockIdPage since(final String keyId, final long cursor, final int limit) {
+        final Lock lock = locks.get(keyId).readLock();
+        lock.lock();
+        try {
+            final List<String> log = logs.get(keyId);
+            if (log == null || cursor >= log.size()) {
+                return new BlockIdPage(new ArrayList<>(), Math.max(cursor, 0), false);
+            }
+            final List<String> blockIds = new ArrayList<>();
+            long sequence = Math.max(cursor, 0);
+            while (sequence < log.size() && blockIds.size() < limit) {
+                final String blockId = log.get((int) sequence++);
+                if (new Position(keyId, sequence).equals(latest.get(blockId))) {
+                    blockIds.add(blockId);
+                }
+            }
+            return new BlockIdPage(blockIds, sequence, sequence < log.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replay the live entries of a key after a cursor to a listener, then tell it about every later append.
+     * A listener that throws is unsubscribed.
+     * @param cursor sequence number of the last entry already seen, 0 to start from the beginning
+     * @return handle removing the listener when closed
+     */
+    public Closeable subscribe(final String keyId, final long cursor, final BlockListener listener) {
+        final List<BlockListener> keyListeners = listeners.computeIfAbsent(keyId, k -> new CopyOnWriteArrayList<>());
+        final Lock lock = locks.get(keyId).writeLock();
+        lock.lock();
+        try {
+            final List<String> log = logs.getOrDefault(keyId, Collections.emptyList());
+            for (long sequence = Math.max(cursor, 0) + 1; sequence <= log.size(); sequence++) {
+                final String blockId = log.get((int) sequence - 1);
+                if (new Position(keyId, sequence).equals(latest.get(blockId))) {
+                    listener.blockAppended(new BlockEvent(keyId, blockId, sequence));
+                }
+            }
+            keyListeners.add(listener);
+        } finally {
+            lock.unlock();
+        }
+        return () -> keyListeners.remove(listener);
+    }
+
+    private void notifyListeners(final BlockEvent event) {
+        final List<BlockListener> keyListeners = listeners.get(event.getKeyId());
+        if (keyListeners == null) {
+            return;
+        }
+        for (final BlockListener listener : keyListeners) {
+            try {
+                listener.blockAppended(event);
+            } catch (final RuntimeException e) {
+                keyListeners.remove(listener);
+            }
+        }
+    }
+
+    private static class Position {
+        private final String keyId;
+        private final long sequence;
+
+        private Position(final String keyId, final long sequence) {
+            this.keyId = keyId;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Position)) {
+                return false;
+            }
+            final Position other = (Position) o;
+            return keyId.equals(other.keyId) && sequence == other.sequence;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(keyId, sequence);
+        }
+    }
+}
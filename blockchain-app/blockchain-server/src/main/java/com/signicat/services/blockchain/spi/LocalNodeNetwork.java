@@ -0,0 +1,438 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.util.Base64URL;
+import com.signicat.services.blockchain.crypto.KeyShard;
+import com.signicat.services.blockchain.crypto.KeyShardCodec;
+import com.signicat.services.blockchain.store.LogPosition;
+import com.signicat.services.blockchain.store.SegmentedLog;
+
+/**
+ * Single-box node network persisting key shards and blocks in a {@link SegmentedLog}.
+ *
+ * Only positions and Merkle hashes are kept on the heap: the key and block indexes are rebuilt by
+ * scanning the log on startup, and shards and blocks are read back through the log's memory mappings
+ * when needed.
+ */
+public class LocalNodeNetwork implements NodeNetwork, ChainSnapshotStore, Closeable {
+    private static final Logger LOG = LogManager.getLogger(LocalNodeNetwork.class);
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final byte KEY_RECORD = 1;
+    private static final byte BLOCK_RECORD = 2;
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final int SHARDS_NEEDED = 10;
+    private static final int SHARDS_TOTAL = 15;
+    private static final long RECENT_PUSHES = 10_000;
+
+    private final Map<String, LogPosition> keys = new ConcurrentHashMap<>();
+    private final Map<String, StoredBlock> blocks = new ConcurrentHashMap<>();
+    private final KeyBlockIndex blockIndex = new KeyBlockIndex();
+    private final RecentPushes recentPushes = new RecentPushes(RECENT_PUSHES);
+    private final SegmentedLog log;
+
+    public LocalNodeNetwork(final Path directory) throws IOException {
+        this.log = new SegmentedLog(directory, SEGMENT_BYTES, MAX_BATCH_SIZE, this::index);
+        LOG.info("Local node opened at {} with {} keys and {} blocks.", directory, keys.size(), blocks.size());
+    }
+
+    @Override
+    public void pushMasterKey(final MasterKey masterKey) throws IOException {
+        final KeyRecord record = new KeyRecord(
+                masterKey.getKeyId(),
+                Base64URL.encode(masterKey.getPublicKey().getEncoded()).toString(),
+                Arrays.stream(masterKey.getSplitPrivateKey(SHARDS_NEEDED, SHARDS_TOTAL))
+                        .map(KeyShardCodec::encode)
+                        .collect(Collectors.toList()));
+        log.appendAndSync(KEY_RECORD, encode(masterKey.getKeyId(), null, OM.writeValueAsBytes(record)),
+                position -> keys.put(masterKey.getKeyId(), position));
+    }
+
+    @Override
+    public MasterKey pushAssertion(final Assertion assertion) throws IOException {
+        final String subjectId;
+        try {
+            subjectId = assertion.getJwt().getJWTClaimsSet().getSubject();
+        } catch (final ParseException e) {
+            throw new IOException("Failed when deserializing assertion.", e);
+        }
+        final StoredBlock block = blocks.get(subjectId);
+        final LogPosition keyPosition = block != null ? keys.get(block.keyId) : null;
+        if (keyPosition == null) {
+            throw new IOException("No master key known for subject " + subjectId);
+        }
+        final KeyRecord record = readKeyRecord(keyPosition);
+        final RSAPublicKey publicKey = decodePublicKey(record.publicKey);
+        final KeyShard[] shards = new KeyShard[record.shards.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = KeyShardCodec.decode(record.shards.get(i), publicKey);
+        }
+        return new MasterKey(record.keyId, publicKey, shards);
+    }
+
+    @Override
+    public void pushAssertion(final ClientSignedAssertion assertion) throws IOException {
+        final String digest = RecentPushes.digest(assertion.getValue());
+        final byte[] value = assertion.getValue().getBytes(StandardCharsets.UTF_8);
+        if (isStored(recentPushes.get(digest), value)) {
+            return;
+        }
+        final String subjectId = assertion.getSubject();
+        final String keyId = assertion.getKeyId();
+        final byte[] leafHash = KeyBlockIndex.leafHash(subjectId, value);
+        log.appendAndSync(BLOCK_RECORD, encode(keyId, subjectId, value),
+                position -> indexBlock(keyId, subjectId, leafHash, position));
+        recentPushes.put(digest, subjectId);
+    }
+
+    /**
+     * Every shard is on this box, so the key is reassembled from them and used directly.
+     */
+    @Override
+    public ClientSignedAssertion signAssertion(final Assertion login, final Assertion assertion) throws IOException {
+        return ClientSignedAssertion.createFromAssertion(pushAssertion(login), assertion);
+    }
+
+    /**
+     * Appends all blocks before waiting for any of them, so they share fsyncs. Each is indexed by the log
+     * writer as it becomes durable.
+     */
+    @Override
+    public void pushAssertions(final List<ClientSignedAssertion> assertions) throws IOException {
+        final Map<String, PendingBlock> pending = new LinkedHashMap<>();
+        for (final ClientSignedAssertion assertion : assertions) {
+            final String digest = RecentPushes.digest(assertion.getValue());
+            final byte[] value = assertion.getValue().getBytes(StandardCharsets.UTF_8);
+            if (!pending.containsKey(digest) && !isStored(recentPushes.get(digest), value)) {
+                final String keyId = assertion.getKeyId();
+                final String subjectId = assertion.getSubject();
+                final byte[] leafHash = KeyBlockIndex.leafHash(subjectId, value);
+                pending.put(digest, new PendingBlock(subjectId, log.append(BLOCK_RECORD, encode(keyId, subjectId, value),
+                        position -> indexBlock(keyId, subjectId, leafHash, position))));
+            }
+        }
+        for (final Map.Entry<String, PendingBlock> entry : pending.entrySet()) {
+            final PendingBlock block = entry.getValue();
+            try {
+                block.position.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while appending to log.", e);
+            } catch (final ExecutionException e) {
+                throw new IOException("Failed appending block " + block.blockId, e.getCause());
+            }
+            recentPushes.put(entry.getKey(), block.blockId);
+        }
+    }
+
+    @Override
+    public List<String> listBlockIds(final MasterKey masterKey) throws IOException {
+        return blockIndex.blockIds(masterKey.getKeyId());
+    }
+
+    @Override
+    public BlockIdPage listBlockIdsSince(final MasterKey masterKey, final long cursor, final int limit) throws IOException {
+        return blockIndex.since(masterKey.getKeyId(), cursor, limit);
+    }
+
+    @Override
+    public Closeable subscribe(final MasterKey masterKey, final long cursor, final BlockListener listener) throws IOException {
+        return blockIndex.subscribe(masterKey.getKeyId(), cursor, listener);
+    }
+
+    @Override
+    public Assertion getBlock(final MasterKey masterKey, final String blockId) throws IOException {
+        final StoredBlock block = blocks.get(blockId);
+        if (block == null) {
+            throw new IOException("No block with ID " + blockId);
+        }
+        final PublicKey pubKey = masterKey != null ? masterKey.getPublicKey() : null;
+        return readBlock(blockId, block).getAssertion(pubKey);
+    }
+
+    @Override
+    public BlockClaims getBlockClaims(final MasterKey masterKey, final String blockId) throws IOException {
+        final StoredBlock block = blocks.get(blockId);
+        if (block == null || masterKey != null && !masterKey.getKeyId().equals(block.keyId)) {
+            throw new IOException("No block with ID " + blockId + " for the given key.");
+        }
+        BlockClaims claims = block.claims;
+        if (claims == null) {
+            claims = BlockClaims.of(blockId, readBlock(blockId, block));
+            block.claims = claims;
+        }
+        return claims;
+    }
+
+    private ClientSignedAssertion readBlock(final String blockId, final StoredBlock block) throws IOException {
+        final ByteBuffer payload = log.read(block.position);
+        readString(payload);
+        readString(payload);
+        try {
+            return ClientSignedAssertion.valueOf(new String(toBytes(payload), StandardCharsets.UTF_8));
+        } catch (final ParseException e) {
+            throw new IOException("Block " + blockId + " is corrupt.", e);
+        }
+    }
+
+    @Override
+    public ChainCheckpoint getCheckpoint(final MasterKey masterKey) throws IOException {
+        return blockIndex.checkpoint(keyIdOf(masterKey));
+    }
+
+    @Override
+    public MerkleProof getConsistencyProof(final MasterKey masterKey, final long fromSize, final long toSize) throws IOException {
+        try {
+            return blockIndex.consistencyProof(keyIdOf(masterKey), fromSize, toSize);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public MerkleProof getInclusionProof(final MasterKey masterKey, final String blockId, final long treeSize) throws IOException {
+        final MerkleProof proof;
+        try {
+            proof = blockIndex.inclusionProof(keyIdOf(masterKey), blockId, treeSize);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (proof == null) {
+            throw new IOException("Block " + blockId + " is not in the first " + treeSize + " blocks.");
+        }
+        return proof;
+    }
+
+    /**
+     * @return whether the latest version of the block is exactly the given value
+     */
+    private boolean isStored(final String blockId, final byte[] value) throws IOException {
+        final StoredBlock block = blockId != null ? blocks.get(blockId) : null;
+        if (block == null) {
+            return false;
+        }
+        final ByteBuffer payload = log.read(block.position);
+        readString(payload);
+        readString(payload);
+        return payload.equals(ByteBuffer.wrap(value));
+    }
+
+    @Override
+    public void exportSnapshot(final WritableByteChannel channel) throws IOException {
+        final ChainSnapshot.Writer writer = new ChainSnapshot.Writer(channel);
+        for (final LogPosition position : keys.values()) {
+            final KeyRecord record = readKeyRecord(position);
+            writer.writeKey(new ChainSnapshot.KeyEntry(
+                    record.keyId, decodePublicKey(record.publicKey), record.shards, null));
+        }
+        ChainSnapshot.writeBlocks(writer, blockIndex, blockId -> {
+            final ByteBuffer payload = log.read(blocks.get(blockId).position);
+            readString(payload);
+            readString(payload);
+            return toBytes(payload);
+        });
+        writer.finish();
+    }
+
+    /**
+     * Appends are pipelined, so they are group committed like concurrent pushes, and indexed in snapshot
+     * order as they become durable.
+     */
+    @Override
+    public void importSnapshot(final ReadableByteChannel channel) throws IOException {
+        final Deque<CompletableFuture<LogPosition>> pending = new ArrayDeque<>();
+        ChainSnapshot.read(channel, new ChainSnapshot.Visitor() {
+            @Override
+            public void key(final ChainSnapshot.KeyEntry key) throws IOException {
+                final KeyRecord record = new KeyRecord(key.getKeyId(),
+                        Base64URL.encode(key.getPublicKey().getEncoded()).toString(), key.getShards());
+                enqueue(log.append(KEY_RECORD, encode(key.getKeyId(), null, OM.writeValueAsBytes(record)),
+                        position -> keys.put(key.getKeyId(), position)));
+            }
+
+            @Override
+            public void block(final ChainSnapshot.BlockEntry block) throws IOException {
+                enqueue(log.append(BLOCK_RECORD, encode(block.getKeyId(), block.getBlockId(), block.getValue()),
+                        position -> indexBlock(block.getKeyId(), block.getBlockId(), block.getLeafHash(), position)));
+            }
+
+            private void enqueue(final CompletableFuture<LogPosition> indexed) throws IOException {
+                pending.add(indexed);
+                while (pending.size() > MAX_BATCH_SIZE) {
+                    await(pending.poll());
+                }
+            }
+        });
+        while (!pending.isEmpty()) {
+            await(pending.poll());
+        }
+    }
+
+    private static void await(final CompletableFuture<LogPosition> indexed) throws IOException {
+        try {
+            indexed.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while appending to log.", e);
+        } catch (final ExecutionException e) {
+            throw new IOException("Failed appending snapshot to log.", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private void index(final byte type, final LogPosition position, final ByteBuffer payload) throws IOException {
+        if (type == KEY_RECORD) {
+            // Only the key ID is needed for the index. Shards are parsed when a key is traded.
+            keys.put(readString(payload), position);
+        } else if (type == BLOCK_RECORD) {
+            final String keyId = readString(payload);
+            final String blockId = readString(payload);
+            indexBlock(keyId, blockId, KeyBlockIndex.leafHash(blockId, toBytes(payload)), position);
+        } else {
+            LOG.warn("Skipping record of unknown type {} at {}", type, position);
+        }
+    }
+
+    /**
+     * Called in log order, both when replaying and by the log writer for new blocks, so the latest
+     * block, cursors and checkpoints are the same before and after a restart.
+     */
+    private void indexBlock(final String keyId, final String blockId, final byte[] leafHash, final LogPosition position) {
+        blocks.put(blockId, new StoredBlock(keyId, position));
+        blockIndex.append(keyId, blockId, leafHash);
+    }
+
+    private KeyRecord readKeyRecord(final LogPosition position) throws IOException {
+        final ByteBuffer payload = log.read(position);
+        readString(payload);
+        return OM.readValue(toBytes(payload), KeyRecord.class);
+    }
+
+    /**
+     * Records start with the IDs needed for the index, so replaying the log never parses a value.
+     * Key records: [key ID][value]. Block records: [key ID][block ID][value].
+     */
+    private static byte[] encode(final String keyId, final String blockId, final byte[] value) {
+        final byte[] keyIdBytes = keyId.getBytes(StandardCharsets.UTF_8);
+        final byte[] blockIdBytes = blockId != null ? blockId.getBytes(StandardCharsets.UTF_8) : null;
+        final ByteBuffer payload = ByteBuffer.allocate(
+                2 + keyIdBytes.length + (blockIdBytes != null ? 2 + blockIdBytes.length : 0) + value.length);
+        payload.putShort((short) keyIdBytes.length).put(keyIdBytes);
+        if (blockIdBytes != null) {
+            payload.putShort((short) blockIdBytes.length).put(blockIdBytes);
+        }
+        return payload.put(value).array();
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String keyIdOf(final MasterKey masterKey) {
+        return masterKey != null ? masterKey.getKeyId() : null;
+    }
+
+    private static RSAPublicKey decodePublicKey(final String encoded) throws IOException {
+        try {
+            return (RSAPublicKey) KeyFactory.getInstance("RSA")
+                    .generatePublic(new X509EncodedKeySpec(new Base64URL(encoded).decode()));
+        } catch (final InvalidKeySpecException | NoSuchAlgorithmException e) {
+            throw new IOException("Stored public key is corrupt.", e);
+        }
+    }
+
+    private static class StoredBlock {
+        private final String keyId;
+        private final LogPosition position;
+        // Parsed from the log the first time it is asked for.
+        private volatile BlockClaims claims;
+
+        private StoredBlock(final String keyId, final LogPosition position) {
+            this.keyId = keyId;
+            this.position = position;
+        }
+    }
+
+    private static class PendingBlock {
+        private final String blockId;
+        private final CompletableFuture<LogPosition> position;
+
+        private PendingBlock(final String blockId, final CompletableFuture<LogPosition> position) {
+            this.blockId = blockId;
+            this.position = position;
+        }
+    }
+
+    private static class KeyRecord {
+        private final String keyId;
+        private final String publicKey;
+        private final List<String> shards;
+
+        @JsonCreator
+        private KeyRecord(
+                @JsonProperty("id") final String keyId,
+                @JsonProperty("publicKey") final String publicKey,
+                @JsonProperty("shards") final List<String> shards) {
+            this.keyId = keyId;
+            this.publicKey = publicKey;
+            this.shards = shards;
+        }
+
+        @JsonProperty("id")
+        public String getKeyId() {
+            return keyId;
+        }
+
+        @JsonProperty("publicKey")
+        public String getPublicKey() {
+            return publicKey;
+        }
+
+        @JsonProperty("shards")
+        public List<String> getShards() {
+            return shards;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.signicat.services.blockchain.spi;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
@@ -24,7 +25,10 @@ import com.google.common.base.MoreObjects;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.jwk.RSAKey;
 import com.signicat.services.blockchain.crypto.KeyShard;
+import com.signicat.services.blockchain.crypto.ThresholdRsa;
 import com.signicat.services.blockchain.crypto.TiemensShamirWrapper;
+import com.signicat.services.blockchain.metrics.FlightEvents;
+import com.signicat.services.blockchain.metrics.Trace;
 
 /**
  * Master key for this identity. Splittable into parts and reassemblable.
@@ -39,16 +43,17 @@ public class MasterKey {
     private final RSAPublicKey publicKey;
     private final RSAPrivateKey privateKey;
 
+    @SuppressWarnings("try")
     public MasterKey() throws IOException {
         this.keyId = UUID.randomUUID().toString();
-        try {
+        try (Trace trace = FlightEvents.crypto("master_key.generate").keyId(keyId).size(masterKeySize / 8)) {
             final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
             // Paranoia-strength RSA key.
             keyGen.initialize(new RSAKeyGenParameterSpec(masterKeySize, RSAKeyGenParameterSpec.F4));
             final KeyPair keyPair = keyGen.generateKeyPair();
             this.publicKey = (RSAPublicKey) keyPair.getPublic();
             this.privateKey = (RSAPrivateKey) keyPair.getPrivate();
-            LOG.info("New master key with ID " + keyId + " generated.");
+            LOG.info("New master key with ID {} generated.", keyId);
         } catch (final NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
             LOG.error("Yikes! RSA not supported!", e);
             throw new IOException("RSA is not supported! Cannot generate Master Key!", e);
@@ -105,6 +110,13 @@ public class MasterKey {
         //return Secrets.split(privateKey.getEncoded(), numberOfParts, numberNeededToReassemble, new SecureRandom());
     }
 
+    /**
+     * @return additive shares of the private exponent, all needed to sign, see {@link ThresholdRsa}
+     */
+    public BigInteger[] getSigningKeyShares(final int numberOfParts) {
+        return ThresholdRsa.splitExponent(privateKey, numberOfParts);
+    }
+
     @JsonValue
     public String getValue() {
         return new RSAKey.Builder(publicKey).privateKey(privateKey).keyID(keyId).build().toJSONString();
@@ -112,8 +124,9 @@ public class MasterKey {
 
     @JsonCreator
     public static MasterKey fromString(final String json) throws IOException {
-        try {
+        try (Trace trace = FlightEvents.crypto("master_key.parse").size(json.length())) {
             final RSAKey key = RSAKey.parse(json);
+            trace.keyId(key.getKeyID());
             return new MasterKey(key.getKeyID(), key.toRSAPublicKey(), key.toRSAPrivateKey());
         } catch (final ParseException | JOSEException e) {
             throw new IOException("Got corrupt master key!", e);
@@ -0,0 +1,83 @@
+package com.signicat.services.blockchain.spi;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * Audit path of a Merkle tree. For an inclusion proof, <code>first</code> is the index of the proven
+ * leaf; for a consistency proof it is the size of the older tree.
+ */
+public class MerkleProof {
+    private final long first;
+    private final long treeSize;
+    private final List<String> hashes;
+
+    @JsonCreator
+    public MerkleProof(
+            @JsonProperty("first") final long first,
+            @JsonProperty("tree_size") final long treeSize,
+            @JsonProperty("hashes") final List<String> hashes) {
+        this.first = first;
+        this.treeSize = treeSize;
+        this.hashes = ImmutableList.copyOf(hashes);
+    }
+
+    public static MerkleProof of(final long first, final long treeSize, final List<byte[]> hashes) {
+        return new MerkleProof(first, treeSize,
+                hashes.stream().map(h -> Base64URL.encode(h).toString()).collect(Collectors.toList()));
+    }
+
+    @JsonProperty("first")
+    public long getFirst() {
+        return first;
+    }
+
+    @JsonProperty("tree_size")
+    public long getTreeSize() {
+        return treeSize;
+    }
+
+    /**
+     * @return base64url encoded hashes of the audit path
+     */
+    @JsonProperty("hashes")
+    public List<String> getHashes() {
+        return hashes;
+    }
+
+    @JsonIgnore
+    public List<byte[]> getHashBytes() {
+        return hashes.stream().map(h -> new Base64URL(h).decode()).collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof MerkleProof)) {
+            return false;
+        }
+        final MerkleProof other = (MerkleProof) o;
+        return first == other.first && treeSize == other.treeSize && hashes.equals(other.hashes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(first, treeSize, hashes);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(MerkleProof.class)
+                .add("first", first)
+                .add("treeSize", treeSize)
+                .add("hashes", hashes)
+                .toString();
+    }
+}
@@ -1,5 +1,6 @@
 package com.signicat.services.blockchain.spi;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
 
@@ -29,6 +30,30 @@ public interface NodeNetwork {
      */
     void pushAssertion(ClientSignedAssertion assertion) throws IOException;
 
+    /**
+     * Push several assertions at once. Implementations should send them in as few requests (or
+     * writes) as possible; by default they are pushed one by one.
+     * @param assertions assertions returned from the idP, signed by this Client
+     * @throws IOException if any of the Assertions was invalid or a communication error occurred. Some of
+     * the assertions may have been pushed.
+     */
+    default void pushAssertions(final List<ClientSignedAssertion> assertions) throws IOException {
+        for (final ClientSignedAssertion assertion : assertions) {
+            pushAssertion(assertion);
+        }
+    }
+
+    /**
+     * Sign an assertion with the master key of an earlier login, without handing the key to the client.
+     * Implementations backed by real nodes collect partial signatures from them instead of trading
+     * and reassembling key shards.
+     * @param login assertion returned from the idP for a subject already on the blockchain
+     * @param assertion assertion to sign
+     * @return the assertion signed with the master key of the login's subject. It is not pushed.
+     * @throws IOException if the login subject is unknown, the nodes refuse to sign, or a communication error occurred
+     */
+    ClientSignedAssertion signAssertion(Assertion login, Assertion assertion) throws IOException;
+
     /**
      * List the block IDs on the blockchain encrypted with a given Master Key
      * @param masterKey master key the blocks belong to
@@ -37,6 +62,29 @@ public interface NodeNetwork {
      */
     List<String> listBlockIds(MasterKey masterKey) throws IOException;
 
+    /**
+     * List the block IDs appended for a given Master Key after a cursor, so repeated syncs only
+     * have to fetch new (or replaced) blocks.
+     * @param masterKey master key the blocks belong to
+     * @param cursor cursor from the previous page, or 0 to start from the first block
+     * @param limit max number of block IDs to return
+     * @return page of block IDs, with the cursor to use for the next call
+     * @throws IOException if something went wrong
+     */
+    BlockIdPage listBlockIdsSince(MasterKey masterKey, long cursor, int limit) throws IOException;
+
+    /**
+     * Get told about blocks appended for a Master Key instead of polling {@link #listBlockIdsSince(MasterKey, long, int)}.
+     * Blocks appended after the cursor are told about first, then every new one as it is appended, in
+     * sequence order. The sequence number of the last event seen can be passed as cursor to resume.
+     * @param masterKey master key the blocks belong to
+     * @param cursor cursor from an earlier event or page, or 0 to start from the first block
+     * @param listener called for every block. Must return quickly.
+     * @return handle to close to stop the events
+     * @throws IOException if something went wrong
+     */
+    Closeable subscribe(MasterKey masterKey, long cursor, BlockListener listener) throws IOException;
+
     /**
      * Fetch a specific block from the blockchain.
      * @param masterKey Master key used (in part) to encrypt the block
@@ -46,4 +94,44 @@ public interface NodeNetwork {
      * the given ID, or a communication error occurred.
      */
     Assertion getBlock(MasterKey masterKey, String blockId) throws IOException;
+
+    /**
+     * Get the T value and claim names of a block. Implementations that keep a trusted claim index alongside
+     * the blocks answer from it, which is much cheaper than fetching the block with {@link #getBlock(MasterKey, String)}.
+     * Others, such as the real node network, whose nodes have no signed claim index, read them from the
+     * block, checked as by {@link #getBlock(MasterKey, String)}, and so save nothing over fetching it.
+     * @param masterKey master key the block belongs to, or null to not check that
+     * @param blockId ID of block in the blockchain
+     * @return plaintext claim data of the block
+     * @throws IOException if there is no such block (for the master key), or a communication error occurred
+     */
+    BlockClaims getBlockClaims(MasterKey masterKey, String blockId) throws IOException;
+
+    /**
+     * Get the current Merkle checkpoint of the blocks appended for a Master Key.
+     * @param masterKey master key the blocks belong to, or null for the checkpoint of the whole chain
+     * @return size and root hash of the tree
+     * @throws IOException if something went wrong
+     */
+    ChainCheckpoint getCheckpoint(MasterKey masterKey) throws IOException;
+
+    /**
+     * Prove that an earlier checkpoint is a prefix of a later one, i.e. that nothing was removed or rewritten.
+     * @param masterKey master key the blocks belong to, or null for the whole chain
+     * @param fromSize tree size of the earlier checkpoint
+     * @param toSize tree size of the later checkpoint
+     * @return consistency proof
+     * @throws IOException if the sizes are not valid or a communication error occurred
+     */
+    MerkleProof getConsistencyProof(MasterKey masterKey, long fromSize, long toSize) throws IOException;
+
+    /**
+     * Prove that a block is in the tree of a checkpoint.
+     * @param masterKey master key the block belongs to, or null for the whole chain
+     * @param blockId ID of block in the blockchain
+     * @param treeSize tree size of the checkpoint
+     * @return inclusion proof of the latest version of the block
+     * @throws IOException if the block is not in the first treeSize blocks, or a communication error occurred
+     */
+    MerkleProof getInclusionProof(MasterKey masterKey, String blockId, long treeSize) throws IOException;
 }
@@ -0,0 +1,62 @@
+package com.signicat.services.blockchain.spi;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Wire format of a master key shard as sent to (and traded back from) a single node.
+ */
+public class NodeNetworkShardFormat {
+    private final String keyId;
+    private final String privateKeyPart;
+    private final String publicKey;
+    private final String signingKeyPart;
+
+    public NodeNetworkShardFormat(final String keyId, final String privateKeyPart, final String publicKey) {
+        this(keyId, privateKeyPart, publicKey, null);
+    }
+
+    @JsonCreator
+    public NodeNetworkShardFormat(
+            @JsonProperty("id") final String keyId,
+            @JsonProperty("privateKeyPart") final String privateKeyPart,
+            @JsonProperty("publicKey") final String publicKey,
+            @JsonProperty("signingKeyPart") final String signingKeyPart) {
+        this.keyId = keyId;
+        this.privateKeyPart = privateKeyPart;
+        this.publicKey = publicKey;
+        this.signingKeyPart = signingKeyPart;
+    }
+
+    @JsonProperty("id")
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * @return the shard as encoded by {@link com.signicat.services.blockchain.crypto.KeyShardCodec},
+     * or as {@link com.signicat.services.blockchain.crypto.KeyShard} JSON from older clients
+     */
+    @JsonProperty("privateKeyPart")
+    public String getPrivateKeyPart() {
+        return privateKeyPart;
+    }
+
+    /**
+     * @return base64url encoded X.509 public key
+     */
+    @JsonProperty("publicKey")
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * @return the node's share of the private exponent as a decimal number, if threshold signing is used
+     */
+    @JsonProperty("signingKeyPart")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getSigningKeyPart() {
+        return signingKeyPart;
+    }
+}
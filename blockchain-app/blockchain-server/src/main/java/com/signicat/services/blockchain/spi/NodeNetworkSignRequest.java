@@ -0,0 +1,44 @@
+package com.signicat.services.blockchain.spi;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Wire format of a request for a node's partial signature with its share of a master key.
+ */
+public class NodeNetworkSignRequest {
+    private final String login;
+    private final String keyId;
+    private final String signingInput;
+
+    @JsonCreator
+    public NodeNetworkSignRequest(
+            @JsonProperty("login") final String login,
+            @JsonProperty("id") final String keyId,
+            @JsonProperty("signingInput") final String signingInput) {
+        this.login = login;
+        this.keyId = keyId;
+        this.signingInput = signingInput;
+    }
+
+    /**
+     * @return serialized IdP assertion of a subject already on the chain with the key, authorizing the request
+     */
+    @JsonProperty("login")
+    public String getLogin() {
+        return login;
+    }
+
+    @JsonProperty("id")
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * @return base64url encoded JWS signing input
+     */
+    @JsonProperty("signingInput")
+    public String getSigningInput() {
+        return signingInput;
+    }
+}
@@ -0,0 +1,54 @@
+package com.signicat.services.blockchain.spi;
+
+import java.net.URI;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.signicat.services.blockchain.metrics.FlightEvents;
+import com.signicat.services.blockchain.metrics.Metrics;
+import com.signicat.services.blockchain.metrics.Trace;
+
+/**
+ * Times requests to the nodes, per node and per RPC, as <code>node.&lt;host_port&gt;.&lt;rpc&gt;</code>,
+ * where the RPC is the first path segment, like <code>assertion</code> or <code>blocks</code>.
+ * Responses with a status other than 2xx are metered under <code>.failed</code>.
+ * Each request is also a flight recorder event, see {@link FlightEvents#nodeCall(String, URI)}.
+ */
+class NodeRequestMetrics implements ClientRequestFilter, ClientResponseFilter {
+    private static final String TIMER_PROPERTY = NodeRequestMetrics.class.getName() + ".timer";
+    private static final String TRACE_PROPERTY = NodeRequestMetrics.class.getName() + ".trace";
+
+    @Override
+    public void filter(final ClientRequestContext request) {
+        request.setProperty(TIMER_PROPERTY, Metrics.time(name(request.getUri())));
+        request.setProperty(TRACE_PROPERTY, FlightEvents.nodeCall(request.getMethod(), request.getUri()));
+    }
+
+    @Override
+    public void filter(final ClientRequestContext request, final ClientResponseContext response) {
+        final Object context = request.getProperty(TIMER_PROPERTY);
+        if (context instanceof Timer.Context) {
+            ((Timer.Context) context).stop();
+        }
+        final Object trace = request.getProperty(TRACE_PROPERTY);
+        if (trace instanceof Trace) {
+            ((Trace) trace).status(response.getStatus()).size(Math.max(response.getLength(), 0)).close();
+        }
+        if (response.getStatus() / 100 != 2) {
+            Metrics.registry().meter(MetricRegistry.name(name(request.getUri()), "failed")).mark();
+        }
+    }
+
+    private static String name(final URI uri) {
+        final String path = uri.getPath() != null ? uri.getPath().replaceFirst("^/+", "") : "";
+        final int slash = path.indexOf('/');
+        return MetricRegistry.name("node",
+                Metrics.escape(uri.getHost() + "_" + uri.getPort()),
+                Metrics.escape(path.isEmpty() ? "root" : slash < 0 ? path : path.substring(0, slash)));
+    }
+}
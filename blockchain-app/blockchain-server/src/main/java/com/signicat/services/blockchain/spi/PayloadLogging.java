@@ -0,0 +1,49 @@
+package com.signicat.services.blockchain.spi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logging of assertions and node responses on hot paths, where they are too large and too frequent
+ * to log whole and every time. Only every n-th payload is sampled, and at most
+ * {@link #MAX_LOGGED_CHARS} of it logged. Callers guard on the level first, so nothing is done
+ * unless it is enabled:
+ * <pre>
+ * if (LOG.isDebugEnabled() &amp;&amp; SAMPLING.sample()) {
+ *     LOG.debug("Got assertion {}", PayloadLogging.truncate(res));
+ * }
+ * </pre>
+ * Never use it for anything holding key material, like key shards or JWKs.
+ */
+public class PayloadLogging {
+    public static final int MAX_LOGGED_CHARS = 256;
+
+    private final long every;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * @param every sample the first and then every n-th payload
+     */
+    public PayloadLogging(final long every) {
+        if (every < 1) {
+            throw new IllegalArgumentException("Must sample at least every 1, not " + every);
+        }
+        this.every = every;
+    }
+
+    /**
+     * @return whether this payload is one to log
+     */
+    public boolean sample() {
+        return count.getAndIncrement() % every == 0;
+    }
+
+    /**
+     * @return the start of the payload, with how much was left out
+     */
+    public static String truncate(final String payload) {
+        if (payload == null || payload.length() <= MAX_LOGGED_CHARS) {
+            return payload;
+        }
+        return payload.substring(0, MAX_LOGGED_CHARS) + "... (" + payload.length() + " chars)";
+    }
+}
@@ -0,0 +1,181 @@
+package com.signicat.services.blockchain.spi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Node network that starts fetching a key's blocks in the background as soon as the key is
+ * reassembled by {@link #pushAssertion(Assertion)}, since a dump of the key's data almost always
+ * follows. The block ID list and each block are then handed out once, to the first lookup asking
+ * for them, which waits for them if they are still in flight.
+ *
+ * At most a fixed number of fetches run at once, and at most a fixed number wait for their turn;
+ * beyond that, prefetching is skipped, as it is only an optimization. Prefetched data not asked for
+ * within the time to live is dropped, and fetches of it that have not started yet are cancelled.
+ */
+public class PrefetchingNodeNetwork extends ForwardingNodeNetwork implements Closeable {
+    private static final Logger LOG = LogManager.getLogger(PrefetchingNodeNetwork.class);
+
+    private final ExecutorService executor;
+    private final Cache<List<Object>, CompletableFuture<Object>> prefetched;
+    private final LongAdder fetched = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param delegate network to fetch from
+     * @param concurrency max number of fetches running at once
+     * @param maxQueued max number of fetches waiting to run
+     * @param ttl how long prefetched data is kept for the lookup it was fetched for
+     */
+    public PrefetchingNodeNetwork(
+            final NodeNetwork delegate, final int concurrency, final int maxQueued, final long ttl, final TimeUnit unit) {
+        super(delegate);
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(maxQueued),
+                new ThreadFactoryBuilder().setNameFormat("block-prefetch-%d").setDaemon(true).build());
+        this.prefetched = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl, unit)
+                .<List<Object>, CompletableFuture<Object>>removalListener(n -> {
+                    if (n.wasEvicted()) {
+                        n.getValue().cancel(false);
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public MasterKey pushAssertion(final Assertion assertion) throws IOException {
+        final MasterKey masterKey = delegate.pushAssertion(assertion);
+        if (masterKey != null) {
+            prefetch(masterKey);
+        }
+        return masterKey;
+    }
+
+    @Override
+    public List<String> listBlockIds(final MasterKey masterKey) throws IOException {
+        final List<String> blockIds = take(Arrays.asList("listBlockIds", masterKey));
+        return blockIds != null ? blockIds : delegate.listBlockIds(masterKey);
+    }
+
+    @Override
+    public Assertion getBlock(final MasterKey masterKey, final String blockId) throws IOException {
+        final Assertion block = take(Arrays.asList("getBlock", masterKey, blockId));
+        return block != null ? block : delegate.getBlock(masterKey, blockId);
+    }
+
+    /**
+     * @return number of blocks fetched in the background
+     */
+    public long getPrefetchedCount() {
+        return fetched.sum();
+    }
+
+    /**
+     * @return number of lookups answered with prefetched data
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of prefetched or in flight block lists and blocks not asked for yet
+     */
+    public long getPendingCount() {
+        return prefetched.size();
+    }
+
+    /**
+     * Cancel fetches that have not started yet and stop prefetching.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        prefetched.asMap().values().forEach(f -> f.cancel(false));
+        prefetched.invalidateAll();
+    }
+
+    private void prefetch(final MasterKey masterKey) {
+        LOG.debug("Prefetching blocks of key {}", masterKey.getKeyId());
+        fetch(Arrays.asList("listBlockIds", masterKey), () -> {
+            final List<String> blockIds = ImmutableList.copyOf(delegate.listBlockIds(masterKey));
+            for (final String blockId : blockIds) {
+                fetch(Arrays.asList("getBlock", masterKey, blockId), () -> {
+                    final Assertion block = delegate.getBlock(masterKey, blockId);
+                    fetched.increment();
+                    return block;
+                });
+            }
+            return blockIds;
+        });
+    }
+
+    private void fetch(final List<Object> key, final Fetch fetch) {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        prefetched.put(key, future);
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(fetch.call());
+                } catch (final IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            LOG.debug("Too many prefetches queued, skipping {}", key.get(key.size() - 1));
+            prefetched.asMap().remove(key, future);
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * @return the prefetched value, or null if there is none or prefetching it failed
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T take(final List<Object> key) throws IOException {
+        final CompletableFuture<Object> future = prefetched.asMap().remove(key);
+        if (future == null || future.isCancelled()) {
+            return null;
+        }
+        try {
+            final T value = (T) future.get();
+            hits.increment();
+            return value;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a prefetch.");
+        } catch (final CancellationException e) {
+            return null;
+        } catch (final ExecutionException e) {
+            LOG.debug("Prefetch failed, fetching again.", e.getCause());
+            return null;
+        }
+    }
+
+    private interface Fetch {
+        Object call() throws IOException;
+    }
+}
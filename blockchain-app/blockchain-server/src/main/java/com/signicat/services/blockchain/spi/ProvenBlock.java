@@ -0,0 +1,30 @@
+package com.signicat.services.blockchain.spi;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A serialized {@link ClientSignedAssertion} along with its inclusion proof in the tree of its key ID.
+ */
+public class ProvenBlock {
+    private final String block;
+    private final MerkleProof proof;
+
+    @JsonCreator
+    public ProvenBlock(
+            @JsonProperty("block") final String block,
+            @JsonProperty("proof") final MerkleProof proof) {
+        this.block = block;
+        this.proof = proof;
+    }
+
+    @JsonProperty("block")
+    public String getBlock() {
+        return block;
+    }
+
+    @JsonProperty("proof")
+    public MerkleProof getProof() {
+        return proof;
+    }
+}
@@ -0,0 +1,57 @@
+package com.signicat.services.blockchain.spi;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * Bounded memory of recently pushed content, by SHA-256 digest, so a repeated push can be recognized
+ * without parsing it. The least recently used digests are forgotten first. Safe for concurrent use.
+ *
+ * A digest is only a hint: callers should check that what is stored under the remembered ID is still
+ * the same content before treating a push as a duplicate.
+ */
+public class RecentPushes {
+    private final Cache<String, String> pushes;
+
+    /**
+     * @param maxSize max number of digests remembered
+     */
+    public RecentPushes(final long maxSize) {
+        this.pushes = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * @return base64url encoded SHA-256 of the UTF-8 content
+     */
+    public static String digest(final String content) {
+        try {
+            return Base64URL.encode(MessageDigest.getInstance("SHA-256")
+                    .digest(content.getBytes(StandardCharsets.UTF_8))).toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return ID the content with the given digest was stored under, or null if it is not remembered
+     */
+    public String get(final String digest) {
+        return pushes.getIfPresent(digest);
+    }
+
+    /**
+     * @param id ID the content was stored under, for instance a block or key ID
+     */
+    public void put(final String digest, final String id) {
+        pushes.put(digest, id);
+    }
+
+    public long size() {
+        return pushes.size();
+    }
+}
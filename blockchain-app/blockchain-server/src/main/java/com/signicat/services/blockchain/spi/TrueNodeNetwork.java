@@ -1,24 +1,42 @@
 package com.signicat.services.blockchain.spi;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.net.URI;
-import java.security.InvalidKeyException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
+import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientResponseFilter;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.media.sse.EventSource;
+import org.glassfish.jersey.media.sse.SseFeature;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
@@ -28,42 +46,110 @@ import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import com.signicat.services.blockchain.crypto.KeyShard;
-
-import sun.security.rsa.RSAPublicKeyImpl;
+import com.signicat.services.blockchain.crypto.KeyShardCodec;
+import com.signicat.services.blockchain.crypto.ThresholdJWSSigner;
 
 /**
- * This class extends DummyNodeNetwork so it's possible to stub out any method with a dummy
- * one for testing.
+ * Node network talking to the nodes over HTTP. To stub out single methods for testing, wrap it in a
+ * {@link ForwardingNodeNetwork}.
  */
-public class TrueNodeNetwork extends DummyNodeNetwork {
+public class TrueNodeNetwork implements NodeNetwork {
     private static final Logger LOG = LogManager.getLogger(TrueNodeNetwork.class);
+    private static final NodeRequestMetrics NODE_REQUEST_METRICS = new NodeRequestMetrics();
+    private static final PayloadLogging PAYLOAD_LOGGING = new PayloadLogging(100);
+    private static final long SUBSCRIBE_TIMEOUT_SECONDS = 5;
 
-    private static final List<URI> NODES = ImmutableList.of(
+    public static final List<URI> DEFAULT_NODES = ImmutableList.of(
             URI.create("http://95.85.5.71:9000/"),
             URI.create("http://146.185.132.163:9000/")
     );
 
+    /**
+     * Request header with a digest of the pushed content. Nodes acknowledge a push whose key they have
+     * recently seen, for the same content, without parsing or storing it again. For a batch the header
+     * holds the digests of the items in order, separated by {@link #IDEMPOTENCY_KEY_SEPARATOR}.
+     */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    public static final String IDEMPOTENCY_KEY_SEPARATOR = ",";
+
+    /**
+     * Longer digest lists are left out, so batch requests stay well within the servers' header size
+     * limits. Nodes then digest the items themselves.
+     */
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 4096;
+
+    /**
+     * Name of the server-sent events telling about appended blocks.
+     */
+    public static final String BLOCK_EVENT = "block";
+
+    private final List<URI> nodes;
+    private final ChainVerifier verifier;
+    private final boolean thresholdSigning;
+
+    public TrueNodeNetwork() {
+        this(DEFAULT_NODES);
+    }
+
+    /**
+     * @param nodes base URIs of the nodes to talk to, for instance the ones of a local
+     *              {@link com.signicat.services.blockchain.node.SimulatedNodeCluster}
+     */
+    public TrueNodeNetwork(final List<URI> nodes) {
+        this(nodes, null);
+    }
+
+    /**
+     * @param nodes base URIs of the nodes to talk to
+     * @param verifier if not null, block listings move the verifier to the node's latest checkpoint, and
+     *                 blocks fetched with a master key are checked against it with inclusion proofs
+     */
+    public TrueNodeNetwork(final List<URI> nodes, final ChainVerifier verifier) {
+        this(nodes, verifier, false);
+    }
+
+    /**
+     * @param nodes base URIs of the nodes to talk to
+     * @param verifier verifier of block listings and blocks, or null
+     * @param thresholdSigning if true, master keys pushed also give every node a share of the private exponent,
+     *                         so {@link #signAssertion(Assertion, Assertion)} works for them
+     */
+    public TrueNodeNetwork(final List<URI> nodes, final ChainVerifier verifier, final boolean thresholdSigning) {
+        this.nodes = ImmutableList.copyOf(Objects.requireNonNull(nodes));
+        if (this.nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one node is needed.");
+        }
+        this.verifier = verifier;
+        this.thresholdSigning = thresholdSigning;
+    }
 
     @Override
     public void pushMasterKey(final MasterKey masterKey) throws IOException {
-        final KeyShard[] shards = masterKey.getSplitPrivateKey(NODES.size(), NODES.size());
-        final ObjectMapper mapper = new ObjectMapper();
-        for (int i=0;i<NODES.size();i++) {
-            ClientBuilder.newClient()
+        final KeyShard[] shards = masterKey.getSplitPrivateKey(nodes.size(), nodes.size());
+        final BigInteger[] signingShares = thresholdSigning ? masterKey.getSigningKeyShares(nodes.size()) : null;
+        final String[] encodedShards = Arrays.stream(shards).map(KeyShardCodec::encode).toArray(String[]::new);
+        for (int i=0;i<nodes.size();i++) {
+            final Response res = newClient()
                     .register(JacksonJsonProvider.class)
-                    .target(NODES.get(i))
+                    .target(nodes.get(i))
                     .path("masterkeypart")
                     .request()
+                    .header(IDEMPOTENCY_KEY_HEADER, RecentPushes.digest(encodedShards[i]))
                     .post(Entity.json(new NodeNetworkShardFormat(
                             masterKey.getKeyId(),
-                            mapper.writeValueAsString(shards[i]),
-                            Base64URL.encode(masterKey.getPublicKey().getEncoded()).toJSONString())));
+                            encodedShards[i],
+                            Base64URL.encode(masterKey.getPublicKey().getEncoded()).toString(),
+                            signingShares != null ? signingShares[i].toString() : null)));
+            checkStatus(res, nodes.get(i));
         }
     }
 
     @Override
     public void pushAssertion(final ClientSignedAssertion assertion) throws IOException {
-        LOG.info(assertion.getValue());
+        if (LOG.isDebugEnabled() && PAYLOAD_LOGGING.sample()) {
+            LOG.debug("Pushing assertion {}", PayloadLogging.truncate(assertion.getValue()));
+        }
         final String subjectId;
         try {
             final JWTClaimsSet claims = assertion.getJWT().getJWTClaimsSet();
@@ -71,19 +157,51 @@ public class TrueNodeNetwork extends DummyNodeNetwork {
             final JWTClaimsSet payload = JWTClaimsSet.parse(claims.getJSONObjectClaim("payload"));
             final SignedJWT wrappedAssertion = new SignedJWT(header, payload);
             subjectId = wrappedAssertion.getJWTClaimsSet().getSubject();
-            for (int i=0;i<NODES.size();i++) {
-                final Response res = ClientBuilder.newClient()
+            final String digest = RecentPushes.digest(assertion.getValue());
+            for (int i=0;i<nodes.size();i++) {
+                final Response res = newClient()
                         .register(JacksonJsonProvider.class)
-                        .target(NODES.get(i))
+                        .target(nodes.get(i))
                         .path("assertion")
                         .request()
+                        .header(IDEMPOTENCY_KEY_HEADER, digest)
                         .post(Entity.text(assertion.getValue()));
-                LOG.info("Got this: " + res.readEntity(String.class));
+                checkStatus(res, nodes.get(i));
+                if (LOG.isDebugEnabled() && PAYLOAD_LOGGING.sample()) {
+                    LOG.debug("Node {} answered {}", nodes.get(i), PayloadLogging.truncate(res.readEntity(String.class)));
+                } else {
+                    res.close();
+                }
             }
         } catch (final ParseException e) {
             throw new IOException("Corrupt assertion..", e);
         }
-        LOG.info("Subject ID " + subjectId + " is now known to the blockchain.");
+        LOG.debug("Subject ID {} is now known to the blockchain.", subjectId);
+    }
+
+    /**
+     * Sends all assertions to each node in one request, with the digest of each, so nodes that
+     * already stored a batch before a retry acknowledge it without storing it again.
+     */
+    @Override
+    public void pushAssertions(final List<ClientSignedAssertion> assertions) throws IOException {
+        final List<String> values = assertions.stream().map(ClientSignedAssertion::getValue).collect(Collectors.toList());
+        final String digests = values.stream().map(RecentPushes::digest)
+                .collect(Collectors.joining(IDEMPOTENCY_KEY_SEPARATOR));
+        for (final URI node : nodes) {
+            final Invocation.Builder request = newClient()
+                    .register(JacksonJsonProvider.class)
+                    .target(node)
+                    .path("assertions")
+                    .request(MediaType.APPLICATION_JSON);
+            if (digests.length() <= MAX_IDEMPOTENCY_KEY_LENGTH) {
+                request.header(IDEMPOTENCY_KEY_HEADER, digests);
+            }
+            final Response res = request.post(Entity.json(values));
+            checkStatus(res, node);
+            res.close();
+        }
+        LOG.debug("{} assertions are now known to the blockchain.", assertions.size());
     }
 
     @Override
@@ -91,94 +209,326 @@ public class TrueNodeNetwork extends DummyNodeNetwork {
         final ObjectMapper mapper = new ObjectMapper();
         final List<KeyShard> masterKeyShards = new ArrayList<>();
         String keyId = null;
-        LOG.info("Sending: " + assertion.getValue());
+        if (LOG.isDebugEnabled() && PAYLOAD_LOGGING.sample()) {
+            LOG.debug("Trading assertion {}", PayloadLogging.truncate(assertion.getValue()));
+        }
         RSAPublicKey pubKey = null;
-        for (int i=0;i<NODES.size();i++) {
-            final String res = ClientBuilder.newClient()
+        for (int i=0;i<nodes.size();i++) {
+            final Response response = newClient()
                     .register(JacksonJsonProvider.class)
-                    .target(NODES.get(i))
+                    .target(nodes.get(i))
                     .path("assertion/trade")
                     .request(MediaType.APPLICATION_JSON)
-                    .post(Entity.text(assertion.getValue()))
-                    .readEntity(String.class);
-            LOG.info("got this: " + res);
+                    .post(Entity.text(assertion.getValue()));
+            checkStatus(response, nodes.get(i));
+            final String res = response.readEntity(String.class);
+            // Holds a key shard, so only which node answered is logged.
+            LOG.debug("Got key shard from node {}", nodes.get(i));
             final NodeNetworkShardFormat keyShard = mapper.readValue(res, NodeNetworkShardFormat.class);
-            masterKeyShards.add(mapper.readValue(keyShard.privateKeyPart, KeyShard.class));
             try {
                 keyId = keyShard.getKeyId();
-                pubKey = new RSAPublicKeyImpl(new Base64URL(keyShard.publicKey).decode());
-            } catch (final InvalidKeyException e) {
+                // Older nodes hand back the encoding as a JSON string, quotes included.
+                pubKey = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(
+                        new Base64URL(keyShard.getPublicKey().replace("\"", "")).decode()));
+            } catch (final InvalidKeySpecException | NoSuchAlgorithmException e) {
                 LOG.error("Key is corrupt :-(", e);
+                throw new IOException("Node " + nodes.get(i) + " returned a corrupt public key.", e);
             }
+            masterKeyShards.add(KeyShardCodec.decode(keyShard.getPrivateKeyPart(), pubKey));
         }
         return new MasterKey(keyId, pubKey, masterKeyShards.toArray(new KeyShard[masterKeyShards.size()]));
     }
 
+    /**
+     * Looks up the login's key on one node, then has every node sign with its exponent share. This
+     * is one round trip per node plus one, and no shard trade or reassembly.
+     */
+    @Override
+    public ClientSignedAssertion signAssertion(final Assertion login, final Assertion assertion) throws IOException {
+        final Response response = newClient()
+                .register(JacksonJsonProvider.class)
+                .target(nodes.get(0))
+                .path("assertion/key")
+                .request(MediaType.APPLICATION_JSON)
+                .post(Entity.text(login.getValue()));
+        checkStatus(response, nodes.get(0));
+        final NodeNetworkShardFormat key = new ObjectMapper().readValue(
+                response.readEntity(String.class), NodeNetworkShardFormat.class);
+        final RSAPublicKey pubKey;
+        try {
+            pubKey = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(
+                    new Base64URL(key.getPublicKey().replace("\"", "")).decode()));
+        } catch (final InvalidKeySpecException | NoSuchAlgorithmException e) {
+            throw new IOException("Node " + nodes.get(0) + " returned a corrupt public key.", e);
+        }
+        return ClientSignedAssertion.createFromAssertion(key.getKeyId(), new ThresholdJWSSigner(pubKey,
+                signingInput -> collectPartialSignatures(login, key.getKeyId(), signingInput)), assertion);
+    }
+
+    private List<BigInteger> collectPartialSignatures(
+            final Assertion login, final String keyId, final byte[] signingInput) throws IOException {
+        final NodeNetworkSignRequest request = new NodeNetworkSignRequest(
+                login.getValue(), keyId, Base64URL.encode(signingInput).toString());
+        final List<BigInteger> partials = new ArrayList<>();
+        for (final URI node : nodes) {
+            final Response response = newClient()
+                    .register(JacksonJsonProvider.class)
+                    .target(node)
+                    .path("sign")
+                    .request(MediaType.TEXT_PLAIN)
+                    .post(Entity.json(request));
+            checkStatus(response, node);
+            partials.add(new BigInteger(1, new Base64URL(response.readEntity(String.class)).decode()));
+        }
+        return partials;
+    }
+
     @Override
     public List<String> listBlockIds(final MasterKey masterKey) throws IOException {
-        final String res = ClientBuilder.newClient()
+        final Response response = newClient()
                 .register(JacksonJsonProvider.class)
-                .target(NODES.get(0))
+                .target(nodes.get(0))
                 .path("blocks")
                 .path(masterKey.getKeyId())
                 .request(MediaType.APPLICATION_JSON)
-                .get()
-                .readEntity(String.class);
+                .get();
+        checkStatus(response, nodes.get(0));
+        final String res = response.readEntity(String.class);
         final ObjectMapper mapper = new ObjectMapper();
-        return mapper.readValue(res, new TypeReference<List<String>>() {});
+        final List<String> blockIds = mapper.readValue(res, new TypeReference<List<String>>() {});
+        if (verifier != null) {
+            verifier.refresh(this, masterKey);
+        }
+        return blockIds;
+    }
+
+    @Override
+    public BlockIdPage listBlockIdsSince(final MasterKey masterKey, final long cursor, final int limit) throws IOException {
+        final Response response = newClient()
+                .register(JacksonJsonProvider.class)
+                .target(nodes.get(0))
+                .path("blocks")
+                .path(masterKey.getKeyId())
+                .path("page")
+                .queryParam("since", cursor)
+                .queryParam("limit", limit)
+                .request(MediaType.APPLICATION_JSON)
+                .get();
+        checkStatus(response, nodes.get(0));
+        final BlockIdPage page = new ObjectMapper().readValue(response.readEntity(String.class), BlockIdPage.class);
+        // The checkpoint is taken after the listing, so an honest node can never have listed past it.
+        if (verifier != null && page.getCursor() > verifier.refresh(this, masterKey).getTreeSize()) {
+            throw new IOException("Node " + nodes.get(0) + " listed blocks past its own checkpoint.");
+        }
+        return page;
+    }
+
+    /**
+     * Follows the block events of the first node. The event source reconnects by itself and resumes
+     * after the last event it got, except when the node answers 404, as nodes without block events do.
+     * The first connection is waited for, up to {@value #SUBSCRIBE_TIMEOUT_SECONDS} seconds, so such
+     * nodes are reported right away. Each subscription has its own client, closed along with it.
+     */
+    @Override
+    public Closeable subscribe(final MasterKey masterKey, final long cursor, final BlockListener listener) throws IOException {
+        final CompletableFuture<Integer> connected = new CompletableFuture<>();
+        final AtomicReference<EventSource> source = new AtomicReference<>();
+        final Client client = newClient();
+        final WebTarget target = client
+                .register(SseFeature.class)
+                .register((ClientResponseFilter) (request, response) -> {
+                    connected.complete(response.getStatus());
+                    if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                        LOG.warn("Node {} has no block events for key {}, not reconnecting.",
+                                nodes.get(0), masterKey.getKeyId());
+                        closeSource(source.get());
+                    }
+                })
+                .target(nodes.get(0))
+                .path("blocks")
+                .path(masterKey.getKeyId())
+                .path("events")
+                .queryParam("since", cursor);
+        source.set(EventSource.target(target).reconnectingEvery(1, TimeUnit.SECONDS).build());
+        final ObjectMapper mapper = new ObjectMapper();
+        source.get().register(event -> {
+            try {
+                listener.blockAppended(mapper.readValue(event.readData(), BlockEvent.class));
+            } catch (final IOException e) {
+                LOG.warn("Got corrupt block event from node {}", nodes.get(0), e);
+            }
+        }, BLOCK_EVENT);
+        source.get().open();
+        final Closeable subscription = () -> {
+            closeSource(source.get());
+            client.close();
+        };
+        final Integer status;
+        try {
+            status = connected.get(SUBSCRIBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final TimeoutException | ExecutionException e) {
+            LOG.warn("Node {} did not answer for block events yet, reconnecting in the background.", nodes.get(0));
+            return subscription;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            subscription.close();
+            throw new IOException("Interrupted while subscribing to block events.", e);
+        }
+        if (status == Response.Status.NOT_FOUND.getStatusCode()) {
+            subscription.close();
+            throw new IOException("Node " + nodes.get(0) + " does not serve block events.");
+        }
+        return subscription;
+    }
+
+    /**
+     * The reader thread is stuck in a socket read until the next event, no point waiting for it.
+     */
+    private static void closeSource(final EventSource source) {
+        source.close(0, TimeUnit.SECONDS);
     }
 
     @Override
     public Assertion getBlock(final MasterKey masterKey, final String blockId) throws IOException {
-        final String res = ClientBuilder.newClient()
+        final PublicKey pubKey = masterKey != null ? masterKey.getPublicKey() : null;
+        return fetchBlock(masterKey, blockId).getAssertion(pubKey);
+    }
+
+    /**
+     * Nodes keep no signed claim index, so the claims are read from the block itself, fetched and
+     * checked as by {@link #getBlock(MasterKey, String)}. This costs as much as fetching the block.
+     */
+    @Override
+    public BlockClaims getBlockClaims(final MasterKey masterKey, final String blockId) throws IOException {
+        final ClientSignedAssertion block = fetchBlock(masterKey, blockId);
+        if (masterKey != null) {
+            if (!masterKey.getKeyId().equals(block.getKeyId())) {
+                throw new IOException("Block " + blockId + " is not encrypted with key " + masterKey.getKeyId());
+            }
+            block.getAssertion(masterKey.getPublicKey());
+        }
+        return BlockClaims.of(blockId, block);
+    }
+
+    /**
+     * @return the block as stored, proven against the verifier's checkpoint of the key if there is a
+     * verifier and a key. Its signature is not checked.
+     */
+    private ClientSignedAssertion fetchBlock(final MasterKey masterKey, final String blockId) throws IOException {
+        if (verifier != null && masterKey != null) {
+            return getVerifiedBlock(masterKey, blockId);
+        }
+        final Response response = newClient()
                 .register(JacksonJsonProvider.class)
-                .target(NODES.get(0))
+                .target(nodes.get(0))
                 .path("block")
                 .path(blockId)
                 .request()
-                .get()
-                .readEntity(String.class);
-        LOG.info("Got assertion: " + res);
-        final ClientSignedAssertion ass;
+                .get();
+        checkStatus(response, nodes.get(0));
+        final String res = response.readEntity(String.class);
+        if (LOG.isDebugEnabled() && PAYLOAD_LOGGING.sample()) {
+            LOG.debug("Got assertion {}", PayloadLogging.truncate(res));
+        }
         try {
-            ass = ClientSignedAssertion.valueOf(res);
+            return ClientSignedAssertion.valueOf(res);
         } catch (final ParseException e) {
             LOG.error("Got corrupt assertion from the blockchain", e);
             throw new IOException("Got corrupt assertion from the blockchain", e);
         }
-        final PublicKey pubKey = masterKey != null ? masterKey.getPublicKey() : null;
-        return ass.getAssertion(pubKey);
     }
 
-    private static class NodeNetworkShardFormat {
-        private final String keyId;
-        private final String privateKeyPart;
-        private final String publicKey;
+    @Override
+    public ChainCheckpoint getCheckpoint(final MasterKey masterKey) throws IOException {
+        return getJson(chainTarget(masterKey).path("checkpoint"), ChainCheckpoint.class);
+    }
 
-        @JsonCreator
-        public NodeNetworkShardFormat(
-                @JsonProperty("id") final String keyId,
-                @JsonProperty("privateKeyPart") final String privateKeyPart,
-                @JsonProperty("publicKey") final String publicKey) {
-            this.keyId = keyId;
-            this.privateKeyPart = privateKeyPart;
-            this.publicKey = publicKey;
-        }
+    @Override
+    public MerkleProof getConsistencyProof(final MasterKey masterKey, final long fromSize, final long toSize) throws IOException {
+        return getJson(chainTarget(masterKey)
+                .path("consistency")
+                .queryParam("from", fromSize)
+                .queryParam("to", toSize), MerkleProof.class);
+    }
 
-        @JsonProperty("id")
-        public String getKeyId() {
-            return keyId;
-        }
+    @Override
+    public MerkleProof getInclusionProof(final MasterKey masterKey, final String blockId, final long treeSize) throws IOException {
+        return getJson(chainTarget(masterKey)
+                .path("proof")
+                .path(blockId)
+                .queryParam("tree_size", treeSize), MerkleProof.class);
+    }
 
-        @JsonProperty("privateKeyPart")
-        public String getPrivateKeyPart() {
-            return privateKeyPart;
+    /**
+     * Fetch a block with its inclusion proof against the verifier's checkpoint of the key, moving to
+     * a newer checkpoint once if the block was appended after it.
+     */
+    private ClientSignedAssertion getVerifiedBlock(final MasterKey masterKey, final String blockId) throws IOException {
+        ChainCheckpoint checkpoint = verifier.getCheckpoint(masterKey.getKeyId());
+        if (checkpoint == null) {
+            checkpoint = verifier.refresh(this, masterKey);
         }
-
-        @JsonProperty("publicKey")
-        public String getPublicKey() {
-            return publicKey;
+        Response response = requestProvenBlock(blockId, checkpoint.getTreeSize());
+        if (response.getStatus() == Response.Status.CONFLICT.getStatusCode()) {
+            response.close();
+            checkpoint = verifier.refresh(this, masterKey);
+            response = requestProvenBlock(blockId, checkpoint.getTreeSize());
+        }
+        checkStatus(response, nodes.get(0));
+        final ProvenBlock proven = new ObjectMapper().readValue(response.readEntity(String.class), ProvenBlock.class);
+        final ClientSignedAssertion ass;
+        try {
+            ass = ClientSignedAssertion.valueOf(proven.getBlock());
+        } catch (final ParseException e) {
+            throw new IOException("Got corrupt assertion from the blockchain", e);
+        }
+        if (!masterKey.getKeyId().equals(ass.getKeyId()) || !blockId.equals(ass.getSubject())) {
+            throw new IOException("Node " + nodes.get(0) + " returned another block than " + blockId);
         }
+        verifier.verifyInclusion(checkpoint,
+                KeyBlockIndex.leafHash(blockId, ass.getValue().getBytes(StandardCharsets.UTF_8)), proven.getProof());
+        return ass;
+    }
+
+    private Response requestProvenBlock(final String blockId, final long treeSize) {
+        return newClient()
+                .register(JacksonJsonProvider.class)
+                .target(nodes.get(0))
+                .path("block")
+                .path(blockId)
+                .path("proven")
+                .queryParam("tree_size", treeSize)
+                .request(MediaType.APPLICATION_JSON)
+                .get();
+    }
+
+    /**
+     * @return target of the chain of a key, or of the whole chain if the key is null
+     */
+    private WebTarget chainTarget(final MasterKey masterKey) {
+        final WebTarget target = newClient()
+                .register(JacksonJsonProvider.class)
+                .target(nodes.get(0));
+        return masterKey != null ? target.path("blocks").path(masterKey.getKeyId()) : target;
     }
 
+    private <T> T getJson(final WebTarget target, final Class<T> type) throws IOException {
+        final Response response = target.request(MediaType.APPLICATION_JSON).get();
+        checkStatus(response, nodes.get(0));
+        return new ObjectMapper().readValue(response.readEntity(String.class), type);
+    }
+
+    /**
+     * @return a client timing its requests, see {@link NodeRequestMetrics}
+     */
+    private static Client newClient() {
+        return ClientBuilder.newClient().register(NODE_REQUEST_METRICS);
+    }
+
+    private static void checkStatus(final Response res, final URI node) throws IOException {
+        if (res.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            res.close();
+            throw new IOException("Node " + node + " responded with status " + res.getStatus());
+        }
+    }
 }
@@ -0,0 +1,61 @@
+package com.signicat.services.blockchain.store;
+
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Location of a record payload in a {@link SegmentedLog}.
+ */
+public class LogPosition {
+    private final int segment;
+    private final long offset;
+    private final int length;
+
+    public LogPosition(final int segment, final long offset, final int length) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int getSegment() {
+        return segment;
+    }
+
+    /**
+     * @return offset of the payload within the segment file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return length of the payload in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof LogPosition)) {
+            return false;
+        }
+        final LogPosition other = (LogPosition) o;
+        return segment == other.segment && offset == other.offset && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(segment, offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(LogPosition.class)
+                .add("segment", segment)
+                .add("offset", offset)
+                .add("length", length)
+                .toString();
+    }
+}
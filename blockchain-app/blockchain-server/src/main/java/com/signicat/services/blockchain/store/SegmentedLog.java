@@ -0,0 +1,505 @@
+package com.signicat.services.blockchain.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append-only log of typed records, split into segment files of bounded size.
+ *
+ * Each record is stored as <code>[int payload length][int CRC32 of type and payload][byte type][payload]</code>.
+ * Appends are handed to a single writer thread which writes everything queued so far and then fsyncs
+ * once for the whole batch (group commit); an append's future completes when its record is durable.
+ * Reads go through read-only memory mappings of the segment files. A mapping is only widened once its
+ * file has doubled in size, so records appended since are read from the file instead of being mapped
+ * again one by one.
+ *
+ * When opened, all segments are scanned and every intact record is handed to a {@link RecordVisitor}
+ * so callers can rebuild their indexes. A torn or corrupt record at the tail of the last segment,
+ * as left by a crash mid-write, is truncated away. A batch that fails to be written is truncated away
+ * right away, so none of its records is replayed; if even that fails, every later append fails too.
+ */
+public class SegmentedLog implements Closeable {
+    private static final Logger LOG = LogManager.getLogger(SegmentedLog.class);
+    private static final int HEADER_BYTES = 9;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{8})\\.log");
+    // Directories can not be opened, and need not be synced, there.
+    private static final boolean SYNC_DIRECTORY = !System.getProperty("os.name", "").startsWith("Windows");
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Only touched by the writer thread after construction.
+    private FileChannel activeChannel;
+    private int activeSegment;
+    private long activeSize;
+    private IOException failure;
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        /**
+         * @param type type of the record
+         * @param position position of the payload, usable with {@link #read(LogPosition)}
+         * @param payload read-only view of the payload
+         */
+        void visit(byte type, LogPosition position, ByteBuffer payload) throws IOException;
+    }
+
+    /**
+     * Open (or create) a log, replaying every record in it.
+     * @param directory directory holding the segment files
+     * @param maxSegmentBytes size at which a new segment is started
+     * @param maxBatchSize max number of appends written per fsync
+     * @param visitor gets every intact record, in append order
+     */
+    public SegmentedLog(
+            final Path directory,
+            final long maxSegmentBytes,
+            final int maxBatchSize,
+            final RecordVisitor visitor) throws IOException {
+        if (maxSegmentBytes <= HEADER_BYTES || maxSegmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be positive and fit in an int.");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxBatchSize = maxBatchSize;
+
+        final List<Integer> existing = listSegments();
+        for (int i = 0; i < existing.size(); i++) {
+            replaySegment(existing.get(i), i == existing.size() - 1, visitor);
+        }
+        activeSegment = existing.isEmpty() ? 0 : existing.get(existing.size() - 1);
+        openActiveSegment();
+
+        writer = new Thread(this::writeLoop, "segmented-log-writer-" + directory.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Append a record.
+     * @return future completed with the position of the payload once the record is durable on disk
+     */
+    public CompletableFuture<LogPosition> append(final byte type, final byte[] payload) {
+        return append(type, payload, null);
+    }
+
+    /**
+     * Append a record, and have the writer thread hand its position to a callback once it is durable,
+     * before the future is completed. Callbacks are called in log order, so indexes updated by them
+     * end up the same as when rebuilt by replaying the log. They hold up the writer, so must be quick.
+     * @param onDurable called with the position of the payload, or null
+     * @return future completed with the position of the payload once the record is durable and the
+     * callback has returned
+     */
+    public CompletableFuture<LogPosition> append(final byte type, final byte[] payload, final Consumer<LogPosition> onDurable) {
+        final PendingAppend pending = new PendingAppend(type, payload, onDurable);
+        // Closing takes the lock too, so nothing is enqueued after the writer's last look at the queue.
+        synchronized (queue) {
+            if (closed) {
+                pending.future.completeExceptionally(new IOException("Log is closed."));
+            } else {
+                queue.add(pending);
+            }
+        }
+        return pending.future;
+    }
+
+    /**
+     * Append a record and wait until it is durable.
+     */
+    public LogPosition appendAndSync(final byte type, final byte[] payload) throws IOException {
+        return appendAndSync(type, payload, null);
+    }
+
+    /**
+     * Append a record and wait until it is durable, see {@link #append(byte, byte[], Consumer)}.
+     */
+    public LogPosition appendAndSync(final byte type, final byte[] payload, final Consumer<LogPosition> onDurable) throws IOException {
+        try {
+            return append(type, payload, onDurable).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while appending to log.", e);
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException("Failed appending to log.", e.getCause());
+        }
+    }
+
+    /**
+     * @return read-only view of the payload at the given position
+     */
+    public ByteBuffer read(final LogPosition position) throws IOException {
+        final Segment segment = segments.get(position.getSegment());
+        if (segment == null) {
+            throw new IOException("No segment " + position.getSegment() + " in " + directory);
+        }
+        return segment.read(position.getOffset(), position.getLength());
+    }
+
+    /**
+     * @return number of memory mappings made so far, for tests
+     */
+    int getMappingCount() {
+        return segments.values().stream().mapToInt(segment -> segment.mappings).sum();
+    }
+
+    /**
+     * Stop accepting appends, write what is queued and close the active segment.
+     */
+    @Override
+    public void close() throws IOException {
+        markClosed();
+        try {
+            writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        activeChannel.close();
+        for (final Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    private void markClosed() {
+        synchronized (queue) {
+            closed = true;
+        }
+    }
+
+    private void writeLoop() {
+        final List<PendingAppend> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                final PendingAppend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                writeBatch(batch);
+            } catch (final InterruptedException e) {
+                LOG.warn("Log writer interrupted, pending appends are failed.");
+                markClosed();
+            } finally {
+                batch.clear();
+            }
+        }
+        final IOException closedException = new IOException("Log is closed.");
+        PendingAppend pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(closedException);
+        }
+    }
+
+    private void writeBatch(final List<PendingAppend> batch) {
+        if (failure != null) {
+            batch.forEach(p -> p.future.completeExceptionally(failure));
+            return;
+        }
+        final int startSegment = activeSegment;
+        final long startSize = activeSize;
+        final List<LogPosition> positions = new ArrayList<>(batch.size());
+        try {
+            for (final PendingAppend pending : batch) {
+                final int recordBytes = HEADER_BYTES + pending.payload.length;
+                if (activeSize > 0 && activeSize + recordBytes > maxSegmentBytes) {
+                    activeChannel.force(false);
+                    activeChannel.close();
+                    activeSegment++;
+                    openActiveSegment();
+                }
+                final ByteBuffer record = ByteBuffer.allocate(recordBytes);
+                record.putInt(pending.payload.length);
+                record.putInt(checksum(pending.type, ByteBuffer.wrap(pending.payload)));
+                record.put(pending.type);
+                record.put(pending.payload);
+                record.flip();
+                while (record.hasRemaining()) {
+                    activeChannel.write(record);
+                }
+                positions.add(new LogPosition(activeSegment, activeSize + HEADER_BYTES, pending.payload.length));
+                activeSize += recordBytes;
+            }
+            activeChannel.force(false);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete(positions.get(i));
+            }
+        } catch (final IOException e) {
+            LOG.error("Failed writing batch of {} records to {}", batch.size(), directory, e);
+            rollBack(startSegment, startSize);
+            batch.forEach(p -> p.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Remove what was written of a failed batch: the segments it started and its part of the segment
+     * it started in. Otherwise records reported as failed would be replayed, and a torn record would
+     * be left in front of the next batch. If this fails too the log is failed for good.
+     */
+    private void rollBack(final int startSegment, final long startSize) {
+        try {
+            activeChannel.close();
+            for (int segmentNumber = activeSegment; segmentNumber > startSegment; segmentNumber--) {
+                final Segment removed = segments.remove(segmentNumber);
+                if (removed != null) {
+                    removed.close();
+                }
+                Files.deleteIfExists(segmentPath(segmentNumber));
+            }
+            if (activeSegment != startSegment) {
+                syncDirectory();
+            }
+            activeSegment = startSegment;
+            try (FileChannel channel = FileChannel.open(segmentPath(startSegment), StandardOpenOption.WRITE)) {
+                channel.truncate(startSize);
+                channel.force(true);
+            }
+            final Segment segment = segments.get(startSegment);
+            if (segment != null) {
+                // The mapping may cover the removed records, which are past the end of the file now.
+                segment.unmap();
+            }
+            openActiveSegment();
+        } catch (final IOException e) {
+            LOG.error("Failed undoing a failed batch in {}, no more appends are accepted.", directory, e);
+            failure = new IOException("Log is failed, a failed write could not be undone.", e);
+        }
+    }
+
+    private void openActiveSegment() throws IOException {
+        final Path path = segmentPath(activeSegment);
+        final boolean created = !Files.exists(path);
+        activeChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (created) {
+            syncDirectory();
+        }
+        activeSize = activeChannel.size();
+        activeChannel.position(activeSize);
+        segments.computeIfAbsent(activeSegment, s -> new Segment(path));
+    }
+
+    /**
+     * Make creating or deleting segment files durable, which syncing the files themselves does not.
+     */
+    private void syncDirectory() throws IOException {
+        if (SYNC_DIRECTORY) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private void replaySegment(final int segmentNumber, final boolean last, final RecordVisitor visitor) throws IOException {
+        final Path path = segmentPath(segmentNumber);
+        final Segment segment = new Segment(path);
+        segments.put(segmentNumber, segment);
+        final long size = Files.size(path);
+        if (size == 0) {
+            return;
+        }
+        final ByteBuffer buffer = segment.map();
+        int offset = 0;
+        while (offset < size) {
+            final int payloadLength = size - offset >= HEADER_BYTES ? buffer.getInt(offset) : -1;
+            if (payloadLength < 0 || offset + HEADER_BYTES + (long) payloadLength > size) {
+                handleCorruptTail(segment, offset, last, "torn record");
+                return;
+            }
+            final ByteBuffer payload = buffer.duplicate();
+            payload.position(offset + HEADER_BYTES);
+            payload.limit(offset + HEADER_BYTES + payloadLength);
+            final byte type = buffer.get(offset + 8);
+            if (checksum(type, payload.slice()) != buffer.getInt(offset + 4)) {
+                handleCorruptTail(segment, offset, last, "checksum mismatch");
+                return;
+            }
+            visitor.visit(type, new LogPosition(segmentNumber, offset + HEADER_BYTES, payloadLength), payload.slice().asReadOnlyBuffer());
+            offset += HEADER_BYTES + payloadLength;
+        }
+    }
+
+    private void handleCorruptTail(final Segment segment, final long offset, final boolean last, final String reason) throws IOException {
+        if (!last) {
+            throw new IOException("Segment " + segment.path + " is corrupt at offset " + offset + ": " + reason);
+        }
+        LOG.warn("Truncating {} at offset {} after {}, probably left by a crash.", segment.path, offset, reason);
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+            channel.force(true);
+        }
+        // Never touch the old mapping again, it extends past the end of the file.
+        segment.unmap();
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        final List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (final Path file : files) {
+                final Matcher m = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (m.matches()) {
+                    numbers.add(Integer.valueOf(m.group(1)));
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path segmentPath(final int segmentNumber) {
+        return directory.resolve(String.format("segment-%08d.log", segmentNumber));
+    }
+
+    private static int checksum(final byte type, final ByteBuffer payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static class PendingAppend {
+        private final byte type;
+        private final byte[] payload;
+        private final Consumer<LogPosition> onDurable;
+        private final CompletableFuture<LogPosition> future = new CompletableFuture<>();
+
+        private PendingAppend(final byte type, final byte[] payload, final Consumer<LogPosition> onDurable) {
+            this.type = type;
+            this.payload = payload;
+            this.onDurable = onDurable;
+        }
+
+        private void complete(final LogPosition position) {
+            if (onDurable != null) {
+                try {
+                    onDurable.accept(position);
+                } catch (final RuntimeException e) {
+                    LOG.error("Callback failed for record at {}", position, e);
+                    future.completeExceptionally(e);
+                    return;
+                }
+            }
+            future.complete(position);
+        }
+    }
+
+    /**
+     * A segment file with a read-only mapping that is widened as the file grows, and a channel for
+     * reading what the mapping does not cover yet.
+     */
+    private static class Segment {
+        private final Path path;
+        private volatile MappedByteBuffer mapped;
+        private volatile int mappings;
+        private FileChannel channel;
+
+        private Segment(final Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return read-only view of the given range, which must lie within the file
+         */
+        private ByteBuffer read(final long offset, final int length) throws IOException {
+            final long end = offset + length;
+            MappedByteBuffer current = mapped;
+            final FileChannel reader;
+            if (current == null || current.capacity() < end) {
+                synchronized (this) {
+                    reader = channel();
+                    final long size = reader.size();
+                    if (size < end) {
+                        throw new IOException("Read past the end of " + path);
+                    }
+                    // Mapping again for every record appended would leave a full size mapping per record.
+                    if (mapped == null || size >= 2L * mapped.capacity()) {
+                        remap(reader, size);
+                    }
+                    current = mapped;
+                }
+                if (current.capacity() < end) {
+                    final ByteBuffer buffer = ByteBuffer.allocate(length);
+                    while (buffer.hasRemaining()) {
+                        if (reader.read(buffer, offset + buffer.position()) < 0) {
+                            throw new IOException("Read past the end of " + path);
+                        }
+                    }
+                    buffer.flip();
+                    return buffer.asReadOnlyBuffer();
+                }
+            }
+            final ByteBuffer view = current.duplicate();
+            view.position((int) offset);
+            view.limit((int) end);
+            return view.slice();
+        }
+
+        /**
+         * @return mapping of the whole file
+         */
+        private synchronized ByteBuffer map() throws IOException {
+            final FileChannel reader = channel();
+            if (mapped == null || mapped.capacity() < reader.size()) {
+                remap(reader, reader.size());
+            }
+            return mapped;
+        }
+
+        /**
+         * Forget the mapping, after the file was truncated.
+         */
+        private synchronized void unmap() {
+            mapped = null;
+        }
+
+        private synchronized void close() throws IOException {
+            mapped = null;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        private void remap(final FileChannel reader, final long size) throws IOException {
+            mapped = reader.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mappings++;
+        }
+
+        private FileChannel channel() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            return channel;
+        }
+    }
+}
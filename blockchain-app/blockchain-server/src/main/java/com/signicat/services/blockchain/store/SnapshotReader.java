@@ -0,0 +1,101 @@
+package com.signicat.services.blockchain.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the sections written by a {@link SnapshotWriter} one at a time, checking the magic bytes,
+ * every checksum and that the stream is complete. Only one section is held in memory at a time.
+ */
+public class SnapshotReader {
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long offset;
+    private boolean ended;
+
+    /**
+     * @param channel channel to read from. It is not closed.
+     * @param magic expected magic bytes
+     * @throws IOException if the stream does not start with the magic bytes
+     */
+    public SnapshotReader(final ReadableByteChannel channel, final byte[] magic) throws IOException {
+        this.channel = channel;
+        buffer.flip();
+        final byte[] actual = new byte[magic.length];
+        fill(actual);
+        if (!Arrays.equals(actual, magic)) {
+            throw new IOException("Not a snapshot of the expected kind or version.");
+        }
+    }
+
+    /**
+     * @return the next section, or null at the end of the stream
+     * @throws IOException if the stream is truncated or a section is corrupt
+     */
+    public Section next() throws IOException {
+        if (ended) {
+            return null;
+        }
+        final long sectionOffset = offset;
+        final byte[] header = new byte[SnapshotWriter.HEADER_BYTES];
+        fill(header);
+        final ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        final int length = headerBuffer.getInt();
+        final int crc = headerBuffer.getInt();
+        final byte type = headerBuffer.get();
+        if (length < 0) {
+            throw new IOException("Section at offset " + sectionOffset + " has negative length " + length);
+        }
+        final byte[] payload = new byte[length];
+        fill(payload);
+        if (SnapshotWriter.checksum(type, payload) != crc) {
+            throw new IOException("Section at offset " + sectionOffset + " is corrupt: checksum mismatch.");
+        }
+        if (type == SnapshotWriter.END) {
+            ended = true;
+            return null;
+        }
+        return new Section(type, payload);
+    }
+
+    private void fill(final byte[] target) throws IOException {
+        int filled = 0;
+        while (filled < target.length) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                final int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    throw new EOFException("Snapshot ends at offset " + offset + " without an end marker.");
+                }
+            }
+            final int n = Math.min(buffer.remaining(), target.length - filled);
+            buffer.get(target, filled, n);
+            filled += n;
+            offset += n;
+        }
+    }
+
+    public static class Section {
+        private final byte type;
+        private final byte[] payload;
+
+        private Section(final byte type, final byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+}
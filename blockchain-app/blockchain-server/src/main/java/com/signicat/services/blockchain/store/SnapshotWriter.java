@@ -0,0 +1,96 @@
+package com.signicat.services.blockchain.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a stream of typed, checksummed sections to a channel, for snapshots that are read back
+ * with {@link SnapshotReader}.
+ *
+ * The stream is the magic bytes followed by sections of
+ * <code>[int payload length][int CRC32 of type and payload][byte type][payload]</code>, as records
+ * of a {@link SegmentedLog}, and ends with an empty section of type {@link #END}, so a truncated stream
+ * is told apart from a complete one. Small sections are gathered in a fixed size buffer, so memory
+ * use does not depend on the size of the stream.
+ */
+public class SnapshotWriter {
+    public static final byte END = 0;
+
+    static final int HEADER_BYTES = 9;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private boolean finished;
+
+    /**
+     * @param channel channel to write to. It is not closed.
+     * @param magic bytes identifying the kind and version of the snapshot
+     */
+    public SnapshotWriter(final WritableByteChannel channel, final byte[] magic) throws IOException {
+        this.channel = channel;
+        buffer.put(magic);
+    }
+
+    /**
+     * @param type type of the section, anything but {@link #END}
+     */
+    public void write(final byte type, final byte[] payload) throws IOException {
+        if (type == END) {
+            throw new IllegalArgumentException("Section type " + END + " is reserved for the end of the stream.");
+        }
+        writeSection(type, payload);
+    }
+
+    /**
+     * Write the end marker and flush. Nothing can be written afterwards.
+     */
+    public void finish() throws IOException {
+        writeSection(END, new byte[0]);
+        flush();
+        finished = true;
+    }
+
+    private void writeSection(final byte type, final byte[] payload) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Snapshot is already finished.");
+        }
+        if (buffer.remaining() < HEADER_BYTES) {
+            flush();
+        }
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(type, payload));
+        buffer.put(type);
+        if (payload.length <= buffer.remaining()) {
+            buffer.put(payload);
+        } else {
+            flush();
+            if (payload.length <= buffer.remaining()) {
+                buffer.put(payload);
+            } else {
+                writeFully(ByteBuffer.wrap(payload));
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(final ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    static int checksum(final byte type, final byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,103 @@
+package com.signicat.services.blockchain;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.Test;
+
+public class JettyServerFactoryTest {
+    @Test
+    public void defaultsApplyToMissingProperties() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("http.port", "1337");
+        final Server server = JettyServerFactory.createServer(properties, new ResourceConfig());
+
+        final QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+        assertThat(threadPool.getMinThreads(), is(8));
+        assertThat(threadPool.getMaxThreads(), is(200));
+        assertThat(threadPool.getIdleTimeout(), is(60000));
+        assertThat(queueCapacity(threadPool), is(1024));
+
+        final ServerConnector connector = (ServerConnector) server.getConnectors()[0];
+        assertThat(connector.getPort(), is(1337));
+        assertThat(connector.getAcceptQueueSize(), is(0));
+        assertThat(connector.getIdleTimeout(), is(30000L));
+    }
+
+    @Test
+    public void propertiesConfigurePoolAndConnector() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("http.port", "8080");
+        properties.setProperty("jetty.threads.min", "4");
+        properties.setProperty("jetty.threads.max", "16");
+        properties.setProperty("jetty.threads.idle_timeout_ms", "5000");
+        properties.setProperty("jetty.threads.queue_size", "32");
+        properties.setProperty("jetty.acceptors", "1");
+        properties.setProperty("jetty.selectors", "2");
+        properties.setProperty("jetty.accept_queue_size", "128");
+        properties.setProperty("jetty.idle_timeout_ms", "10000");
+        final Server server = JettyServerFactory.createServer(properties, new ResourceConfig());
+
+        final QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+        assertThat(threadPool.getMinThreads(), is(4));
+        assertThat(threadPool.getMaxThreads(), is(16));
+        assertThat(threadPool.getIdleTimeout(), is(5000));
+        assertThat(queueCapacity(threadPool), is(32));
+
+        final ServerConnector connector = (ServerConnector) server.getConnectors()[0];
+        assertThat(connector.getPort(), is(8080));
+        assertThat(connector.getAcceptors(), is(1));
+        assertThat(connector.getSelectorManager().getSelectorCount(), is(2));
+        assertThat(connector.getAcceptQueueSize(), is(128));
+        assertThat(connector.getIdleTimeout(), is(10000L));
+    }
+
+    @Test
+    public void virtualThreadsFallBackToThePoolWithoutJdkSupport() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("jetty.threads.virtual", "true");
+        properties.setProperty("jetty.threads.max", "16");
+
+        // Object has no newVirtualThreadPerTaskExecutor(), like Executors before JDK 21.
+        final ThreadPool threadPool = JettyServerFactory.createThreadPool(properties, Object.class);
+        assertThat(threadPool, is(instanceOf(QueuedThreadPool.class)));
+        assertThat(((QueuedThreadPool) threadPool).getMaxThreads(), is(16));
+    }
+
+    @Test
+    public void virtualThreadsAreUsedWhenSupported() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("jetty.threads.virtual", "true");
+
+        assertThat(JettyServerFactory.createThreadPool(properties, VirtualExecutors.class),
+                is(instanceOf(ExecutorThreadPool.class)));
+    }
+
+    private static int queueCapacity(final QueuedThreadPool threadPool) throws Exception {
+        final Method getQueue = QueuedThreadPool.class.getDeclaredMethod("getQueue");
+        getQueue.setAccessible(true);
+        return ((BlockingArrayQueue<?>) getQueue.invoke(threadPool)).getMaxCapacity();
+    }
+
+    /**
+     * Stands in for {@link Executors} on a JDK with virtual threads.
+     */
+    public static class VirtualExecutors {
+        public static ExecutorService newVirtualThreadPerTaskExecutor() {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
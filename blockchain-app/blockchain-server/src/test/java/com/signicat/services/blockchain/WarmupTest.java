@@ -0,0 +1,36 @@
+package com.signicat.services.blockchain;
+
+import java.lang.reflect.Proxy;
+import java.util.Properties;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.junit.Test;
+
+import com.signicat.services.blockchain.spi.NodeNetwork;
+
+public class WarmupTest {
+    @Test
+    public void warmsUpWithoutTouchingTheNodeNetwork() throws Exception {
+        final Properties properties = Main.defaultProperties();
+        properties.setProperty("http.port", "0");
+        // Every call to the network fails, and so would the warmup.
+        final NodeNetwork network = (NodeNetwork) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {NodeNetwork.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.getName().equals("toString") ? "failing network" : method.invoke(this, args);
+                    }
+                    throw new UnsupportedOperationException("Warmup called " + method.getName());
+                });
+        final Server server = JettyServerFactory.createServer(properties, Main.createResourceConfig(properties, network));
+        server.start();
+        try {
+            new Warmup(1).run(UriBuilder.fromUri("http://localhost/")
+                    .port(((ServerConnector) server.getConnectors()[0]).getLocalPort()).build());
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.signicat.services.blockchain.crypto;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.signicat.services.blockchain.spi.MasterKey;
+
+public class KeyShardCodecTest {
+    private MasterKey masterKey;
+    private KeyShard shard;
+
+    @Before
+    public void setUp() throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        final KeyPair keyPair = keyGen.generateKeyPair();
+        masterKey = new MasterKey("keyId", (RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate());
+        shard = masterKey.getSplitPrivateKey(2, 3)[0];
+    }
+
+    @Test
+    public void compactFormRoundTripsAndIsSmaller() throws Exception {
+        final String encoded = KeyShardCodec.encode(shard);
+        assertThat(KeyShardCodec.decode(encoded, masterKey.getPublicKey()), is(shard));
+        assertThat(encoded.length() * 3 < new ObjectMapper().writeValueAsString(shard).length(), is(true));
+    }
+
+    @Test
+    public void unknownPrimesAreInlined() throws Exception {
+        final KeyShard small = new KeyShard("keyId", 1, 2, BigInteger.valueOf(7919), BigInteger.TEN,
+                new BigInteger(masterKey.getPublicKey().getEncoded()));
+        assertThat(KeyShardCodec.decode(KeyShardCodec.encode(small), masterKey.getPublicKey()), is(small));
+    }
+
+    @Test
+    public void jsonFormIsStillAccepted() throws Exception {
+        final String json = new ObjectMapper().writeValueAsString(shard);
+        assertThat(KeyShardCodec.decode(json, masterKey.getPublicKey()), is(shard));
+    }
+
+    @Test(expected = IOException.class)
+    public void shardOfOtherKeyIsRejected() throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        KeyShardCodec.decode(KeyShardCodec.encode(shard), keyGen.generateKeyPair().getPublic());
+    }
+}
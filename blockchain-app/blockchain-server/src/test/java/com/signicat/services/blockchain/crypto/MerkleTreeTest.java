@@ -0,0 +1,88 @@
+package com.signicat.services.blockchain.crypto;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MerkleTreeTest {
+    private static final int LEAVES = 40;
+
+    private static MerkleTree tree(final List<byte[]> roots) {
+        final MerkleTree tree = new MerkleTree();
+        roots.add(tree.root(0));
+        for (int i = 0; i < LEAVES; i++) {
+            tree.append(MerkleTree.leafHash(new byte[] {(byte) i}));
+            roots.add(tree.root(tree.size()));
+        }
+        return tree;
+    }
+
+    @Test
+    public void rootsMatchRfc6962ForSmallTrees() {
+        final MerkleTree tree = new MerkleTree();
+        final byte[] a = MerkleTree.leafHash(new byte[] {'a'});
+        final byte[] b = MerkleTree.leafHash(new byte[] {'b'});
+        final byte[] c = MerkleTree.leafHash(new byte[] {'c'});
+        tree.append(a);
+        tree.append(b);
+        tree.append(c);
+
+        // MTH({a, b, c}) = H(0x01 || H(0x01 || a || b) || c), and an inclusion proof of c is just the left subtree.
+        final List<byte[]> proof = tree.inclusionProof(2, 3);
+        assertThat(proof.size(), is(1));
+        assertThat(proof.get(0), is(tree.root(2)));
+        assertThat(MerkleTree.verifyInclusion(c, 2, 3, proof, tree.root(3)), is(true));
+    }
+
+    @Test
+    public void everyInclusionProofVerifies() {
+        final List<byte[]> roots = new ArrayList<>();
+        final MerkleTree tree = tree(roots);
+        for (int size = 1; size <= LEAVES; size++) {
+            for (int leaf = 0; leaf < size; leaf++) {
+                final byte[] leafHash = MerkleTree.leafHash(new byte[] {(byte) leaf});
+                final List<byte[]> proof = tree.inclusionProof(leaf, size);
+                assertThat(MerkleTree.verifyInclusion(leafHash, leaf, size, proof, roots.get(size)), is(true));
+                assertThat(MerkleTree.verifyInclusion(leafHash, leaf, size, proof, roots.get(size - 1)), is(false));
+                final byte[] otherLeaf = MerkleTree.leafHash(new byte[] {(byte) (leaf + 1)});
+                assertThat(MerkleTree.verifyInclusion(otherLeaf, leaf, size, proof, roots.get(size)), is(false));
+            }
+        }
+    }
+
+    @Test
+    public void everyConsistencyProofVerifies() {
+        final List<byte[]> roots = new ArrayList<>();
+        final MerkleTree tree = tree(roots);
+        for (int newSize = 1; newSize <= LEAVES; newSize++) {
+            for (int oldSize = 0; oldSize <= newSize; oldSize++) {
+                final List<byte[]> proof = tree.consistencyProof(oldSize, newSize);
+                assertThat(MerkleTree.verifyConsistency(oldSize, newSize, roots.get(oldSize), roots.get(newSize), proof),
+                        is(true));
+                if (oldSize > 0 && oldSize < newSize) {
+                    assertThat(MerkleTree.verifyConsistency(
+                            oldSize, newSize, roots.get(oldSize - 1), roots.get(newSize), proof), is(false));
+                    assertThat(MerkleTree.verifyConsistency(
+                            oldSize, newSize, roots.get(oldSize), roots.get(newSize - 1), proof), is(false));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void streamedRootsMatchTreeRoots() {
+        final List<byte[]> roots = new ArrayList<>();
+        tree(roots);
+        final MerkleTree.RootBuilder builder = new MerkleTree.RootBuilder();
+        assertThat(builder.root(), is(roots.get(0)));
+        for (int i = 0; i < LEAVES; i++) {
+            builder.add(MerkleTree.leafHash(new byte[] {(byte) i}));
+            assertThat(builder.root(), is(roots.get(i + 1)));
+        }
+        assertThat(builder.size(), is((long) LEAVES));
+    }
+}
@@ -0,0 +1,53 @@
+package com.signicat.services.blockchain.crypto;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+
+public class ThresholdRsaTest {
+    private static final byte[] INPUT = "header.payload".getBytes(StandardCharsets.US_ASCII);
+
+    private RSAPublicKey publicKey;
+    private RSAPrivateKey privateKey;
+    private List<BigInteger> partials;
+
+    @Before
+    public void setUp() throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        final KeyPair keyPair = keyGen.generateKeyPair();
+        publicKey = (RSAPublicKey) keyPair.getPublic();
+        privateKey = (RSAPrivateKey) keyPair.getPrivate();
+        partials = new ArrayList<>();
+        for (final BigInteger share : ThresholdRsa.splitExponent(privateKey, 3)) {
+            partials.add(ThresholdRsa.partialSign(publicKey.getModulus(), share, INPUT));
+        }
+    }
+
+    @Test
+    public void combinedPartialsEqualOrdinarySignature() throws Exception {
+        final byte[] expected = new RSASSASigner(privateKey).sign(new JWSHeader(JWSAlgorithm.RS256), INPUT).decode();
+        assertThat(ThresholdRsa.combine(publicKey, partials, INPUT), is(expected));
+    }
+
+    @Test(expected = SignatureException.class)
+    public void missingPartialIsDetected() throws Exception {
+        ThresholdRsa.combine(publicKey, partials.subList(0, 2), INPUT);
+    }
+}
@@ -0,0 +1,69 @@
+package com.signicat.services.blockchain.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.signicat.services.blockchain.crypto.HKDF;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightEventsTest {
+    @Test
+    public void bundledProfileEnablesTheEvents() throws Exception {
+        final Map<String, String> settings = JfrTraces.settings();
+        assertThat(settings.get("com.signicat.blockchain.Crypto#enabled"), is("true"));
+        assertThat(settings.get("com.signicat.blockchain.NodeCall#enabled"), is("true"));
+    }
+
+    @Test
+    public void eventsCarryKeyIdHashesAndNodeAddresses() throws Exception {
+        assertThat(FlightEvents.isAvailable(), is(true));
+        final Path file = Files.createTempFile("blockchain", ".jfr");
+        try (Recording recording = new Recording(JfrTraces.settings())) {
+            recording.start();
+            try (Trace trace = FlightEvents.crypto("rsa.sign").keyId("secret-key-id").size(42)) {
+                trace.size(43);
+            }
+            HKDF.hkdfExpand(new byte[32], new byte[0], 64);
+            try (Trace trace = FlightEvents.nodeCall("GET", URI.create("http://node1:8080/blocks/secret-key-id/1"))) {
+                trace.status(200).size(100);
+            }
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            final RecordedEvent sign = find(events, "com.signicat.blockchain.Crypto", "operation", "rsa.sign");
+            assertThat(sign.getString("keyIdHash"), is(FlightEvents.hashKeyId("secret-key-id")));
+            assertThat(sign.getString("keyIdHash"), is(not("secret-key-id")));
+            assertThat(sign.getLong("size"), is(43L));
+            assertThat(find(events, "com.signicat.blockchain.Crypto", "operation", "hkdf.expand").getLong("size"), is(64L));
+
+            final RecordedEvent call = find(events, "com.signicat.blockchain.NodeCall", "rpc", "blocks");
+            assertThat(call.getString("node"), is("http://node1:8080"));
+            assertThat(call.getString("method"), is("GET"));
+            assertThat(call.getInt("status"), is(200));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static RecordedEvent find(final List<RecordedEvent> events, final String type,
+            final String field, final String value) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(type))
+                .filter(event -> value.equals(event.getString(field)))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No " + type + " event with " + field + " " + value));
+    }
+}
@@ -0,0 +1,48 @@
+package com.signicat.services.blockchain.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+
+public class MetricsTest {
+    @Test
+    public void reporterIsNotStartedWithoutAddress() {
+        assertThat(Metrics.startGraphiteReporter(new MetricRegistry(), new Properties()), is(nullValue()));
+    }
+
+    @Test
+    public void metricsAreReportedToGraphiteWithPrefix() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        registry.counter(MetricRegistry.name("node", Metrics.escape("localhost:8080"), "calls")).inc(3);
+        try (ServerSocket graphite = new ServerSocket(0)) {
+            final Properties properties = new Properties();
+            properties.setProperty("graphite.address", "localhost:" + graphite.getLocalPort());
+            properties.setProperty("graphite.polling_period_seconds", "3600");
+            properties.setProperty("metrics.context.name", "test");
+            final ScheduledReporter reporter = Metrics.startGraphiteReporter(registry, properties);
+            try {
+                reporter.report();
+                try (Socket socket = graphite.accept();
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                    assertThat(reader.readLine(), startsWith("test.node.localhost_8080.calls.count 3 "));
+                }
+            } finally {
+                reporter.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.signicat.services.blockchain.node;
+
+import static com.signicat.services.blockchain.spi.TestAssertions.assertionFor;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.signicat.services.blockchain.spi.Assertion;
+import com.signicat.services.blockchain.spi.BlockClaims;
+import com.signicat.services.blockchain.spi.BlockEvent;
+import com.signicat.services.blockchain.spi.BlockIdPage;
+import com.signicat.services.blockchain.spi.ChainVerifier;
+import com.signicat.services.blockchain.spi.ClientSignedAssertion;
+import com.signicat.services.blockchain.spi.MasterKey;
+import com.signicat.services.blockchain.spi.TrueNodeNetwork;
+
+public class SimulatedNodeClusterTest {
+    private SimulatedNodeCluster cluster;
+    private TrueNodeNetwork network;
+    private MasterKey masterKey;
+    private Assertion assertion;
+
+    @Before
+    public void setUp() throws Exception {
+        cluster = SimulatedNodeCluster.start(3, FaultProfile.builder()
+                .latency(LatencyDistribution.uniform(0, 5))
+                .build());
+        network = new TrueNodeNetwork(cluster.getNodeUris());
+
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        final KeyPair keyPair = keyGen.generateKeyPair();
+        masterKey = new MasterKey("keyId", (RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate());
+
+        assertion = assertionFor("alice");
+    }
+
+    @After
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Test
+    public void trueNodeNetworkRoundTrip() throws Exception {
+        network.pushMasterKey(masterKey);
+        network.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertion));
+
+        assertThat(network.listBlockIds(masterKey), is(Collections.singletonList("alice")));
+        assertThat(network.listBlockIdsSince(masterKey, 0, 10),
+                is(new BlockIdPage(Collections.singletonList("alice"), 1, false)));
+        assertThat(network.getBlock(masterKey, "alice"), is(assertion));
+        assertThat(network.pushAssertion(assertion), is(masterKey));
+    }
+
+    @Test
+    public void verifiedBlocksAreProvenAgainstCheckpoints() throws Exception {
+        final ChainVerifier verifier = new ChainVerifier();
+        final TrueNodeNetwork verifying = new TrueNodeNetwork(cluster.getNodeUris(), verifier);
+        verifying.pushMasterKey(masterKey);
+        verifying.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertion));
+
+        assertThat(verifying.listBlockIds(masterKey), is(Collections.singletonList("alice")));
+        assertThat(verifier.getCheckpoint(masterKey.getKeyId()).getTreeSize(), is(1L));
+        assertThat(verifying.getBlock(masterKey, "alice"), is(assertion));
+
+        // Appended after the trusted checkpoint, so fetching it moves the verifier forward.
+        final Assertion bob = assertionFor("bob");
+        verifying.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, bob));
+        assertThat(verifying.getBlock(masterKey, "bob"), is(bob));
+        assertThat(verifier.getCheckpoint(masterKey.getKeyId()).getTreeSize(), is(2L));
+    }
+
+    @Test
+    public void blockClaimsAreReadFromTheVerifiedBlock() throws Exception {
+        final ChainVerifier verifier = new ChainVerifier();
+        final TrueNodeNetwork verifying = new TrueNodeNetwork(cluster.getNodeUris(), verifier);
+        verifying.pushMasterKey(masterKey);
+        final ClientSignedAssertion block = ClientSignedAssertion.createFromAssertion(masterKey, assertion);
+        verifying.pushAssertion(block);
+
+        assertThat(verifying.getBlockClaims(masterKey, "alice"), is(BlockClaims.of("alice", block)));
+        assertThat(verifier.getCheckpoint(masterKey.getKeyId()).getTreeSize(), is(1L));
+        assertThat(verifying.getBlockClaims(null, "alice"), is(BlockClaims.of("alice", block)));
+    }
+
+    @Test
+    public void batchesArePushedInOneRequestPerNode() throws Exception {
+        network.pushMasterKey(masterKey);
+        final Assertion bob = assertionFor("bob");
+        network.pushAssertions(Arrays.asList(
+                ClientSignedAssertion.createFromAssertion(masterKey, assertion),
+                ClientSignedAssertion.createFromAssertion(masterKey, bob)));
+
+        assertThat(network.listBlockIds(masterKey), is(Arrays.asList("alice", "bob")));
+        assertThat(network.getBlock(masterKey, "bob"), is(bob));
+    }
+
+    @Test
+    public void repeatedBatchesAreRecognizedByTheirDigests() throws Exception {
+        network.pushMasterKey(masterKey);
+        final ClientSignedAssertion alice = ClientSignedAssertion.createFromAssertion(masterKey, assertion);
+        final ClientSignedAssertion bob = ClientSignedAssertion.createFromAssertion(masterKey, assertionFor("bob"));
+        network.pushAssertions(Arrays.asList(alice, bob));
+        network.pushAssertions(Arrays.asList(alice, bob));
+        for (int i = 0; i < cluster.getNodeUris().size(); i++) {
+            assertThat(cluster.getNode(i).getDuplicatePushCount(), is(2L));
+        }
+
+        // The node goes by the digests it is given, not by its own.
+        final SimulatedNodeResource node = cluster.getNode(0);
+        final ClientSignedAssertion carol = ClientSignedAssertion.createFromAssertion(masterKey, assertionFor("carol"));
+        node.pushAssertions("first,second", Arrays.asList(carol.getValue(), alice.getValue()));
+        node.pushAssertions(null, Collections.singletonList(carol.getValue()));
+        assertThat(node.getDuplicatePushCount(), is(2L));
+        node.pushAssertions("first", Collections.singletonList(carol.getValue()));
+        assertThat(node.getDuplicatePushCount(), is(3L));
+    }
+
+    @Test
+    public void nodesSignForLoginWithoutHandingOutTheKey() throws Exception {
+        final TrueNodeNetwork threshold = new TrueNodeNetwork(cluster.getNodeUris(), null, true);
+        threshold.pushMasterKey(masterKey);
+        threshold.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertion));
+
+        final Assertion bob = assertionFor("bob");
+        final ClientSignedAssertion signed = threshold.signAssertion(assertion, bob);
+        assertThat(signed.getKeyId(), is(masterKey.getKeyId()));
+        assertThat(signed.getAssertion(masterKey.getPublicKey()), is(bob));
+    }
+
+    @Test
+    public void blockEventsAreStreamedFromTheCursor() throws Exception {
+        network.pushMasterKey(masterKey);
+        network.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertion));
+        network.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertionFor("bob")));
+
+        final BlockingQueue<BlockEvent> events = new LinkedBlockingQueue<>();
+        try (Closeable subscription = network.subscribe(masterKey, 1, events::add)) {
+            assertThat(events.poll(10, TimeUnit.SECONDS), is(new BlockEvent("keyId", "bob", 2)));
+            network.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertionFor("carol")));
+            assertThat(events.poll(10, TimeUnit.SECONDS), is(new BlockEvent("keyId", "carol", 3)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void nodesWithoutBlockEventsAreReportedOnSubscribe() throws Exception {
+        final URI missing = cluster.getNodeUris().get(0).resolve("missing/");
+        new TrueNodeNetwork(Collections.singletonList(missing)).subscribe(masterKey, 0, event -> { });
+    }
+
+    @Test(expected = IOException.class)
+    public void droppedRequestsAreReported() throws Exception {
+        cluster.setFaultProfile(FaultProfile.builder().dropRate(1).build());
+        network.pushMasterKey(masterKey);
+    }
+
+    @Test
+    public void corruptShardBreaksReassembly() throws Exception {
+        network.pushMasterKey(masterKey);
+        network.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertion));
+        cluster.getNode(1).setFaultProfile(FaultProfile.builder().corruptShardRate(1).build());
+        try {
+            assertThat(network.pushAssertion(assertion), is(not(masterKey)));
+        } catch (final IOException e) {
+            // Equally fine, the reassembled key did not even parse.
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.signicat.services.blockchain.rs;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.jetty.JettyHttpContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.Test;
+
+public class AdmissionFeatureTest {
+    private static final CountDownLatch RELEASE = new CountDownLatch(1);
+    private static volatile CountDownLatch asyncRelease;
+
+    @Path("/")
+    public static class SlowResource {
+        @GET
+        @Path("slow")
+        @AdmissionLimited("slow")
+        public String slow() throws InterruptedException {
+            RELEASE.await(10, TimeUnit.SECONDS);
+            return "done";
+        }
+
+        @GET
+        @Path("async")
+        @AdmissionLimited("async")
+        public void async(@Context final ContainerRequestContext request, @Suspended final AsyncResponse response) {
+            AdmissionFeature.whenAdmitted(request).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    response.resume(e);
+                    return;
+                }
+                new Thread(() -> {
+                    try {
+                        asyncRelease.await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    response.resume("done");
+                }).start();
+            });
+        }
+
+        @GET
+        @Path("fast")
+        public String fast() {
+            return "done";
+        }
+    }
+
+    @Test
+    public void requestsBeyondTheLimitAreTurnedAway() throws Exception {
+        final AdmissionLimiter limiter = new AdmissionLimiter("slow", 1, 0, 0, 7);
+        final Server server = JettyHttpContainerFactory.createServer(
+                UriBuilder.fromUri("http://localhost/").port(0).build(),
+                new ResourceConfig()
+                        .register(new AdmissionFeature(Collections.singletonList(limiter)))
+                        .register(SlowResource.class));
+        final Client client = ClientBuilder.newClient();
+        try {
+            final WebTarget target = client.target(UriBuilder.fromUri("http://localhost/")
+                    .port(((ServerConnector) server.getConnectors()[0]).getLocalPort()).build());
+            final Future<Response> first = target.path("slow").request().async().get();
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (limiter.getInFlight() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            final Response rejected = target.path("slow").request().get();
+            assertThat(rejected.getStatus(), is(503));
+            assertThat(rejected.getHeaderString("Retry-After"), is("7"));
+            assertThat(target.path("fast").request().get().getStatus(), is(200));
+            assertThat(limiter.getRejectedCount(), is(1L));
+
+            RELEASE.countDown();
+            assertThat(first.get(10, TimeUnit.SECONDS).getStatus(), is(200));
+            assertThat(limiter.getInFlight(), is(0));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void asyncRequestsQueueForTheirTurn() throws Exception {
+        asyncRelease = new CountDownLatch(1);
+        final AdmissionLimiter limiter = new AdmissionLimiter("async", 1, 1, 10000, 3);
+        final Server server = startServer(limiter);
+        final Client client = ClientBuilder.newClient();
+        try {
+            final WebTarget target = target(client, server);
+            final Future<Response> first = target.path("async").request().async().get();
+            awaitTrue(() -> limiter.getInFlight() == 1);
+            final Future<Response> queued = target.path("async").request().async().get();
+            awaitTrue(() -> limiter.getQueueDepth() == 1);
+
+            final Response rejected = target.path("async").request().get();
+            assertThat(rejected.getStatus(), is(503));
+            assertThat(rejected.getHeaderString("Retry-After"), is("3"));
+            assertThat(target.path("fast").request().get().getStatus(), is(200));
+
+            asyncRelease.countDown();
+            assertThat(first.get(10, TimeUnit.SECONDS).getStatus(), is(200));
+            assertThat(queued.get(10, TimeUnit.SECONDS).getStatus(), is(200));
+            awaitTrue(() -> limiter.getInFlight() == 0);
+            assertThat(limiter.getQueueDepth(), is(0));
+            assertThat(limiter.getRejectedCount(), is(1L));
+        } finally {
+            asyncRelease.countDown();
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void queuedRequestsAreTurnedAwayAfterTheMaxWait() throws Exception {
+        asyncRelease = new CountDownLatch(1);
+        final AdmissionLimiter limiter = new AdmissionLimiter("async", 1, 1, 200, 3);
+        final Server server = startServer(limiter);
+        final Client client = ClientBuilder.newClient();
+        try {
+            final WebTarget target = target(client, server);
+            final Future<Response> first = target.path("async").request().async().get();
+            awaitTrue(() -> limiter.getInFlight() == 1);
+
+            final Response expired = target.path("async").request().get();
+            assertThat(expired.getStatus(), is(503));
+            assertThat(expired.getHeaderString("Retry-After"), is("3"));
+            assertThat(limiter.getQueueDepth(), is(0));
+
+            asyncRelease.countDown();
+            assertThat(first.get(10, TimeUnit.SECONDS).getStatus(), is(200));
+            awaitTrue(() -> limiter.getInFlight() == 0);
+        } finally {
+            asyncRelease.countDown();
+            client.close();
+            server.stop();
+        }
+    }
+
+    private static Server startServer(final AdmissionLimiter limiter) {
+        return JettyHttpContainerFactory.createServer(
+                UriBuilder.fromUri("http://localhost/").port(0).build(),
+                new ResourceConfig()
+                        .register(new AdmissionFeature(Collections.singletonList(limiter)))
+                        .register(SlowResource.class));
+    }
+
+    private static WebTarget target(final Client client, final Server server) {
+        return client.target(UriBuilder.fromUri("http://localhost/")
+                .port(((ServerConnector) server.getConnectors()[0]).getLocalPort()).build());
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean(), is(true));
+    }
+}
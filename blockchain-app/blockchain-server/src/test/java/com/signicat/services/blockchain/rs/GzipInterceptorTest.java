@@ -0,0 +1,128 @@
+package com.signicat.services.blockchain.rs;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.jetty.JettyHttpContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class GzipInterceptorTest {
+    private static final String LARGE = "{\"claims\":\"" + Strings.repeat("eyJhbGciOiJSUzI1NiJ9", 200) + "\"}";
+
+    private Server server;
+    private Client client;
+    private WebTarget target;
+
+    @Path("/")
+    public static class JsonResource {
+        @GET
+        @Path("large")
+        @Produces(MediaType.APPLICATION_JSON)
+        public String large() {
+            return LARGE;
+        }
+
+        @GET
+        @Path("small")
+        @Produces(MediaType.APPLICATION_JSON)
+        public String small() {
+            return "{}";
+        }
+
+        @GET
+        @Path("stream")
+        @Produces("application/x-ndjson")
+        public StreamingOutput stream() {
+            return out -> {
+                for (int i = 0; i < 3; i++) {
+                    out.write(("{\"i\":" + i + "}\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            };
+        }
+    }
+
+    @Before
+    public void setUp() {
+        server = JettyHttpContainerFactory.createServer(
+                UriBuilder.fromUri("http://localhost/").port(0).build(),
+                new ResourceConfig()
+                        .register(new GzipInterceptor(1024, new HashSet<>(Arrays.asList(
+                                MediaType.APPLICATION_JSON, "application/x-ndjson"))))
+                        .register(JsonResource.class));
+        client = ClientBuilder.newClient();
+        target = client.target(UriBuilder.fromUri("http://localhost/")
+                .port(((ServerConnector) server.getConnectors()[0]).getLocalPort()).build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void largeAndStreamedResponsesAreCompressed() throws Exception {
+        final Response large = target.path("large").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate").get();
+        assertThat(large.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+        assertThat(gunzip(large.readEntity(InputStream.class)), is(LARGE));
+
+        final Response stream = target.path("stream").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertThat(stream.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+        assertThat(gunzip(stream.readEntity(InputStream.class)), is("{\"i\":0}\n{\"i\":1}\n{\"i\":2}\n"));
+    }
+
+    @Test
+    public void smallResponsesAndOtherClientsAreNotCompressed() {
+        final Response small = target.path("small").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertThat(small.getHeaderString(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+        assertThat(small.readEntity(String.class), is("{}"));
+
+        final Response identity = target.path("large").request().get();
+        assertThat(identity.getHeaderString(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+        assertThat(identity.readEntity(String.class), is(LARGE));
+
+        final Response refused = target.path("large").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0").get();
+        assertThat(refused.getHeaderString(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+    }
+
+    private static String gunzip(final InputStream in) throws IOException {
+        try (InputStream gzip = new GZIPInputStream(in)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.signicat.services.blockchain.rs;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.jetty.JettyHttpContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.util.Base64;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.signicat.services.blockchain.crypto.HKDF;
+import com.signicat.services.blockchain.spi.Assertion;
+import com.signicat.services.blockchain.spi.ClientSignedAssertion;
+import com.signicat.services.blockchain.spi.DummyNodeNetwork;
+import com.signicat.services.blockchain.spi.ForwardingNodeNetwork;
+import com.signicat.services.blockchain.spi.MasterKey;
+import com.signicat.services.blockchain.spi.NodeNetwork;
+
+public class MainResourceTest {
+    private static final ObjectMapper OM = new ObjectMapper();
+
+    private MasterKey masterKey;
+    private NodeNetwork network;
+    private MainResource resource;
+
+    @Before
+    public void setUp() throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        final KeyPair keyPair = keyGen.generateKeyPair();
+        masterKey = new MasterKey("keyId", (RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate());
+        final KeyPair idpKeys = keyGen.generateKeyPair();
+
+        network = new DummyNodeNetwork();
+        network.pushMasterKey(masterKey);
+        for (final String subject : new String[] {"alice", "bob", "carol", "dave"}) {
+            final byte[] tKey = subject.getBytes(StandardCharsets.UTF_8);
+            final byte[] privateKey = masterKey.getPrivateKey().getEncoded();
+            final byte[] mtKey = HKDF.hkdfExpand(HKDF.hkdfExtract(
+                    Base64.encode(tKey).toString().getBytes(), privateKey), new byte[] {}, privateKey.length);
+            final Assertion assertion = new Assertion(new JWTClaimsSet.Builder()
+                    .subject(subject)
+                    .claim("name", subject.toUpperCase())
+                    .build(), mtKey, tKey, idpKeys.getPrivate());
+            network.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertion));
+        }
+        resource = new MainResource(network);
+    }
+
+    @Test
+    public void streamedDumpMatchesDump() throws Exception {
+        final Map<String, Map<String, Object>> dump = OM.readValue(
+                (String) resource.getAllData(masterKey, null, 0).getEntity(),
+                new TypeReference<Map<String, Map<String, Object>>>() {});
+        assertThat(dump.get("bob").get("name"), is("BOB"));
+
+        for (final int parallelism : new int[] {1, 3}) {
+            final List<String> order = new ArrayList<>();
+            final Map<String, Map<String, Object>> streamed = new HashMap<>();
+            for (final Map<String, Object> record : readStream(parallelism)) {
+                order.add((String) record.get("block_id"));
+                streamed.put((String) record.get("block_id"), (Map<String, Object>) record.get("claims"));
+            }
+            assertThat(streamed, is(dump));
+            assertThat(order, is(network.listBlockIds(masterKey)));
+        }
+    }
+
+    @Test
+    public void dumpIsPaginatedByCursor() throws Exception {
+        final Response first = resource.getAllData(masterKey, 0L, 3);
+        assertThat(OM.readValue((String) first.getEntity(), Map.class).size(), is(3));
+        assertThat(first.getHeaderString(MainResource.HAS_MORE_HEADER), is("true"));
+
+        final Long cursor = Long.valueOf(first.getHeaderString(MainResource.CURSOR_HEADER));
+        final Response second = resource.getAllData(masterKey, cursor, 3);
+        assertThat(OM.readValue((String) second.getEntity(), Map.class).keySet(), is(Collections.singleton("dave")));
+        assertThat(second.getHeaderString(MainResource.HAS_MORE_HEADER), is("false"));
+
+        final Response empty = resource.getAllData(masterKey, Long.valueOf(second.getHeaderString(MainResource.CURSOR_HEADER)), 3);
+        assertThat(OM.readValue((String) empty.getEntity(), Map.class).isEmpty(), is(true));
+    }
+
+    @Test
+    public void claimKeysAreDerivedWithoutFetchingBlocks() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        final MainResource counting = new MainResource(new ForwardingNodeNetwork(network) {
+            @Override
+            public Assertion getBlock(final MasterKey key, final String blockId) throws IOException {
+                fetches.incrementAndGet();
+                return super.getBlock(key, blockId);
+            }
+        });
+
+        final String keys = (String) counting.generateKeys(masterKey, "{\"carol\": [\"name\", \"missing\"]}").getEntity();
+        assertThat(OM.readValue(keys, Map.class).keySet(), is(Collections.singleton("name")));
+        assertThat(fetches.get(), is(0));
+
+        final String claims = (String) counting.decrypt(keys).getEntity();
+        assertThat(OM.readValue(claims, Map.class), is(Collections.singletonMap("name", "CAROL")));
+        assertThat(fetches.get(), is(1));
+    }
+
+    @Test
+    public void errorsOnCryptoExecutorReturnTheAdmissionPermit() throws Exception {
+        final AdmissionLimiter limiter = new AdmissionLimiter(MainResource.KEYGEN_LIMIT, 1, 0, 0, 1);
+        final Server server = JettyHttpContainerFactory.createServer(
+                UriBuilder.fromUri("http://localhost/").port(0).build(),
+                new ResourceConfig()
+                        .register(new AdmissionFeature(Collections.singletonList(limiter)))
+                        .register(new MainResource(new ForwardingNodeNetwork(network) {
+                            @Override
+                            public void pushMasterKey(final MasterKey key) {
+                                throw new LinkageError("Not an exception");
+                            }
+                        })));
+        final Client client = ClientBuilder.newClient();
+        try {
+            final WebTarget target = client.target(UriBuilder.fromUri("http://localhost/")
+                    .port(((ServerConnector) server.getConnectors()[0]).getLocalPort()).build());
+            for (int i = 0; i < 2; i++) {
+                final Response response = target.path("chain/new").request().post(Entity.text(""));
+                assertThat(response.getStatus(), is(500));
+                response.close();
+            }
+            assertThat(limiter.getInFlight(), is(0));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    private List<Map<String, Object>> readStream(final int parallelism) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ((StreamingOutput) resource.streamAllData(masterKey, parallelism, null, 0).getEntity()).write(bos);
+        final List<Map<String, Object>> records = new ArrayList<>();
+        for (final String line : bos.toString("UTF-8").split("\n")) {
+            records.add(OM.readValue(line, new TypeReference<Map<String, Object>>() {}));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,31 @@
+package com.signicat.services.blockchain.rs;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.junit.Test;
+
+public class SerialEventWriterTest {
+    @Test
+    public void heartbeatClosesSubscriptionOfClientThatLeft() throws Exception {
+        final EventOutput output = new EventOutput();
+        output.close();
+        final SerialEventWriter writer = new SerialEventWriter(output, Runnable::run);
+        final CountDownLatch unsubscribed = new CountDownLatch(1);
+        writer.closeWith(unsubscribed::countDown);
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            writer.startHeartbeat(scheduler, 10, TimeUnit.MILLISECONDS);
+            assertThat(unsubscribed.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(writer.isClosed(), is(true));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.signicat.services.blockchain.rs;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.jetty.JettyHttpContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StaticResourceTest {
+    private Server server;
+    private Client client;
+    private WebTarget target;
+
+    @Before
+    public void setUp() throws Exception {
+        server = JettyHttpContainerFactory.createServer(
+                UriBuilder.fromUri("http://localhost/").port(0).build(),
+                new ResourceConfig().register(new StaticResource(3600)));
+        client = ClientBuilder.newClient();
+        target = client.target(UriBuilder.fromUri("http://localhost/")
+                .port(((ServerConnector) server.getConnectors()[0]).getLocalPort()).build()).path("static");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void unchangedFilesAreNotSentAgain() {
+        final Response first = target.path("style.css").request().get();
+        assertThat(first.getStatus(), is(200));
+        assertThat(first.getMediaType().toString(), containsString("text/css"));
+        assertThat(first.getHeaderString(HttpHeaders.CACHE_CONTROL), containsString("max-age=3600"));
+        final String etag = first.getHeaderString(HttpHeaders.ETAG);
+        assertThat(etag, is(not(nullValue())));
+        first.close();
+
+        final Response second = target.path("style.css").request().header(HttpHeaders.IF_NONE_MATCH, etag).get();
+        assertThat(second.getStatus(), is(304));
+        second.close();
+
+        final Response page = target.path("index.html").request().get();
+        assertThat(page.getHeaderString(HttpHeaders.CACHE_CONTROL), containsString("no-cache"));
+        page.close();
+
+        assertThat(target.path("missing.html").request().get().getStatus(), is(404));
+    }
+
+    @Test
+    public void gzippedCopyIsSentToClientsAcceptingIt() throws Exception {
+        final String plain = target.path("index.html").request().get(String.class);
+        final Response gzipped = target.path("index.html").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertThat(gzipped.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+        try (InputStream in = new GZIPInputStream(gzipped.readEntity(InputStream.class))) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8), is(plain));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.signicat.services.blockchain.spi;
+
+import static com.signicat.services.blockchain.spi.TestAssertions.assertionFor;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchingNodeNetworkTest {
+    private MasterKey masterKey;
+    private List<ClientSignedAssertion> assertions;
+
+    @Before
+    public void setUp() throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        final KeyPair keyPair = keyGen.generateKeyPair();
+        masterKey = new MasterKey("keyId", (RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate());
+        assertions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            assertions.add(ClientSignedAssertion.createFromAssertion(masterKey, assertionFor("subject" + i)));
+        }
+    }
+
+    @Test
+    public void concurrentPushesShareBatches() throws Exception {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final DummyNodeNetwork dummy = new DummyNodeNetwork();
+        final NodeNetwork recording = new ForwardingNodeNetwork(dummy) {
+            @Override
+            public void pushAssertions(final List<ClientSignedAssertion> batch) throws IOException {
+                batchSizes.add(batch.size());
+                super.pushAssertions(batch);
+            }
+        };
+        final BatchingNodeNetwork network = new BatchingNodeNetwork(recording, 8, 200, 10000);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final ClientSignedAssertion assertion : assertions) {
+            futures.add(network.pushAssertionAsync(assertion));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        network.close();
+
+        assertThat(dummy.listBlockIds(masterKey).size(), is(20));
+        assertThat(batchSizes.stream().mapToInt(Integer::intValue).sum(), is(20));
+        assertThat(batchSizes.stream().allMatch(size -> size <= 8), is(true));
+        assertThat(network.getBatchCount(), is((long) batchSizes.size()));
+        assertThat(network.getMaxBatchSize(), is(8L));
+    }
+
+    @Test(expected = IOException.class)
+    public void failedBatchFailsItsPushes() throws Exception {
+        final NodeNetwork failing = new ForwardingNodeNetwork(new DummyNodeNetwork()) {
+            @Override
+            public void pushAssertions(final List<ClientSignedAssertion> batch) throws IOException {
+                throw new IOException("Node is down.");
+            }
+
+            @Override
+            public void pushAssertion(final ClientSignedAssertion assertion) throws IOException {
+                throw new IOException("Node is down.");
+            }
+        };
+        final BatchingNodeNetwork network = new BatchingNodeNetwork(failing, 8, 0, 10000);
+        try {
+            network.pushAssertion(assertions.get(0));
+        } finally {
+            network.close();
+        }
+    }
+
+    @Test
+    public void rejectedAssertionOnlyFailsItsOwnPush() throws Exception {
+        final ClientSignedAssertion poison = assertions.get(3);
+        final DummyNodeNetwork dummy = new DummyNodeNetwork();
+        final NodeNetwork rejecting = new ForwardingNodeNetwork(dummy) {
+            @Override
+            public void pushAssertions(final List<ClientSignedAssertion> batch) throws IOException {
+                if (batch.contains(poison)) {
+                    throw new IOException("Rejected assertion.");
+                }
+                super.pushAssertions(batch);
+            }
+
+            @Override
+            public void pushAssertion(final ClientSignedAssertion assertion) throws IOException {
+                if (assertion == poison) {
+                    throw new IOException("Rejected assertion.");
+                }
+                super.pushAssertion(assertion);
+            }
+        };
+        final BatchingNodeNetwork network = new BatchingNodeNetwork(rejecting, 8, 200, 10000);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final ClientSignedAssertion assertion : assertions.subList(0, 8)) {
+            futures.add(network.pushAssertionAsync(assertion));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+                assertThat(i == 3, is(false));
+            } catch (final ExecutionException e) {
+                assertThat(i, is(3));
+                assertThat(e.getCause() instanceof IOException, is(true));
+            }
+        }
+        network.close();
+
+        assertThat(dummy.listBlockIds(masterKey).size(), is(7));
+    }
+
+    @Test(expected = IOException.class)
+    public void blockingPushGivesUpAfterTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final NodeNetwork hanging = new ForwardingNodeNetwork(new DummyNodeNetwork()) {
+            @Override
+            public void pushAssertions(final List<ClientSignedAssertion> batch) throws IOException {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final BatchingNodeNetwork network = new BatchingNodeNetwork(hanging, 8, 0, 100);
+        try {
+            network.pushAssertion(assertions.get(0));
+        } finally {
+            release.countDown();
+            network.close();
+        }
+    }
+
+    @Test
+    public void pushesAfterCloseFail() throws Exception {
+        final BatchingNodeNetwork network = new BatchingNodeNetwork(new DummyNodeNetwork(), 8, 0, 10000);
+        network.close();
+        try {
+            network.pushAssertionAsync(assertions.get(0)).get();
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause() instanceof IOException, is(true));
+            return;
+        }
+        throw new AssertionError("Push after close succeeded.");
+    }
+}
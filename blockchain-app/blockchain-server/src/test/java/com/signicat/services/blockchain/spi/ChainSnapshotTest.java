@@ -0,0 +1,88 @@
+package com.signicat.services.blockchain.spi;
+
+import static com.signicat.services.blockchain.spi.TestAssertions.assertionFor;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChainSnapshotTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private MasterKey masterKey;
+    private Assertion alice;
+    private Assertion bob;
+    private DummyNodeNetwork source;
+
+    @Before
+    public void setUp() throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        final KeyPair keyPair = keyGen.generateKeyPair();
+        masterKey = new MasterKey("keyId", (RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate());
+        alice = assertionFor("alice");
+        bob = assertionFor("bob");
+        source = new DummyNodeNetwork();
+        source.pushMasterKey(masterKey);
+        source.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, alice));
+        source.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, bob));
+    }
+
+    private byte[] export() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.exportSnapshot(Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void snapshotSeedsDummyAndLocalNetworks() throws Exception {
+        final byte[] snapshot = export();
+
+        final DummyNodeNetwork dummy = new DummyNodeNetwork();
+        dummy.importSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)));
+        assertThat(dummy.listBlockIds(masterKey), is(Arrays.asList("alice", "bob")));
+        assertThat(dummy.getBlock(masterKey, "bob"), is(bob));
+        assertThat(dummy.pushAssertion(alice), is(masterKey));
+        assertThat(dummy.getCheckpoint(masterKey), is(source.getCheckpoint(masterKey)));
+
+        try (LocalNodeNetwork local = new LocalNodeNetwork(folder.getRoot().toPath())) {
+            local.importSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)));
+            assertThat(local.listBlockIds(masterKey), is(Arrays.asList("alice", "bob")));
+            assertThat(local.pushAssertion(bob), is(masterKey));
+
+            final ByteArrayOutputStream again = new ByteArrayOutputStream();
+            local.exportSnapshot(Channels.newChannel(again));
+            final DummyNodeNetwork copy = new DummyNodeNetwork();
+            copy.importSnapshot(Channels.newChannel(new ByteArrayInputStream(again.toByteArray())));
+            assertThat(copy.getBlock(masterKey, "alice"), is(alice));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSnapshotIsRejected() throws Exception {
+        final byte[] snapshot = export();
+        new DummyNodeNetwork().importSnapshot(Channels.newChannel(
+                new ByteArrayInputStream(Arrays.copyOf(snapshot, snapshot.length - 20))));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptSnapshotIsRejected() throws Exception {
+        final byte[] snapshot = export();
+        snapshot[snapshot.length / 2] ^= 1;
+        new DummyNodeNetwork().importSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)));
+    }
+}
@@ -0,0 +1,82 @@
+package com.signicat.services.blockchain.spi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ChainVerifierTest {
+    private static byte[] leafHash(final String blockId) {
+        return KeyBlockIndex.leafHash(blockId, blockId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void append(final KeyBlockIndex index, final String keyId, final String blockId) {
+        index.append(keyId, blockId, leafHash(blockId));
+    }
+
+    @Test
+    public void checkpointsAdvanceWithConsistencyProofs() throws Exception {
+        final KeyBlockIndex index = new KeyBlockIndex();
+        final ChainVerifier verifier = new ChainVerifier();
+        append(index, "key", "a");
+        append(index, "other", "x");
+        verifier.advance(index.checkpoint("key"), null);
+        append(index, "key", "b");
+        append(index, "key", "a");
+
+        final ChainCheckpoint latest = index.checkpoint("key");
+        assertThat(verifier.advance(latest, index.consistencyProof("key", 1, 3)), is(latest));
+        final MerkleProof proof = index.inclusionProof("key", "a", 3);
+        assertThat(proof.getFirst(), is(2L));
+        verifier.verifyInclusion(verifier.getCheckpoint("key"), leafHash("a"), proof);
+        assertThat(index.inclusionProof("key", "x", 3), is(nullValue()));
+
+        verifier.advance(index.checkpoint(null), null);
+        verifier.verifyInclusion(verifier.getCheckpoint(null), leafHash("x"), index.inclusionProof(null, "x", 4));
+    }
+
+    @Test
+    public void proofsHoldForCheckpointsMovedOnFrom() throws Exception {
+        final KeyBlockIndex index = new KeyBlockIndex();
+        final ChainVerifier verifier = new ChainVerifier();
+        append(index, "key", "a");
+        final ChainCheckpoint requested = verifier.advance(index.checkpoint("key"), null);
+        final MerkleProof proof = index.inclusionProof("key", "a", 1);
+
+        // Another request moves the verifier on before the proof is checked.
+        append(index, "key", "b");
+        verifier.advance(index.checkpoint("key"), index.consistencyProof("key", 1, 2));
+        verifier.verifyInclusion(requested, leafHash("a"), proof);
+    }
+
+    @Test(expected = IOException.class)
+    public void rewrittenChainIsRejected() throws Exception {
+        final KeyBlockIndex honest = new KeyBlockIndex();
+        final KeyBlockIndex forked = new KeyBlockIndex();
+        append(honest, "key", "a");
+        append(honest, "key", "b");
+        append(forked, "key", "a");
+        append(forked, "key", "c");
+        append(forked, "key", "d");
+
+        final ChainVerifier verifier = new ChainVerifier();
+        verifier.advance(honest.checkpoint("key"), null);
+        verifier.advance(forked.checkpoint("key"), forked.consistencyProof("key", 2, 3));
+    }
+
+    @Test(expected = IOException.class)
+    public void tamperedBlockIsRejected() throws Exception {
+        final KeyBlockIndex index = new KeyBlockIndex();
+        append(index, "key", "a");
+        append(index, "key", "b");
+        final ChainVerifier verifier = new ChainVerifier();
+        verifier.advance(index.checkpoint("key"), null);
+
+        verifier.verifyInclusion(verifier.getCheckpoint("key"),
+                KeyBlockIndex.leafHash("a", new byte[] {1}), index.inclusionProof("key", "a", 2));
+    }
+}
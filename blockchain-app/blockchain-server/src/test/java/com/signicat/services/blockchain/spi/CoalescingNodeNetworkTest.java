@@ -0,0 +1,64 @@
+package com.signicat.services.blockchain.spi;
+
+import static com.signicat.services.blockchain.spi.TestAssertions.assertionFor;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CoalescingNodeNetworkTest {
+    @Test
+    public void concurrentLookupsShareOneRequest() throws Exception {
+        final Assertion block = assertionFor("alice");
+        final AtomicInteger lookups = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CoalescingNodeNetwork network = new CoalescingNodeNetwork(new ForwardingNodeNetwork(new DummyNodeNetwork()) {
+            @Override
+            public Assertion getBlock(final MasterKey masterKey, final String blockId) throws IOException {
+                lookups.incrementAndGet();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return block;
+            }
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Assertion>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> network.getBlock(null, "alice")));
+            }
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (network.getCoalescedCount() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (final Future<Assertion> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS), is(sameInstance(block)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(lookups.get(), is(1));
+        assertThat(network.getRequestCount(), is(4L));
+        assertThat(network.getCoalescedCount(), is(3L));
+
+        // Completed lookups are not cached.
+        network.getBlock(null, "alice");
+        assertThat(lookups.get(), is(2));
+    }
+}
@@ -0,0 +1,71 @@
+package com.signicat.services.blockchain.spi;
+
+import static com.signicat.services.blockchain.spi.TestAssertions.assertionFor;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeduplicatingNodeNetworkTest {
+    private MasterKey masterKey;
+    private ClientSignedAssertion assertion;
+
+    @Before
+    public void setUp() throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        final KeyPair keyPair = keyGen.generateKeyPair();
+        masterKey = new MasterKey("keyId", (RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate());
+        assertion = ClientSignedAssertion.createFromAssertion(masterKey, assertionFor("alice"));
+    }
+
+    @Test
+    public void repeatedPushesAreSkipped() throws Exception {
+        final AtomicInteger pushes = new AtomicInteger();
+        final DummyNodeNetwork dummy = new DummyNodeNetwork();
+        final NodeNetwork counting = new ForwardingNodeNetwork(dummy) {
+            @Override
+            public void pushMasterKey(final MasterKey key) throws IOException {
+                pushes.incrementAndGet();
+                super.pushMasterKey(key);
+            }
+
+            @Override
+            public void pushAssertion(final ClientSignedAssertion signed) throws IOException {
+                pushes.incrementAndGet();
+                super.pushAssertion(signed);
+            }
+        };
+        final DeduplicatingNodeNetwork network = new DeduplicatingNodeNetwork(counting, 100);
+
+        network.pushMasterKey(masterKey);
+        network.pushMasterKey(masterKey);
+        network.pushAssertion(assertion);
+        network.pushAssertion(assertion);
+        network.pushAssertions(Arrays.asList(assertion, assertion));
+
+        assertThat(pushes.get(), is(2));
+        assertThat(network.getDuplicateCount(), is(4L));
+        assertThat(network.getCheckpoint(masterKey).getTreeSize(), is(1L));
+    }
+
+    @Test
+    public void nodeNetworkStoresRepeatedAssertionOnce() throws Exception {
+        final DummyNodeNetwork network = new DummyNodeNetwork();
+        network.pushMasterKey(masterKey);
+        network.pushAssertion(assertion);
+        network.pushAssertion(assertion);
+
+        assertThat(network.getCheckpoint(masterKey).getTreeSize(), is(1L));
+        assertThat(network.getCheckpoint(null).getTreeSize(), is(1L));
+    }
+}
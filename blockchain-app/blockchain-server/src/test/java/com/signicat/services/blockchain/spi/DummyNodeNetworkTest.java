@@ -0,0 +1,54 @@
+package com.signicat.services.blockchain.spi;
+
+import static com.signicat.services.blockchain.spi.TestAssertions.assertionFor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class DummyNodeNetworkTest {
+    @Test
+    public void concurrentPushesIndexTheStoredVersion() throws Exception {
+        MasterKey.masterKeySize = 512;
+        final MasterKey masterKey = new MasterKey();
+        final ChainVerifier verifier = new ChainVerifier();
+        final DummyNodeNetwork network = new DummyNodeNetwork();
+        network.pushMasterKey(masterKey);
+
+        final ExecutorService pushers = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 20; round++) {
+                final List<ClientSignedAssertion> versions = new ArrayList<>();
+                final List<Future<?>> pushes = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    final ClientSignedAssertion block = ClientSignedAssertion.createFromAssertion(masterKey,
+                            assertionFor("alice", round * 50 + i));
+                    versions.add(block);
+                    pushes.add(pushers.submit(() -> {
+                        network.pushAssertion(block);
+                        return null;
+                    }));
+                }
+                for (final Future<?> push : pushes) {
+                    push.get();
+                }
+
+                // The latest indexed entry of the block must be the version that is stored.
+                final int version = network.getBlock(masterKey, "alice").getJwt().getJWTClaimsSet()
+                        .getIntegerClaim("version");
+                final ClientSignedAssertion stored = versions.get(version - round * 50);
+                final ChainCheckpoint checkpoint = network.getCheckpoint(masterKey);
+                verifier.verifyInclusion(checkpoint,
+                        KeyBlockIndex.leafHash("alice", stored.getValue().getBytes(StandardCharsets.UTF_8)),
+                        network.getInclusionProof(masterKey, "alice", checkpoint.getTreeSize()));
+            }
+        } finally {
+            pushers.shutdown();
+        }
+    }
+}
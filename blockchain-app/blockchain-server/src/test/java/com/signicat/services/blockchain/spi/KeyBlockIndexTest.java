@@ -0,0 +1,105 @@
+package com.signicat.services.blockchain.spi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class KeyBlockIndexTest {
+    private static long append(final KeyBlockIndex index, final String keyId, final String blockId) {
+        return index.append(keyId, blockId, KeyBlockIndex.leafHash(blockId, blockId.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void pagesThroughBlocksOfOneKey() {
+        final KeyBlockIndex index = new KeyBlockIndex();
+        append(index, "key", "a");
+        append(index, "other", "x");
+        append(index, "key", "b");
+        append(index, "key", "c");
+
+        final BlockIdPage first = index.since("key", 0, 2);
+        assertThat(first, is(new BlockIdPage(Arrays.asList("a", "b"), 2, true)));
+        assertThat(index.since("key", first.getCursor(), 2), is(new BlockIdPage(Collections.singletonList("c"), 3, false)));
+        assertThat(index.since("key", 3, 2), is(new BlockIdPage(Collections.emptyList(), 3, false)));
+    }
+
+    @Test
+    public void replacedBlockIsReportedAgainOnlyOnce() {
+        final KeyBlockIndex index = new KeyBlockIndex();
+        append(index, "key", "a");
+        append(index, "key", "b");
+        final long cursor = index.since("key", 0, 10).getCursor();
+        append(index, "key", "a");
+
+        assertThat(index.blockIds("key"), is(Arrays.asList("b", "a")));
+        assertThat(index.since("key", cursor, 10).getBlockIds(), is(Collections.singletonList("a")));
+    }
+
+    @Test
+    public void blockMovedToOtherKeyLeavesOldKey() {
+        final KeyBlockIndex index = new KeyBlockIndex();
+        append(index, "key", "a");
+        append(index, "other", "a");
+
+        assertThat(index.blockIds("key"), is(Collections.emptyList()));
+        assertThat(index.blockIds("other"), is(Collections.singletonList("a")));
+    }
+
+    @Test
+    public void concurrentAppendsAreAllIndexed() throws Exception {
+        final KeyBlockIndex index = new KeyBlockIndex();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    append(index, "key" + (i % 4), thread + "-" + i);
+                }
+            }));
+        }
+        for (final Future<?> f : futures) {
+            f.get();
+        }
+        executor.shutdown();
+
+        for (int k = 0; k < 4; k++) {
+            final BlockIdPage page = index.since("key" + k, 0, Integer.MAX_VALUE);
+            assertThat(page.getBlockIds().size(), is(2000));
+            assertThat(page.getCursor(), is(2000L));
+            assertThat(index.checkpoint("key" + k).getTreeSize(), is(2000L));
+        }
+        assertThat(index.checkpoint(null).getTreeSize(), is(8000L));
+    }
+
+    @Test
+    public void subscriberGetsReplayThenLiveAppends() throws Exception {
+        final KeyBlockIndex index = new KeyBlockIndex();
+        append(index, "key", "a");
+        append(index, "key", "b");
+        append(index, "key", "a");
+
+        final List<BlockEvent> events = new ArrayList<>();
+        final Closeable subscription = index.subscribe("key", 1, events::add);
+        append(index, "other", "x");
+        append(index, "key", "c");
+        subscription.close();
+        append(index, "key", "d");
+
+        assertThat(events, is(Arrays.asList(
+                new BlockEvent("key", "b", 2),
+                new BlockEvent("key", "a", 3),
+                new BlockEvent("key", "c", 4))));
+    }
+}
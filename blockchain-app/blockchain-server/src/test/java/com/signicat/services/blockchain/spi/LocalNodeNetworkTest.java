@@ -0,0 +1,80 @@
+package com.signicat.services.blockchain.spi;
+
+import static com.signicat.services.blockchain.spi.TestAssertions.assertionFor;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalNodeNetworkTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void survivesRestart() throws Exception {
+        MasterKey.masterKeySize = 512;
+        final MasterKey masterKey = new MasterKey();
+        final Assertion assertion = assertionFor("alice");
+        final Path dir = folder.getRoot().toPath();
+
+        final ChainCheckpoint checkpoint;
+        try (LocalNodeNetwork network = new LocalNodeNetwork(dir)) {
+            network.pushMasterKey(masterKey);
+            network.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertion));
+            checkpoint = network.getCheckpoint(masterKey);
+        }
+
+        try (LocalNodeNetwork network = new LocalNodeNetwork(dir)) {
+            assertThat(network.getCheckpoint(masterKey), is(checkpoint));
+            assertThat(network.listBlockIds(masterKey), is(Collections.singletonList("alice")));
+            assertThat(network.getBlock(masterKey, "alice"), is(assertion));
+            assertThat(network.pushAssertion(assertion), is(masterKey));
+        }
+    }
+
+    @Test
+    public void concurrentPushesAreIndexedInLogOrder() throws Exception {
+        MasterKey.masterKeySize = 512;
+        final MasterKey masterKey = new MasterKey();
+        final Path dir = folder.getRoot().toPath();
+
+        final ChainCheckpoint checkpoint;
+        final List<String> blockIds;
+        final ExecutorService pushers = Executors.newFixedThreadPool(8);
+        try (LocalNodeNetwork network = new LocalNodeNetwork(dir)) {
+            network.pushMasterKey(masterKey);
+            final List<Future<?>> pushes = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                // Versions of the same two blocks, so the order they are indexed in decides which is latest.
+                final ClientSignedAssertion block = ClientSignedAssertion.createFromAssertion(masterKey,
+                        assertionFor(i % 2 == 0 ? "alice" : "bob", i));
+                pushes.add(pushers.submit(() -> {
+                    network.pushAssertion(block);
+                    return null;
+                }));
+            }
+            for (final Future<?> push : pushes) {
+                push.get();
+            }
+            checkpoint = network.getCheckpoint(masterKey);
+            blockIds = network.listBlockIds(masterKey);
+        } finally {
+            pushers.shutdown();
+        }
+
+        try (LocalNodeNetwork network = new LocalNodeNetwork(dir)) {
+            assertThat(network.getCheckpoint(masterKey), is(checkpoint));
+            assertThat(network.listBlockIds(masterKey), is(blockIds));
+        }
+    }
+}
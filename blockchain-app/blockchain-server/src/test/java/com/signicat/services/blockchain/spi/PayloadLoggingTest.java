@@ -0,0 +1,27 @@
+package com.signicat.services.blockchain.spi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class PayloadLoggingTest {
+    @Test
+    public void samplesFirstAndEveryNth() {
+        final PayloadLogging logging = new PayloadLogging(3);
+        assertThat(logging.sample(), is(true));
+        assertThat(logging.sample(), is(false));
+        assertThat(logging.sample(), is(false));
+        assertThat(logging.sample(), is(true));
+    }
+
+    @Test
+    public void truncatesLargePayloads() {
+        assertThat(PayloadLogging.truncate("short"), is("short"));
+        final String large = Strings.repeat("a", PayloadLogging.MAX_LOGGED_CHARS + 10);
+        assertThat(PayloadLogging.truncate(large),
+                is(Strings.repeat("a", PayloadLogging.MAX_LOGGED_CHARS) + "... (" + large.length() + " chars)"));
+    }
+}
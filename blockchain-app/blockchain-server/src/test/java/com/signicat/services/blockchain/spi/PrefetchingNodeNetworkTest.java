@@ -0,0 +1,177 @@
+package com.signicat.services.blockchain.spi;
+
+import static com.signicat.services.blockchain.spi.TestAssertions.assertionFor;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrefetchingNodeNetworkTest {
+    private MasterKey masterKey;
+    private DummyNodeNetwork dummy;
+    private Map<String, AtomicInteger> blockFetches;
+
+    @Before
+    public void setUp() throws Exception {
+        MasterKey.masterKeySize = 512;
+        masterKey = new MasterKey();
+        dummy = new DummyNodeNetwork();
+        dummy.pushMasterKey(masterKey);
+        for (final String subject : Arrays.asList("alice", "bob", "carol", "dave")) {
+            dummy.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertionFor(subject)));
+        }
+        blockFetches = new ConcurrentHashMap<>();
+    }
+
+    @Test
+    public void blocksAreFetchedOnceKeyIsReassembled() throws Exception {
+        MasterKey.masterKeySize = 512;
+        final MasterKey masterKey = new MasterKey();
+        final Assertion assertion = assertionFor("alice");
+        final DummyNodeNetwork dummy = new DummyNodeNetwork();
+        dummy.pushMasterKey(masterKey);
+        dummy.pushAssertion(ClientSignedAssertion.createFromAssertion(masterKey, assertion));
+
+        final AtomicInteger blockFetches = new AtomicInteger();
+        final PrefetchingNodeNetwork network = new PrefetchingNodeNetwork(new ForwardingNodeNetwork(dummy) {
+            @Override
+            public Assertion getBlock(final MasterKey key, final String blockId) throws IOException {
+                blockFetches.incrementAndGet();
+                return super.getBlock(key, blockId);
+            }
+        }, 2, 16, 1, TimeUnit.MINUTES);
+        try {
+            final MasterKey reassembled = network.pushAssertion(assertion);
+
+            assertThat(network.listBlockIds(reassembled), is(Collections.singletonList("alice")));
+            assertThat(network.getBlock(reassembled, "alice"), is(assertion));
+            assertThat(blockFetches.get(), is(1));
+            assertThat(network.getPrefetchedCount(), is(1L));
+            assertThat(network.getHitCount(), is(2L));
+
+            // Prefetched blocks are handed out once.
+            assertThat(network.getBlock(reassembled, "alice"), is(assertion));
+            assertThat(blockFetches.get(), is(2));
+        } finally {
+            network.close();
+        }
+    }
+
+    @Test
+    public void prefetchesBeyondTheQueueAreSkipped() throws Exception {
+        // The block fetches are queued by the list fetch, while it holds the only thread.
+        final PrefetchingNodeNetwork network = new PrefetchingNodeNetwork(counting(null), 1, 1, 1, TimeUnit.MINUTES);
+        try {
+            final MasterKey reassembled = network.pushAssertion(assertionFor("alice"));
+            awaitTrue(() -> network.getPrefetchedCount() == 1);
+            assertThat(network.getPendingCount(), is(2L));
+
+            for (final String blockId : network.listBlockIds(reassembled)) {
+                network.getBlock(reassembled, blockId);
+            }
+            assertThat(network.getHitCount(), is(2L));
+            for (final String blockId : Arrays.asList("alice", "bob", "carol", "dave")) {
+                assertThat(blockFetches.get(blockId).get(), is(1));
+            }
+        } finally {
+            network.close();
+        }
+    }
+
+    @Test
+    public void expiredPrefetchesAreCancelled() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final PrefetchingNodeNetwork network = new PrefetchingNodeNetwork(counting(release), 1, 16, 100, TimeUnit.MILLISECONDS);
+        try {
+            final MasterKey reassembled = network.pushAssertion(assertionFor("alice"));
+            awaitTrue(() -> blockFetches.size() == 1);
+            final List<String> queued = dummy.listBlockIds(masterKey).stream()
+                    .filter(b -> !blockFetches.containsKey(b))
+                    .collect(Collectors.toList());
+            Thread.sleep(200);
+
+            // Expired while queued behind the first block, so fetched directly, and the prefetches are dropped.
+            for (final String blockId : queued) {
+                assertThat(network.getBlock(reassembled, blockId), is(dummy.getBlock(masterKey, blockId)));
+            }
+            release.countDown();
+            awaitTrue(() -> network.getPrefetchedCount() == 1);
+            Thread.sleep(100);
+            assertThat(network.getPrefetchedCount(), is(1L));
+            for (final String blockId : queued) {
+                assertThat(blockFetches.get(blockId).get(), is(1));
+            }
+            assertThat(network.getHitCount(), is(0L));
+        } finally {
+            release.countDown();
+            network.close();
+        }
+    }
+
+    @Test
+    public void failedPrefetchesAreFetchedAgain() throws Exception {
+        final AtomicInteger failures = new AtomicInteger(1);
+        final PrefetchingNodeNetwork network = new PrefetchingNodeNetwork(new ForwardingNodeNetwork(dummy) {
+            @Override
+            public Assertion getBlock(final MasterKey key, final String blockId) throws IOException {
+                blockFetches.computeIfAbsent(blockId, b -> new AtomicInteger()).incrementAndGet();
+                if ("alice".equals(blockId) && failures.getAndDecrement() > 0) {
+                    throw new IOException("Node is down.");
+                }
+                return super.getBlock(key, blockId);
+            }
+        }, 2, 16, 1, TimeUnit.MINUTES);
+        try {
+            final MasterKey reassembled = network.pushAssertion(assertionFor("alice"));
+            awaitTrue(() -> network.getPrefetchedCount() == 3);
+
+            assertThat(network.getBlock(reassembled, "alice"), is(dummy.getBlock(masterKey, "alice")));
+            assertThat(blockFetches.get("alice").get(), is(2));
+            assertThat(network.getHitCount(), is(0L));
+        } finally {
+            network.close();
+        }
+    }
+
+    /**
+     * @param release if not null, the first block fetch waits for it
+     */
+    private NodeNetwork counting(final CountDownLatch release) {
+        return new ForwardingNodeNetwork(dummy) {
+            @Override
+            public Assertion getBlock(final MasterKey key, final String blockId) throws IOException {
+                final boolean first = blockFetches.isEmpty();
+                blockFetches.computeIfAbsent(blockId, b -> new AtomicInteger()).incrementAndGet();
+                if (first && release != null) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return super.getBlock(key, blockId);
+            }
+        };
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean(), is(true));
+    }
+}
@@ -0,0 +1,44 @@
+package com.signicat.services.blockchain.spi;
+
+import java.util.Date;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Assertions for tests, signed with an all zero HMAC key.
+ */
+public final class TestAssertions {
+    private TestAssertions() {
+    }
+
+    /**
+     * @return assertion about the subject, issued now
+     */
+    public static Assertion assertionFor(final String subject) throws JOSEException {
+        return sign(new JWTClaimsSet.Builder()
+                .subject(subject)
+                .issueTime(new Date())
+                .build());
+    }
+
+    /**
+     * @return assertion about the subject, told apart from its other versions by a version claim
+     */
+    public static Assertion assertionFor(final String subject, final int version) throws JOSEException {
+        return sign(new JWTClaimsSet.Builder()
+                .subject(subject)
+                .claim("version", version)
+                .build());
+    }
+
+    private static Assertion sign(final JWTClaimsSet claims) throws JOSEException {
+        final SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims);
+        jwt.sign(new MACSigner(new byte[32]));
+        return new Assertion(jwt);
+    }
+}
@@ -0,0 +1,94 @@
+package com.signicat.services.blockchain.store;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentedLogTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendedRecordsAreReadableAndReplayed() throws Exception {
+        final Path dir = folder.getRoot().toPath();
+        final List<CompletableFuture<LogPosition>> futures = new ArrayList<>();
+        try (SegmentedLog log = new SegmentedLog(dir, 256, 16, (t, p, b) -> {})) {
+            for (int i = 0; i < 50; i++) {
+                futures.add(log.append((byte) 1, ("record " + i).getBytes(StandardCharsets.UTF_8)));
+            }
+            for (int i = 0; i < 50; i++) {
+                assertThat(string(log.read(futures.get(i).get())), is("record " + i));
+            }
+        }
+        assertThat(Files.exists(dir.resolve("segment-00000001.log")), is(true));
+
+        final List<String> replayed = new ArrayList<>();
+        try (SegmentedLog log = new SegmentedLog(dir, 256, 16, (t, p, b) -> replayed.add(string(b)))) {
+            assertThat(string(log.read(futures.get(49).get())), is("record 49"));
+        }
+        assertThat(replayed.size(), is(50));
+        assertThat(replayed.get(49), is("record 49"));
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws Exception {
+        final Path dir = folder.getRoot().toPath();
+        try (SegmentedLog log = new SegmentedLog(dir, 1 << 20, 16, (t, p, b) -> {})) {
+            log.appendAndSync((byte) 1, "first".getBytes(StandardCharsets.UTF_8));
+            log.appendAndSync((byte) 1, "second".getBytes(StandardCharsets.UTF_8));
+        }
+        final Path segment = dir.resolve("segment-00000000.log");
+        final long intactSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // Header of a record claiming 100 bytes of payload, but only half of it made it to disk.
+            final ByteBuffer torn = ByteBuffer.allocate(59);
+            torn.putInt(100).putInt(42).put((byte) 1);
+            torn.rewind();
+            channel.write(torn);
+        }
+
+        final List<String> replayed = new ArrayList<>();
+        try (SegmentedLog log = new SegmentedLog(dir, 1 << 20, 16, (t, p, b) -> replayed.add(string(b)))) {
+            assertThat(Files.size(segment), is(intactSize));
+            final LogPosition third = log.appendAndSync((byte) 1, "third".getBytes(StandardCharsets.UTF_8));
+            assertThat(string(log.read(third)), is("third"));
+        }
+        assertThat(replayed.size(), is(2));
+        assertThat(replayed.get(1), is("second"));
+    }
+
+    @Test
+    public void readsRightAfterAppendsDoNotMapEachRecord() throws Exception {
+        final Path dir = folder.getRoot().toPath();
+        try (SegmentedLog log = new SegmentedLog(dir, 1 << 20, 16, (t, p, b) -> {})) {
+            final List<LogPosition> positions = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                positions.add(log.appendAndSync((byte) 1, ("record " + i).getBytes(StandardCharsets.UTF_8)));
+                assertThat(string(log.read(positions.get(i))), is("record " + i));
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertThat(string(log.read(positions.get(i))), is("record " + i));
+            }
+            assertThat(log.getMappingCount() <= 12, is(true));
+        }
+    }
+
+    private static String string(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}